@@ -0,0 +1,128 @@
+package com.cwriter.export;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.os.Trace;
+import android.util.Log;
+
+import java.io.File;
+import java.io.OutputStream;
+
+/**
+ * 把导出核心接到 Android 平台：日志写入 Logcat，系统跟踪区段写入 android.os.Trace，插图用 BitmapFactory 降采样解码，
+ * 内容URI和分区存储下的公共目录由 ContentExportTarget 写入
+ */
+final class AndroidPlatform {
+
+    /** 重新编码插图时的 JPEG 质量 */
+    private static final int JPEG_QUALITY = 85;
+
+    private static volatile boolean installed;
+    private static volatile Context attached;
+
+    private AndroidPlatform() {
+    }
+
+    static void install() {
+        if (installed) {
+            return;
+        }
+        installed = true;
+        ExportLog.setSink((priority, tag, message, error) -> {
+            switch (priority) {
+                case ExportLog.ERROR:
+                    Log.e(tag, message, error);
+                    break;
+                case ExportLog.WARN:
+                    Log.w(tag, message, error);
+                    break;
+                case ExportLog.INFO:
+                    Log.i(tag, message, error);
+                    break;
+                default:
+                    Log.d(tag, message, error);
+                    break;
+            }
+        });
+        SystemTrace.setBackend(new SystemTrace.Backend() {
+            @Override
+            public void begin(String section, int cookie) {
+                // Android 10 及以上使用按任务号区分的异步区段，多个任务并行渲染时不会互相嵌套；
+                // 更早的系统退回到当前线程上的同步区段
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                    Trace.beginAsyncSection(section, cookie);
+                } else {
+                    Trace.beginSection(section);
+                }
+            }
+
+            @Override
+            public void end(String section, int cookie) {
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                    Trace.endAsyncSection(section, cookie);
+                } else {
+                    Trace.endSection();
+                }
+            }
+        });
+        ImagePipeline.setCodec(AndroidPlatform::transcode);
+    }
+
+    /**
+     * 用应用的 Context 安装导出目标的解析；Context 在 install 时还拿不到，由第一次导出时接上
+     */
+    static void attach(Context context) {
+        if (context == null) {
+            return;
+        }
+        Context application = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+        if (attached == application) {
+            return;
+        }
+        attached = application;
+        ExportTarget.setResolver(new ContentExportTarget.Resolver(application));
+    }
+
+    /**
+     * 先只读尺寸，按2的整数次幂降采样解码到不小于目标尺寸，再缩放到目标尺寸以内；
+     * 不透明的图片编码为 JPEG，有透明通道的编码为 PNG
+     */
+    private static String transcode(File source, int maxWidth, int maxHeight, OutputStream out) {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(source.getAbsolutePath(), bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            return null;
+        }
+        // 降采样后仍不小于目标尺寸的最大倍数
+        float fit = Math.min((float) maxWidth / bounds.outWidth, (float) maxHeight / bounds.outHeight);
+        int sampleSize = 1;
+        while (fit * sampleSize * 2 <= 1f) {
+            sampleSize *= 2;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        Bitmap decoded = BitmapFactory.decodeFile(source.getAbsolutePath(), options);
+        if (decoded == null) {
+            return null;
+        }
+        Bitmap bitmap = decoded;
+        float scale = Math.min(1f, Math.min((float) maxWidth / decoded.getWidth(), (float) maxHeight / decoded.getHeight()));
+        if (scale < 1f) {
+            bitmap = Bitmap.createScaledBitmap(decoded, Math.max(1, Math.round(decoded.getWidth() * scale)),
+                Math.max(1, Math.round(decoded.getHeight() * scale)), true);
+            decoded.recycle();
+        }
+        try {
+            boolean png = bitmap.hasAlpha();
+            if (!bitmap.compress(png ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out)) {
+                return null;
+            }
+            return png ? ImagePipeline.TYPE_PNG : ImagePipeline.TYPE_JPEG;
+        } finally {
+            bitmap.recycle();
+        }
+    }
+}
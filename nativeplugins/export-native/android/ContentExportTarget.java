@@ -0,0 +1,399 @@
+package com.cwriter.export;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Environment;
+import android.os.ParcelFileDescriptor;
+import android.provider.DocumentsContract;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+
+/**
+ * 内容提供方上的导出目标：文档选择器返回的文档或目录（SAF），以及公共目录 Download/、Documents/ 下的 MediaStore 条目
+ *
+ * 渲染器直接写入提供方打开的文件描述符，不在私有目录生成再复制一遍。
+ * MediaStore 条目写入期间保持 IS_PENDING，成功后才对其他应用可见；覆盖本应用已有的同名条目时也先写入新条目，
+ * 成功后才删除旧条目并改回原来的文件名。失败时删除本次新建的文档或条目，被覆盖的旧文件不受影响。
+ */
+final class ContentExportTarget extends ExportTarget {
+
+    private static final String TAG = "ContentExportTarget";
+
+    private static final int KIND_DOCUMENT = 0;
+    private static final int KIND_TREE = 1;
+    private static final int KIND_MEDIA = 2;
+
+    private final ContentResolver resolver;
+    private final int kind;
+    /** 文档的URI、目录树的URI或 MediaStore 的集合URI */
+    private final Uri uri;
+    private final String name;
+    /** MediaStore 条目的 RELATIVE_PATH，如“Download/Cwriter/” */
+    private final String relativePath;
+    /** 调用方给出的保存位置：文档或目录树的URI，MediaStore 条目为公共目录中的文件路径 */
+    private final String source;
+    /** 打开后实际写入的文档或条目 */
+    private volatile Uri written;
+    /** MediaStore 条目实际的文件路径（MediaStore 可能因重名改用“name (1).pdf”这样的文件名），查询到之前为null */
+    private volatile String mediaPath;
+
+    private ContentExportTarget(ContentResolver resolver, int kind, Uri uri, String name, String relativePath, String source) {
+        this.resolver = resolver;
+        this.kind = kind;
+        this.uri = uri;
+        this.name = name;
+        this.relativePath = relativePath;
+        this.source = source;
+    }
+
+    /**
+     * 安装到 ExportTarget 的解析：content:// URI 总是由这里处理；文件路径只有在
+     * 分区存储下无法直接写入的公共目录（Download/、Documents/）时改为 MediaStore 条目，其余仍按文件写入。
+     * 是否处于分区存储取自 ExportLocations 的缓存，不在每次导出时查询
+     */
+    static final class Resolver implements ExportTarget.Resolver {
+        private final Context context;
+
+        Resolver(Context context) {
+            this.context = context;
+        }
+
+        @Override
+        public ExportTarget resolve(String location, String defaultName) throws IOException {
+            if (location == null || location.isEmpty()) {
+                return null;
+            }
+            ContentResolver resolver = context.getContentResolver();
+            if (location.startsWith(ContentResolver.SCHEME_CONTENT + "://")) {
+                Uri uri = Uri.parse(location);
+                if (DocumentsContract.isTreeUri(uri)) {
+                    if (defaultName == null || defaultName.isEmpty()) {
+                        throw new IOException("保存到目录时需要文件名: " + location);
+                    }
+                    return new ContentExportTarget(resolver, KIND_TREE, uri, defaultName, null, location);
+                }
+                String name = uri.getLastPathSegment();
+                return new ContentExportTarget(resolver, KIND_DOCUMENT, uri, name != null ? name : defaultName, null, location);
+            }
+            String path = location.startsWith("file://") ? Uri.parse(location).getPath() : location;
+            ExportLocations locations = ExportLocations.get(context);
+            String relative = sharedRelativePath(locations.externalRoot, path);
+            if (relative == null || !locations.mediaStoreRequired) {
+                return location.equals(path) ? null : ExportTarget.forFile(new File(path));
+            }
+            int slash = relative.lastIndexOf('/');
+            String name = relative.substring(slash + 1);
+            if (name.isEmpty()) {
+                name = defaultName;
+            }
+            String directory = relative.substring(0, slash + 1);
+            Uri collection = directory.startsWith(Environment.DIRECTORY_DOWNLOADS + "/")
+                ? MediaStore.Downloads.getContentUri(MediaStore.VOLUME_EXTERNAL_PRIMARY)
+                : MediaStore.Files.getContentUri(MediaStore.VOLUME_EXTERNAL_PRIMARY);
+            // 保存位置只给了目录时补上文件名
+            String file = path.substring(0, path.length() - relative.length()) + directory + name;
+            return new ContentExportTarget(resolver, KIND_MEDIA, collection, name, directory, file);
+        }
+
+        /**
+         * 默认导出目录：ExportLocations.defaultDir，随存储权限变化
+         */
+        @Override
+        public File defaultDirectory() {
+            return ExportLocations.get(context).defaultDir;
+        }
+
+        /**
+         * 主存储上 Download/ 或 Documents/ 之下的相对路径（含文件名），其他路径返回null
+         */
+        private static String sharedRelativePath(File root, String path) {
+            String relative = null;
+            if (root != null && path.startsWith(root.getAbsolutePath() + "/")) {
+                relative = path.substring(root.getAbsolutePath().length() + 1);
+            } else if (path.startsWith("/sdcard/")) {
+                relative = path.substring("/sdcard/".length());
+            }
+            if (relative == null) {
+                return null;
+            }
+            if (relative.startsWith(Environment.DIRECTORY_DOWNLOADS + "/")
+                    || relative.startsWith(Environment.DIRECTORY_DOCUMENTS + "/")) {
+                return relative;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * MediaStore 条目返回公共目录中的文件路径，与直接写文件时相同；文档返回写入的文档URI
+     */
+    @Override
+    String location() {
+        if (kind == KIND_MEDIA) {
+            String path = mediaPath;
+            return path != null ? path : source;
+        }
+        Uri current = written;
+        return current != null ? current.toString() : source;
+    }
+
+    @Override
+    String uri() {
+        Uri current = written;
+        return current != null ? current.toString() : null;
+    }
+
+    @Override
+    String name() {
+        return name;
+    }
+
+    @Override
+    ExportTarget sibling(String siblingName) throws IOException {
+        switch (kind) {
+            case KIND_TREE:
+                return new ContentExportTarget(resolver, KIND_TREE, uri, siblingName, null, source);
+            case KIND_MEDIA:
+                return new ContentExportTarget(resolver, KIND_MEDIA, uri, siblingName, relativePath,
+                    new File(new File(Environment.getExternalStorageDirectory(), relativePath), siblingName).getAbsolutePath());
+            default:
+                throw new IOException("单个文档不能分卷保存，请选择保存目录: " + source);
+        }
+    }
+
+    @Override
+    File directory() {
+        // MediaStore 条目仍在主存储上，用公共目录检查剩余空间
+        return kind == KIND_MEDIA ? new File(Environment.getExternalStorageDirectory(), relativePath) : null;
+    }
+
+    @Override
+    Output open(boolean sync) throws IOException {
+        switch (kind) {
+            case KIND_TREE:
+                return openTree(sync);
+            case KIND_MEDIA:
+                return openMedia(sync);
+            default:
+                return openDocument(uri, sync, false);
+        }
+    }
+
+    /**
+     * 写入文档；created 为 true 时文档是本次在目录树中新建的，失败时删除，否则失败时只清空内容
+     */
+    private Output openDocument(Uri document, boolean sync, boolean created) throws IOException {
+        ParcelFileDescriptor descriptor = resolver.openFileDescriptor(document, "rw");
+        if (descriptor == null) {
+            throw new FileNotFoundException("无法打开文档: " + document);
+        }
+        long size = descriptor.getStatSize();
+        OutputStream out;
+        if (size >= 0) {
+            ParcelFileDescriptor.AutoCloseOutputStream file = new ParcelFileDescriptor.AutoCloseOutputStream(descriptor);
+            // “rw”不会截断，原有内容比新文件长时需要先截断
+            if (size > 0) {
+                file.getChannel().truncate(0);
+            }
+            out = file;
+        } else {
+            // 提供方给出的是管道而不是文件，只能按流写入
+            descriptor.close();
+            out = resolver.openOutputStream(document, "wt");
+            if (out == null) {
+                throw new FileNotFoundException("无法打开文档: " + document);
+            }
+        }
+        written = document;
+        return AtomicFileSink.direct(out, sync, new AtomicFileSink.Publisher() {
+            @Override
+            public void publish() {
+            }
+
+            @Override
+            public void discard() {
+                if (created) {
+                    deleteDocument(document);
+                    written = null;
+                    return;
+                }
+                // 文档由用户选择，保留文档本身（内存不足重试和继续导出还要写入），只清空写了一半的内容
+                try (OutputStream truncated = resolver.openOutputStream(document, "wt")) {
+                    Log.w(TAG, "导出失败，已清空文档: " + document);
+                } catch (IOException | RuntimeException e) {
+                    Log.w(TAG, "导出失败，文档内容不完整: " + document, e);
+                }
+            }
+        });
+    }
+
+    private Output openTree(boolean sync) throws IOException {
+        Uri parent = DocumentsContract.buildDocumentUriUsingTree(uri, DocumentsContract.getTreeDocumentId(uri));
+        Uri document = DocumentsContract.createDocument(resolver, parent, mimeType(name), name);
+        if (document == null) {
+            throw new IOException("无法在所选目录中创建文件: " + name);
+        }
+        try {
+            return openDocument(document, sync, true);
+        } catch (IOException | RuntimeException e) {
+            deleteDocument(document);
+            written = null;
+            throw e;
+        }
+    }
+
+    /**
+     * 总是新建条目，写入期间 IS_PENDING 为 1；同一目录下已有本应用的同名条目时，新条目会被 MediaStore 临时改名，
+     * 发布时删除旧条目并改回原来的文件名
+     */
+    private Output openMedia(boolean sync) throws IOException {
+        Uri replaced = findMedia();
+        ContentValues values = new ContentValues();
+        values.put(MediaStore.MediaColumns.DISPLAY_NAME, name);
+        values.put(MediaStore.MediaColumns.MIME_TYPE, mimeType(name));
+        values.put(MediaStore.MediaColumns.RELATIVE_PATH, relativePath);
+        values.put(MediaStore.MediaColumns.IS_PENDING, 1);
+        Uri media = resolver.insert(uri, values);
+        if (media == null) {
+            throw new IOException("无法创建 " + relativePath + name);
+        }
+        OutputStream out;
+        try {
+            ParcelFileDescriptor descriptor = resolver.openFileDescriptor(media, "w");
+            if (descriptor == null) {
+                throw new FileNotFoundException("无法打开 " + media);
+            }
+            out = new ParcelFileDescriptor.AutoCloseOutputStream(descriptor);
+        } catch (IOException | RuntimeException e) {
+            discardMedia(media);
+            throw e;
+        }
+        written = media;
+        readMediaPath(media);
+        return AtomicFileSink.direct(out, sync, new AtomicFileSink.Publisher() {
+            @Override
+            public void publish() throws IOException {
+                ContentValues published = new ContentValues();
+                published.put(MediaStore.MediaColumns.IS_PENDING, 0);
+                if (replaced != null && replace(replaced)) {
+                    ContentValues renamed = new ContentValues();
+                    renamed.put(MediaStore.MediaColumns.IS_PENDING, 0);
+                    renamed.put(MediaStore.MediaColumns.DISPLAY_NAME, name);
+                    try {
+                        if (resolver.update(media, renamed, null, null) > 0) {
+                            readMediaPath(media);
+                            return;
+                        }
+                    } catch (RuntimeException e) {
+                        // 改名失败时以 MediaStore 给出的文件名发布，location 返回实际的路径
+                        Log.w(TAG, "无法改回原来的文件名，保留为新的文件名: " + media, e);
+                    }
+                }
+                if (resolver.update(media, published, null, null) < 1) {
+                    throw new IOException("无法发布 " + media);
+                }
+                readMediaPath(media);
+            }
+
+            @Override
+            public void discard() {
+                discardMedia(media);
+                written = null;
+                mediaPath = null;
+            }
+        });
+    }
+
+    /**
+     * 本应用在同一目录下的同名条目；其他应用的文件查不到，与它们重名时由 MediaStore 在插入时改名
+     */
+    private Uri findMedia() {
+        try (Cursor cursor = resolver.query(uri, new String[]{MediaStore.MediaColumns._ID},
+                MediaStore.MediaColumns.RELATIVE_PATH + "=? AND " + MediaStore.MediaColumns.DISPLAY_NAME + "=?",
+                new String[]{relativePath, name}, null)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                return ContentUris.withAppendedId(uri, cursor.getLong(0));
+            }
+        } catch (RuntimeException e) {
+            Log.w(TAG, "查询已有条目失败，新建条目: " + relativePath + name, e);
+        }
+        return null;
+    }
+
+    /**
+     * 新条目写完后删除被覆盖的旧条目；删除失败时两者都保留，新条目使用 MediaStore 给出的文件名
+     */
+    private boolean replace(Uri replaced) {
+        try {
+            return resolver.delete(replaced, null, null) > 0;
+        } catch (RuntimeException e) {
+            Log.w(TAG, "无法删除被覆盖的条目: " + replaced, e);
+            return false;
+        }
+    }
+
+    /**
+     * 读取条目实际的 RELATIVE_PATH 和 DISPLAY_NAME，换算成公共目录中的文件路径
+     */
+    private void readMediaPath(Uri media) {
+        try (Cursor cursor = resolver.query(media, new String[]{MediaStore.MediaColumns.RELATIVE_PATH,
+                MediaStore.MediaColumns.DISPLAY_NAME}, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                String directory = cursor.getString(0);
+                String displayName = cursor.getString(1);
+                if (directory != null && displayName != null) {
+                    if (!directory.endsWith("/")) {
+                        directory += "/";
+                    }
+                    String root = source.substring(0, source.length() - relativePath.length() - name.length());
+                    mediaPath = root + directory + displayName;
+                }
+            }
+        } catch (RuntimeException e) {
+            Log.w(TAG, "查询条目的文件名失败: " + media, e);
+        }
+    }
+
+    private void discardMedia(Uri media) {
+        try {
+            resolver.delete(media, null, null);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "清理导出条目失败: " + media, e);
+        }
+    }
+
+    private void deleteDocument(Uri document) {
+        try {
+            DocumentsContract.deleteDocument(resolver, document);
+        } catch (FileNotFoundException | RuntimeException e) {
+            Log.w(TAG, "删除未完成的文档失败: " + document, e);
+        }
+    }
+
+    private static String mimeType(String fileName) {
+        String lower = fileName.toLowerCase(Locale.ROOT);
+        if (lower.endsWith(".pdf")) {
+            return "application/pdf";
+        }
+        if (lower.endsWith(".docx")) {
+            return "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
+        }
+        if (lower.endsWith(".epub")) {
+            return "application/epub+zip";
+        }
+        if (lower.endsWith(".txt")) {
+            return "text/plain";
+        }
+        return "application/octet-stream";
+    }
+}
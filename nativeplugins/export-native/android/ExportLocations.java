@@ -0,0 +1,167 @@
+package com.cwriter.export;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.os.Environment;
+import android.util.Log;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+
+import java.io.File;
+
+/**
+ * 导出位置 - 可用的导出目录和存储权限状态，解析一次后缓存
+ *
+ * 每次导出只比较一个廉价的签名（权限检查结果、所有文件访问权限、外部存储状态），都不访问文件系统；
+ * 签名变化（用户授予或撤销权限、存储卸载）时才重新解析目录。解析时不请求权限。
+ */
+final class ExportLocations {
+
+    private static final String TAG = "ExportLocations";
+
+    static final String DIR_NAME = "CwriterExports";
+
+    static final String ACCESS_FILE = "file";
+    static final String ACCESS_MEDIA_STORE = "mediastore";
+    static final String ACCESS_NONE = "none";
+
+    private static volatile ExportLocations current;
+
+    private final String signature;
+    /** 主存储根目录，如 /storage/emulated/0 */
+    final File externalRoot;
+    /** 应用私有的导出目录，不需要权限 */
+    final File privateDir;
+    /** 未指定保存路径时的导出目录，总是可以按文件读写 */
+    final File defaultDir;
+    /** 是否有 WRITE_EXTERNAL_STORAGE 权限 */
+    final boolean writePermission;
+    /** 能否按路径直接读写公共目录中的任意文件 */
+    final boolean sharedFileAccess;
+    /** 公共目录 Download/、Documents/ 是否只能经 MediaStore 写入 */
+    final boolean mediaStoreRequired;
+    final String storageState;
+    private final String externalFilesRoot;
+    private final String internalFilesRoot;
+
+    private ExportLocations(Context context, String signature, boolean writePermission, boolean allFilesAccess,
+                            String storageState) {
+        this.signature = signature;
+        this.writePermission = writePermission;
+        this.storageState = storageState;
+        this.externalRoot = Environment.getExternalStorageDirectory();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            this.sharedFileAccess = allFilesAccess;
+            this.mediaStoreRequired = !allFilesAccess;
+        } else {
+            this.sharedFileAccess = writePermission;
+            this.mediaStoreRequired = false;
+        }
+
+        // getExternalFilesDir 会创建目录；外部存储不可用时退回内部目录
+        File externalFiles = Environment.MEDIA_MOUNTED.equals(storageState) ? context.getExternalFilesDir(DIR_NAME) : null;
+        File privateDir = externalFiles;
+        if (privateDir == null) {
+            privateDir = new File(context.getFilesDir(), DIR_NAME);
+            if (!privateDir.isDirectory() && !privateDir.mkdirs()) {
+                Log.w(TAG, "无法创建应用导出目录: " + privateDir.getAbsolutePath());
+            }
+        }
+        this.privateDir = privateDir;
+        this.externalFilesRoot = externalFiles != null ? externalFiles.getParentFile().getAbsolutePath() : null;
+        this.internalFilesRoot = context.getFilesDir().getAbsolutePath();
+
+        // 默认导出总是本地文件，结果中的 path 可以直接按文件使用；
+        // 分区存储下公共目录只能经 MediaStore 写入（path 仍是文件路径，但应用不一定能按路径读取），因此放在私有目录
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            this.defaultDir = sharedFileAccess
+                ? new File(Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOCUMENTS), DIR_NAME)
+                : privateDir;
+        } else if (writePermission && Environment.MEDIA_MOUNTED.equals(storageState)) {
+            this.defaultDir = new File(externalRoot, DIR_NAME);
+        } else {
+            this.defaultDir = privateDir;
+        }
+    }
+
+    /**
+     * 当前的导出位置；签名与缓存一致时直接返回缓存
+     */
+    static ExportLocations get(Context context) {
+        boolean writePermission = context.checkSelfPermission(Manifest.permission.WRITE_EXTERNAL_STORAGE)
+            == PackageManager.PERMISSION_GRANTED;
+        boolean allFilesAccess;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            allFilesAccess = Environment.isExternalStorageManager();
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            allFilesAccess = writePermission && Environment.isExternalStorageLegacy();
+        } else {
+            allFilesAccess = writePermission;
+        }
+        String storageState = Environment.getExternalStorageState();
+        String signature = writePermission + "|" + allFilesAccess + "|" + storageState;
+
+        ExportLocations cached = current;
+        if (cached != null && cached.signature.equals(signature)) {
+            return cached;
+        }
+        synchronized (ExportLocations.class) {
+            cached = current;
+            if (cached == null || !cached.signature.equals(signature)) {
+                cached = new ExportLocations(context, signature, writePermission, allFilesAccess, storageState);
+                current = cached;
+                Log.d(TAG, "导出位置已更新: " + signature + ", 默认目录 " + cached.defaultDir.getAbsolutePath());
+            }
+            return cached;
+        }
+    }
+
+    /**
+     * 文件在应用私有目录（外部或内部）中，读写不需要权限
+     */
+    boolean isPrivate(File file) {
+        String path = file.getAbsolutePath();
+        return (externalFilesRoot != null && path.startsWith(externalFilesRoot + "/"))
+            || path.startsWith(internalFilesRoot + "/");
+    }
+
+    /**
+     * 公共目录的写入方式：直接写文件、经 MediaStore 或不可用
+     */
+    String sharedAccess() {
+        if (sharedFileAccess) {
+            return ACCESS_FILE;
+        }
+        return mediaStoreRequired ? ACCESS_MEDIA_STORE : ACCESS_NONE;
+    }
+
+    JSONObject toJSON() {
+        JSONArray roots = new JSONArray();
+        roots.add(root("private", privateDir, ACCESS_FILE));
+        String shared = Environment.MEDIA_MOUNTED.equals(storageState) ? sharedAccess() : ACCESS_NONE;
+        roots.add(root("documents", new File(Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOCUMENTS), DIR_NAME), shared));
+        roots.add(root("downloads", Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS), shared));
+
+        JSONObject result = new JSONObject();
+        result.put("success", true);
+        result.put("defaultDirectory", defaultDir.getAbsolutePath());
+        result.put("privateDirectory", privateDir.getAbsolutePath());
+        result.put("roots", roots);
+        result.put("writePermission", writePermission);
+        result.put("sharedFileAccess", sharedFileAccess);
+        result.put("mediaStore", mediaStoreRequired);
+        result.put("storageState", storageState);
+        return result;
+    }
+
+    private static JSONObject root(String name, File dir, String access) {
+        JSONObject root = new JSONObject();
+        root.put("name", name);
+        root.put("path", dir.getAbsolutePath());
+        root.put("access", access);
+        return root;
+    }
+}
@@ -1,29 +1,10 @@
 package com.cwriter.export;
 
-import android.os.Environment;
 import android.util.Log;
 
 import com.alibaba.fastjson.JSONObject;
-import com.alibaba.fastjson.JSONArray;
-
-import com.itextpdf.kernel.pdf.PdfDocument;
-import com.itextpdf.kernel.pdf.PdfWriter;
-import com.itextpdf.layout.Document;
-import com.itextpdf.layout.element.Paragraph;
-import com.itextpdf.layout.properties.TextAlignment;
-import com.itextpdf.kernel.font.PdfFont;
-import com.itextpdf.kernel.font.PdfFontFactory;
-
-import org.apache.poi.xwpf.usermodel.XWPFDocument;
-import org.apache.poi.xwpf.usermodel.XWPFParagraph;
-import org.apache.poi.xwpf.usermodel.XWPFRun;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
 
 /**
  * 直接导出工具类 - 基于测试项目中已验证的代码实现
@@ -32,543 +13,23 @@ import java.util.Locale;
 public class ExportUtils {
     
     private static final String TAG = "ExportUtils";
+
+    static {
+        AndroidPlatform.install();
+    }
     
     /**
-     * 导出PDF文件 - 基于测试项目已验证的实现
+     * 导出PDF文件，流程与 ExportModule 的异步导出相同（MultiFormatExporter.exportWith）
      */
     public static JSONObject exportToPDFDirect(JSONObject options) {
-        long startTime = System.currentTimeMillis();
-        JSONObject result = new JSONObject();
-        PdfDocument pdfDocument = null;
-        Document document = null;
-        PdfFont chineseFont = null;
-        FileOutputStream fos = null;
-        
-        try {
-            if (options == null) {
-                Log.e(TAG, "Error: options parameter is null");
-                result.put("success", false);
-                result.put("error", "Options parameter is null");
-                return result;
-            }
-            
-            // 获取结构化数据
-            String title = options.getString("title");
-            String description = options.getString("description");
-            JSONArray chapters = options.getJSONArray("chapters");
-            String savePath = options.getString("savePath");
-            JSONObject format = options.getJSONObject("format");
-            
-            if (title == null) title = "未命名作品";
-            if (description == null) description = "";
-            if (chapters == null) chapters = new JSONArray();
-            if (savePath == null || savePath.isEmpty()) {
-                File testFile = createFile("direct_pdf", ".pdf");
-                savePath = testFile.getAbsolutePath();
-            }
-            
-            Log.d(TAG, "开始导出PDF: " + savePath);
-            Log.d(TAG, "标题: " + title);
-            Log.d(TAG, "描述长度: " + (description != null ? description.length() : 0) + " 字符");
-            
-            // 确保目录存在并检查权限
-            File file = new File(savePath);
-            File parentDir = file.getParentFile();
-            
-            Log.d(TAG, "ExportUtils - 目标文件路径: " + file.getAbsolutePath());
-            Log.d(TAG, "ExportUtils - 父目录路径: " + (parentDir != null ? parentDir.getAbsolutePath() : "null"));
-            Log.d(TAG, "ExportUtils - 父目录存在: " + (parentDir != null ? parentDir.exists() : "false"));
-            
-            // 检查是否是系统受限目录
-            if (savePath.startsWith("/storage/emulated/0/Download/") || 
-                savePath.startsWith("/storage/emulated/0/Documents/")) {
-                Log.w(TAG, "ExportUtils - 尝试访问系统受限目录，可能需要特殊权限");
-                
-                // 尝试切换到应用私有目录
-                try {
-                    String appPrivateDir = android.os.Environment.getExternalStorageDirectory() + "/Android/data/com.example.cwriter/files/CwriterExports";
-                    File fallbackDir = new File(appPrivateDir);
-                    if (fallbackDir.exists() || fallbackDir.mkdirs()) {
-                        File fallbackFile = new File(fallbackDir, file.getName());
-                        savePath = fallbackFile.getAbsolutePath();
-                        Log.d(TAG, "ExportUtils - 切换到应用私有目录: " + savePath);
-                        file = new File(savePath);
-                        parentDir = file.getParentFile();
-                    }
-                } catch (Exception e) {
-                    Log.w(TAG, "ExportUtils - 创建应用私有目录失败", e);
-                }
-            }
-            
-            if (parentDir != null && !parentDir.exists()) {
-                Log.d(TAG, "ExportUtils - 尝试创建父目录: " + parentDir.getAbsolutePath());
-                boolean dirCreated = parentDir.mkdirs();
-                Log.d(TAG, "ExportUtils - 目录创建结果: " + dirCreated + ", 现在存在: " + parentDir.exists());
-            }
-            
-            // 检查目录权限
-            if (parentDir != null) {
-                boolean canRead = parentDir.canRead();
-                boolean canWrite = parentDir.canWrite();
-                boolean canExecute = parentDir.canExecute();
-                Log.d(TAG, "ExportUtils - 父目录权限 - 读取: " + canRead + ", 写入: " + canWrite + ", 执行: " + canExecute);
-                
-                if (!canWrite) {
-                    Log.w(TAG, "ExportUtils - 警告: 目标目录不可写入! 尝试使用备用目录");
-                    // 尝试使用应用私有目录作为备用
-                    File fallbackDir = new File(android.os.Environment.getExternalStorageDirectory(), "CwriterExports");
-                    if (fallbackDir.exists() || fallbackDir.mkdirs()) {
-                        File fallbackFile = new File(fallbackDir, file.getName());
-                        savePath = fallbackFile.getAbsolutePath();
-                        Log.d(TAG, "ExportUtils - 切换到备用路径: " + savePath);
-                        file = new File(savePath);
-                        parentDir = file.getParentFile();
-                        Log.d(TAG, "ExportUtils - 新父目录权限 - 读取: " + parentDir.canRead() + ", 写入: " + parentDir.canWrite());
-                    }
-                }
-            }
-            
-            // 创建PDF文档（使用测试项目已验证的方法）
-            Log.d(TAG, "ExportUtils - 开始创建PDF文档...");
-            try {
-                fos = new FileOutputStream(file);
-                Log.d(TAG, "ExportUtils - FileOutputStream创建成功");
-                pdfDocument = new PdfDocument(new PdfWriter(fos));
-                Log.d(TAG, "ExportUtils - PdfDocument创建成功");
-                document = new Document(pdfDocument);
-                Log.d(TAG, "ExportUtils - Document创建成功");
-            } catch (Exception fosError) {
-                Log.e(TAG, "ExportUtils - 创建FileOutputStream失败", fosError);
-                // 手动关闭流
-                if (fos != null) {
-                    try {
-                        fos.close();
-                    } catch (Exception closeError) {
-                        Log.w(TAG, "关闭FileOutputStream失败", closeError);
-                    }
-                }
-                throw fosError;
-            }
-            
-            // 尝试加载中文字体
-            try {
-                // 使用标准字体（支持中文的字体）
-                chineseFont = PdfFontFactory.createFont("STSong-Light", "UniGB-UCS2-H");
-                Log.d(TAG, "中文字体加载成功");
-            } catch (Exception fontError) {
-                Log.w(TAG, "STSong-Light字体加载失败，尝试备用字体", fontError);
-                
-                // 尝试其他字体方案
-                try {
-                    // 尝试使用内置字体常量（避免资源文件问题）
-                    chineseFont = PdfFontFactory.createFont(com.itextpdf.io.font.constants.StandardFonts.TIMES_ROMAN);
-                    Log.d(TAG, "Times-Roman字体作为备用字体加载成功");
-                } catch (Exception fallbackError) {
-                    Log.w(TAG, "Times-Roman加载失败，尝试Helvetica", fallbackError);
-                    try {
-                        // 使用内置字体常量，避免资源文件问题
-                        chineseFont = PdfFontFactory.createFont(com.itextpdf.io.font.constants.StandardFonts.HELVETICA);
-                        Log.d(TAG, "Helvetica字体作为备用字体加载成功");
-                    } catch (Exception e) {
-                        Log.w(TAG, "所有字体加载失败，将使用默认", e);
-                        chineseFont = null;
-                    }
-                }
-            }
-            
-            document.setMargins(50, 50, 50, 50);
-            
-            // 添加标题 - 根据格式要求：宋体二号，加粗，居中
-            try {
-                Paragraph titlePara = new Paragraph(title);
-                if (chineseFont != null) {
-                    titlePara.setFont(chineseFont);
-                }
-                int titleSize = format != null ? format.getIntValue("titleSize") : 22; // 二号字体
-                titlePara.setFontSize(titleSize)
-                    .setBold()
-                    .setTextAlignment(TextAlignment.CENTER)
-                    .setMarginBottom(20);
-                document.add(titlePara);
-            } catch (Exception e) {
-                Log.w(TAG, "添加标题段落失败，继续", e);
-            }
-
-            // 添加简介（如果存在）- 根据格式要求：宋体三号，加粗，靠左
-            if (description != null && !description.trim().isEmpty()) {
-                try {
-                    // 简介标题
-                    Paragraph descTitlePara = new Paragraph("简介");
-                    if (chineseFont != null) {
-                        descTitlePara.setFont(chineseFont);
-                    }
-                    int headingSize = format != null ? format.getIntValue("headingSize") : 16; // 三号字体
-                    descTitlePara.setFontSize(headingSize)
-                        .setBold()
-                        .setTextAlignment(TextAlignment.LEFT)
-                        .setMarginTop(10)
-                        .setMarginBottom(8);
-                    document.add(descTitlePara);
-                    
-                    // 简介内容 - 根据格式要求：宋体四号
-                    Paragraph descPara = new Paragraph(description);
-                    if (chineseFont != null) {
-                        descPara.setFont(chineseFont);
-                    }
-                    int bodySize = format != null ? format.getIntValue("bodySize") : 14; // 四号字体
-                    descPara.setFontSize(bodySize)
-                        .setTextAlignment(TextAlignment.LEFT)
-                        .setMarginBottom(15);
-                    
-                    // 设置行距（1.5倍）
-                    float lineSpacing = format != null && format.containsKey("lineSpacing") ? format.getFloatValue("lineSpacing") : 1.5f;
-                    descPara.setMultipliedLeading(lineSpacing);
-                    
-                    document.add(descPara);
-                } catch (Exception e) {
-                    Log.w(TAG, "添加简介失败，继续", e);
-                }
-            }
-
-            // 添加章节内容
-            if (chapters != null) {
-                float lineSpacing = format != null && format.containsKey("lineSpacing") ? format.getFloatValue("lineSpacing") : 1.5f;
-                int headingSize = format != null && format.containsKey("headingSize") ? format.getIntValue("headingSize") : 16;
-                int bodySize = format != null && format.containsKey("bodySize") ? format.getIntValue("bodySize") : 14;
-                
-                for (int i = 0; i < chapters.size(); i++) {
-                    try {
-                        JSONObject chapter = chapters.getJSONObject(i);
-                        String chapterTitle = chapter.getString("title") != null ? chapter.getString("title") : "第" + (i + 1) + "章";
-                        String chapterContent = chapter.getString("content") != null ? chapter.getString("content") : "";
-                        
-                        // 章节标题 - 根据格式要求：宋体三号，加粗，靠左
-                        Paragraph chapterTitlePara = new Paragraph("第" + (i + 1) + "章 " + chapterTitle);
-                        if (chineseFont != null) {
-                            chapterTitlePara.setFont(chineseFont);
-                        }
-                        chapterTitlePara.setFontSize(headingSize)
-                            .setBold()
-                            .setTextAlignment(TextAlignment.LEFT)
-                            .setMarginTop(15)
-                            .setMarginBottom(10);
-                        document.add(chapterTitlePara);
-                        
-                        // 章节内容 - 根据格式要求：宋体四号，1.5倍行距
-                        if (!chapterContent.trim().isEmpty()) {
-                            String[] contentLines = chapterContent.split("\n");
-                            for (String line : contentLines) {
-                                if (line.trim().length() > 0) {
-                                    Paragraph contentPara = new Paragraph(line.trim());
-                                    if (chineseFont != null) {
-                                        contentPara.setFont(chineseFont);
-                                    }
-                                    contentPara.setFontSize(bodySize)
-                                        .setTextAlignment(TextAlignment.LEFT)
-                                        .setMarginBottom(5)
-                                        .setMultipliedLeading(lineSpacing); // 1.5倍行距
-                                    document.add(contentPara);
-                                }
-                            }
-                        }
-                    } catch (Exception e) {
-                        Log.w(TAG, "添加章节 " + (i + 1) + " 失败，跳过", e);
-                    }
-                }
-            }
-            
-            // 关闭文档（修复流式关闭问题）
-            if (document != null) {
-                try {
-                    document.close();
-                    Log.d(TAG, "ExportUtils - Document关闭成功");
-                } catch (Exception e) {
-                    Log.w(TAG, "ExportUtils - Document关闭失败或已关闭", e);
-                }
-            }
-            if (pdfDocument != null) {
-                try {
-                    pdfDocument.close();
-                    Log.d(TAG, "ExportUtils - PdfDocument关闭成功");
-                } catch (Exception e) {
-                    Log.w(TAG, "ExportUtils - PdfDocument关闭失败或已关闭", e);
-                }
-            }
-            // 不要手动关闭fos，因为PdfDocument会管理它
-            // 否则会导致"Cannot close document"错误
-            
-            long endTime = System.currentTimeMillis();
-            
-            result.put("success", true);
-            result.put("path", savePath);
-            result.put("duration", endTime - startTime);
-            
-            Log.d(TAG, "PDF导出成功: " + savePath + ", 耗时: " + (endTime - startTime) + "ms");
-            return result;
-            
-        } catch (Exception e) {
-            long endTime = System.currentTimeMillis();
-            Log.e(TAG, "PDF导出失败, 耗时: " + (endTime - startTime) + "ms", e);
-            result.put("success", false);
-            result.put("error", "PDF导出失败: " + e.getMessage());
-            result.put("duration", endTime - startTime);
-            
-            // 确保资源正确关闭
-            try {
-                if (document != null) {
-                    try {
-                        document.close();
-                        Log.d(TAG, "ExportUtils - Document异常关闭成功");
-                    } catch (Exception closeError) {
-                        Log.w(TAG, "Document关闭异常", closeError);
-                    }
-                }
-                if (pdfDocument != null) {
-                    try {
-                        pdfDocument.close();
-                        Log.d(TAG, "ExportUtils - PdfDocument异常关闭成功");
-                    } catch (Exception closeError) {
-                        Log.w(TAG, "PdfDocument关闭异常", closeError);
-                    }
-                }
-                // 注意：FileOutputStream在前面的try块中处理，这里不需要关闭
-            } catch (Exception closeError) {
-                Log.w(TAG, "PDF资源关闭错误", closeError);
-            }
-            
-            return result;
-        }
+        return MultiFormatExporter.exportWith(new PdfWorkRenderer(), options);
     }
     
     /**
-     * 导出DOCX文件 - 基于测试项目已验证的实现
+     * 导出DOCX文件，流程与 ExportModule 的异步导出相同（MultiFormatExporter.exportWith）
      */
     public static JSONObject exportToDOCXDirect(JSONObject options) {
-        long startTime = System.currentTimeMillis();
-        JSONObject result = new JSONObject();
-        XWPFDocument document = null;
-        FileOutputStream out = null;
-        
-        try {
-            if (options == null) {
-                Log.e(TAG, "Error: options parameter is null");
-                result.put("success", false);
-                result.put("error", "Options parameter is null");
-                return result;
-            }
-            
-            // 获取结构化数据
-            String title = options.getString("title");
-            String description = options.getString("description");
-            JSONArray chapters = options.getJSONArray("chapters");
-            String savePath = options.getString("savePath");
-            JSONObject format = options.getJSONObject("format");
-            
-            if (title == null) title = "未命名作品";
-            if (description == null) description = "";
-            if (chapters == null) chapters = new JSONArray();
-            if (savePath == null || savePath.isEmpty()) {
-                File testFile = createFile("direct_docx", ".docx");
-                savePath = testFile.getAbsolutePath();
-            }
-            
-            Log.d(TAG, "开始导出DOCX: " + savePath);
-            Log.d(TAG, "标题: " + title);
-            Log.d(TAG, "描述长度: " + (description != null ? description.length() : 0) + " 字符");
-            
-            // 确保目录存在并检查权限
-            File file = new File(savePath);
-            File parentDir = file.getParentFile();
-            
-            Log.d(TAG, "ExportUtils - DOCX目标文件路径: " + file.getAbsolutePath());
-            Log.d(TAG, "ExportUtils - DOCX父目录路径: " + (parentDir != null ? parentDir.getAbsolutePath() : "null"));
-            Log.d(TAG, "ExportUtils - DOCX父目录存在: " + (parentDir != null ? parentDir.exists() : "false"));
-            
-            // 检查是否是系统受限目录
-            if (savePath.startsWith("/storage/emulated/0/Download/") || 
-                savePath.startsWith("/storage/emulated/0/Documents/")) {
-                Log.w(TAG, "ExportUtils - DOCX尝试访问系统受限目录，可能需要特殊权限");
-                
-                // 尝试切换到应用私有目录
-                try {
-                    String appPrivateDir = android.os.Environment.getExternalStorageDirectory() + "/Android/data/com.example.cwriter/files/CwriterExports";
-                    File fallbackDir = new File(appPrivateDir);
-                    if (fallbackDir.exists() || fallbackDir.mkdirs()) {
-                        File fallbackFile = new File(fallbackDir, file.getName());
-                        savePath = fallbackFile.getAbsolutePath();
-                        Log.d(TAG, "ExportUtils - DOCX切换到应用私有目录: " + savePath);
-                        file = new File(savePath);
-                        parentDir = file.getParentFile();
-                    }
-                } catch (Exception e) {
-                    Log.w(TAG, "ExportUtils - DOCX创建应用私有目录失败", e);
-                }
-            }
-            
-            if (parentDir != null && !parentDir.exists()) {
-                Log.d(TAG, "ExportUtils - DOCX尝试创建父目录: " + parentDir.getAbsolutePath());
-                boolean dirCreated = parentDir.mkdirs();
-                Log.d(TAG, "ExportUtils - DOCX目录创建结果: " + dirCreated + ", 现在存在: " + parentDir.exists());
-            }
-            
-            // 检查目录权限
-            if (parentDir != null) {
-                boolean canRead = parentDir.canRead();
-                boolean canWrite = parentDir.canWrite();
-                boolean canExecute = parentDir.canExecute();
-                Log.d(TAG, "ExportUtils - DOCX父目录权限 - 读取: " + canRead + ", 写入: " + canWrite + ", 执行: " + canExecute);
-                
-                if (!canWrite) {
-                    Log.w(TAG, "ExportUtils - DOCX警告: 目标目录不可写入! 尝试使用备用目录");
-                    // 尝试使用应用私有目录作为备用
-                    File fallbackDir = new File(android.os.Environment.getExternalStorageDirectory(), "CwriterExports");
-                    if (fallbackDir.exists() || fallbackDir.mkdirs()) {
-                        File fallbackFile = new File(fallbackDir, file.getName());
-                        savePath = fallbackFile.getAbsolutePath();
-                        Log.d(TAG, "ExportUtils - DOCX切换到备用路径: " + savePath);
-                        file = new File(savePath);
-                        parentDir = file.getParentFile();
-                        Log.d(TAG, "ExportUtils - DOCX新父目录权限 - 读取: " + parentDir.canRead() + ", 写入: " + parentDir.canWrite());
-                    } else {
-                        throw new IOException("Directory is not writable: " + parentDir.getAbsolutePath());
-                    }
-                }
-            }
-            
-            // 创建DOCX文档（使用测试项目已验证的方法）
-            document = new XWPFDocument();
-            Log.d(TAG, "ExportUtils: XWPFDocument created successfully");
-            
-            // 添加标题 - 根据格式要求：宋体二号，加粗，居中
-            XWPFParagraph titlePara = document.createParagraph();
-            titlePara.setAlignment(org.apache.poi.xwpf.usermodel.ParagraphAlignment.CENTER);
-            titlePara.setSpacingAfter(200); // 20磅间距
-            XWPFRun titleRun = titlePara.createRun();
-            titleRun.setText(title);
-            titleRun.setBold(true);
-            titleRun.setFontFamily("宋体");
-            int titleSize = format != null && format.containsKey("titleSize") ? format.getIntValue("titleSize") : 22; // 二号字体
-            titleRun.setFontSize(titleSize);
-            Log.d(TAG, "ExportUtils: Title paragraph added with size: " + titleSize);
-
-            // 添加简介（如果存在）- 根据格式要求：宋体三号，加粗，靠左
-            if (description != null && !description.trim().isEmpty()) {
-                // 简介标题
-                XWPFParagraph descTitlePara = document.createParagraph();
-                descTitlePara.setAlignment(org.apache.poi.xwpf.usermodel.ParagraphAlignment.LEFT);
-                descTitlePara.setSpacingBefore(100);
-                descTitlePara.setSpacingAfter(80);
-                XWPFRun descTitleRun = descTitlePara.createRun();
-                descTitleRun.setText("简介");
-                descTitleRun.setBold(true);
-                descTitleRun.setFontFamily("宋体");
-                int headingSize = format != null && format.containsKey("headingSize") ? format.getIntValue("headingSize") : 16; // 三号字体
-                descTitleRun.setFontSize(headingSize);
-                
-                // 简介内容 - 根据格式要求：宋体四号
-                XWPFParagraph descPara = document.createParagraph();
-                descPara.setAlignment(org.apache.poi.xwpf.usermodel.ParagraphAlignment.LEFT);
-                descPara.setSpacingAfter(150);
-                XWPFRun descRun = descPara.createRun();
-                descRun.setText(description);
-                descRun.setFontFamily("宋体");
-                int bodySize = format != null && format.containsKey("bodySize") ? format.getIntValue("bodySize") : 14; // 四号字体
-                descRun.setFontSize(bodySize);
-                
-                Log.d(TAG, "ExportUtils: Description added with heading size: " + headingSize + ", body size: " + bodySize);
-            }
-
-            // 添加章节内容
-            if (chapters != null) {
-                int headingSize = format != null ? format.getIntValue("headingSize") : 16;
-                int bodySize = format != null ? format.getIntValue("bodySize") : 14;
-                double lineSpacing = format != null ? format.getDoubleValue("lineSpacing") : 1.5;
-                
-                for (int i = 0; i < chapters.size(); i++) {
-                    try {
-                        JSONObject chapter = chapters.getJSONObject(i);
-                        String chapterTitle = chapter.getString("title") != null ? chapter.getString("title") : "第" + (i + 1) + "章";
-                        String chapterContent = chapter.getString("content") != null ? chapter.getString("content") : "";
-                        
-                        // 章节标题 - 根据格式要求：宋体三号，加粗，靠左
-                        XWPFParagraph chapterTitlePara = document.createParagraph();
-                        chapterTitlePara.setAlignment(org.apache.poi.xwpf.usermodel.ParagraphAlignment.LEFT);
-                        chapterTitlePara.setSpacingBefore(150);
-                        chapterTitlePara.setSpacingAfter(100);
-                        XWPFRun chapterTitleRun = chapterTitlePara.createRun();
-                        chapterTitleRun.setText("第" + (i + 1) + "章 " + chapterTitle);
-                        chapterTitleRun.setBold(true);
-                        chapterTitleRun.setFontFamily("宋体");
-                        chapterTitleRun.setFontSize(headingSize);
-                        
-                        // 章节内容 - 根据格式要求：宋体四号，1.5倍行距
-                        if (!chapterContent.trim().isEmpty()) {
-                            String[] contentLines = chapterContent.split("\n");
-                            for (String line : contentLines) {
-                                if (line.trim().length() > 0) {
-                                    XWPFParagraph contentPara = document.createParagraph();
-                                    contentPara.setAlignment(org.apache.poi.xwpf.usermodel.ParagraphAlignment.LEFT);
-                                    contentPara.setSpacingAfter(150);
-                                    contentPara.setSpacingBetween(lineSpacing); // 1.5倍行距
-                                    XWPFRun contentRun = contentPara.createRun();
-                                    contentRun.setText(line.trim());
-                                    contentRun.setFontFamily("宋体");
-                                    contentRun.setFontSize(bodySize);
-                                }
-                            }
-                        }
-                    } catch (Exception e) {
-                        Log.w(TAG, "ExportUtils: Failed to add chapter " + (i + 1) + ", continuing", e);
-                    }
-                }
-            }
-            Log.d(TAG, "ExportUtils: All chapters and content added");
-            
-            // 保存文件
-            Log.d(TAG, "ExportUtils: Opening FileOutputStream: " + file.getAbsolutePath());
-            out = new FileOutputStream(file);
-            Log.d(TAG, "ExportUtils: FileOutputStream opened, writing document...");
-            document.write(out);
-            Log.d(TAG, "ExportUtils: Document written to file");
-            out.flush();
-            Log.d(TAG, "ExportUtils: FileOutputStream flushed");
-            
-            long endTime = System.currentTimeMillis();
-            
-            result.put("success", true);
-            result.put("path", savePath);
-            result.put("duration", endTime - startTime);
-            
-            Log.d(TAG, "DOCX导出成功: " + savePath + ", 耗时: " + (endTime - startTime) + "ms");
-            return result;
-            
-        } catch (Exception e) {
-            long endTime = System.currentTimeMillis();
-            Log.e(TAG, "ExportUtils: DOCX导出失败, 耗时: " + (endTime - startTime) + "ms", e);
-            Log.e(TAG, "ExportUtils: Exception type: " + e.getClass().getName());
-            Log.e(TAG, "ExportUtils: Exception message: " + e.getMessage());
-            if (e.getCause() != null) {
-                Log.e(TAG, "ExportUtils: Exception cause: " + e.getCause().getMessage());
-            }
-            e.printStackTrace();
-            result.put("success", false);
-            result.put("error", "DOCX导出失败: " + e.getMessage());
-            result.put("duration", endTime - startTime);
-            return result;
-            
-        } finally {
-            // 确保资源正确关闭
-            try {
-                if (out != null) {
-                    out.close();
-                }
-                if (document != null) {
-                    document.close();
-                }
-            } catch (Exception closeError) {
-                Log.w(TAG, "DOCX资源关闭错误", closeError);
-            }
-        }
+        return MultiFormatExporter.exportWith(new DocxWorkRenderer(), options);
     }
     
     /**
@@ -626,7 +87,8 @@ public class ExportUtils {
             
             // 调用主导出方法
             Log.d(TAG, "调用主PDF导出方法");
-            JSONObject exportResult = exportToPDFDirect(options);
+            final JSONObject parsedOptions = options;
+            JSONObject exportResult = indexed("pdf", options, () -> exportToPDFDirect(parsedOptions));
             Log.d(TAG, "主PDF导出方法返回，成功: " + exportResult.getBoolean("success"));
             return exportResult;
             
@@ -695,7 +157,8 @@ public class ExportUtils {
             
             // 调用主导出方法
             Log.d(TAG, "调用主DOCX导出方法");
-            JSONObject exportResult = exportToDOCXDirect(options);
+            final JSONObject parsedOptions = options;
+            JSONObject exportResult = indexed("docx", options, () -> exportToDOCXDirect(parsedOptions));
             Log.d(TAG, "主DOCX导出方法返回，成功: " + exportResult.getBoolean("success"));
             return exportResult;
             
@@ -709,45 +172,17 @@ public class ExportUtils {
         }
     }
     
-    /**
-     * 创建文件路径（参考测试项目的实现）
-     */
-    private static File createFile(String prefix, String extension) {
-        String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
-        String fileName = prefix + "_" + timeStamp + extension;
-        
-        File directory;
-        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.R) {
-            directory = new File(Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOCUMENTS), "CwriterExports");
-        } else {
-            directory = new File(Environment.getExternalStorageDirectory(), "CwriterExports");
-        }
-        
-        if (!directory.exists()) {
-            directory.mkdirs();
-        }
-        
-        return new File(directory, fileName);
-    }
-    
-    /**
-     * 获取当前时间字符串
-     */
-    private static String getCurrentTime() {
-        return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault()).format(new Date());
-    }
-    
     /**
      * 插件专用方法 - 通过反射调用，避免分包问题
-     * 直接返回JSONObject，避免参数传递问题
+     * 直接返回JSONObject，避免参数传递问题；savePath 为null时保存到默认导出目录
      */
     public static JSONObject exportToPDFForPlugin(String title, String content, String savePath) {
         JSONObject options = new JSONObject();
         options.put("title", title != null ? title : "未命名文档");
         options.put("content", content != null ? content : "");
-        options.put("savePath", savePath != null ? savePath : createFile("plugin_pdf", ".pdf").getAbsolutePath());
+        options.put("savePath", savePath);
         
-        return exportToPDFDirect(options);
+        return indexed("pdf", options, () -> exportToPDFDirect(options));
     }
     
     /**
@@ -758,81 +193,30 @@ public class ExportUtils {
         JSONObject options = new JSONObject();
         options.put("title", title != null ? title : "未命名文档");
         options.put("content", content != null ? content : "");
-        options.put("savePath", savePath != null ? savePath : createFile("plugin_docx", ".docx").getAbsolutePath());
+        options.put("savePath", savePath);
         
-        return exportToDOCXDirect(options);
+        return indexed("docx", options, () -> exportToDOCXDirect(options));
     }
     
     /**
-     * 获取安全的导出路径（自动选择有权限的路径）
+     * 从 JS 直接调用时也经过导出结果索引：索引与默认导出目录相同（见 ExportModule.configureResultCache），
+     * 同步导出和异步导出共用一个索引
      */
-    public static String getSafeExportPath(String filename, String extension) {
-        try {
-            // 1. 优先使用应用外部私有目录（Android/data/包名/files）
-            String externalFilesPath = android.os.Environment.getExternalStorageDirectory() + 
-                "/Android/data/com.example.cwriter/files/CwriterExports";
-            File externalDir = new File(externalFilesPath);
-            if (externalDir.exists() || externalDir.mkdirs()) {
-                File testFile = new File(externalDir, filename + extension);
-                if (testFile.getParentFile().canWrite()) {
-                    Log.d(TAG, "使用应用外部私有目录: " + testFile.getAbsolutePath());
-                    return testFile.getAbsolutePath();
-                }
-            }
-            
-            // 2. 备用：使用标准外部存储的CwriterExports目录
-            String standardPath = android.os.Environment.getExternalStorageDirectory() + "/CwriterExports";
-            File standardDir = new File(standardPath);
-            if (standardDir.exists() || standardDir.mkdirs()) {
-                File testFile = new File(standardDir, filename + extension);
-                if (testFile.getParentFile().canWrite()) {
-                    Log.d(TAG, "使用标准外部存储目录: " + testFile.getAbsolutePath());
-                    return testFile.getAbsolutePath();
-                }
-            }
-            
-            // 3. 最后备用：使用缓存目录（临时文件）
-            String cachePath = android.os.Environment.getExternalStorageDirectory() + "/Android/data/com.example.cwriter/cache/CwriterExports";
-            File cacheDir = new File(cachePath);
-            if (cacheDir.exists() || cacheDir.mkdirs()) {
-                File testFile = new File(cacheDir, filename + extension);
-                Log.d(TAG, "使用缓存目录: " + testFile.getAbsolutePath());
-                return testFile.getAbsolutePath();
-            }
-            
-            // 4. 如果都失败，返回一个默认路径
-            String fallbackPath = android.os.Environment.getExternalStorageDirectory() + "/Download/" + filename + extension;
-            Log.w(TAG, "所有路径都失败，使用默认路径: " + fallbackPath);
-            return fallbackPath;
-            
-        } catch (Exception e) {
-            Log.e(TAG, "获取安全导出路径失败", e);
-            return android.os.Environment.getExternalStorageDirectory() + "/Download/" + filename + extension;
+    private static JSONObject indexed(String format, JSONObject options, ExportQueue.Task task) {
+        File directory = ExportTarget.defaultDirectory();
+        if (directory != null) {
+            ExportResultCache.configure(directory);
         }
+        return ExportResultCache.run(format, options, task);
     }
     
     /**
-     * 检查文件是否已存在并生成唯一文件名
+     * 获取默认的导出路径：与 ExportModule 相同的默认导出目录（ExportLocations.defaultDir），随存储权限选择公共目录或应用私有目录；
+     * 导出模块还没有接上 Context 时返回null
      */
-    public static String getUniqueFilePath(String basePath, String extension) {
-        File file = new File(basePath);
-        String nameWithoutExt = file.getName();
-        if (nameWithoutExt.endsWith(extension)) {
-            nameWithoutExt = nameWithoutExt.substring(0, nameWithoutExt.length() - extension.length());
-        }
-        
-        File directory = file.getParentFile();
-        String filePath = basePath;
-        int counter = 1;
-        
-        while (new File(filePath).exists()) {
-            String newName = nameWithoutExt + "_" + counter + extension;
-            filePath = new File(directory, newName).getAbsolutePath();
-            counter++;
-        }
-        
-        Log.d(TAG, "生成唯一文件路径: " + filePath);
-        return filePath;
+    public static String getSafeExportPath(String filename, String extension) {
+        File directory = ExportTarget.defaultDirectory();
+        return directory != null ? new File(directory, filename + extension).getAbsolutePath() : null;
     }
     
     /**
@@ -846,7 +230,7 @@ public class ExportUtils {
             Log.d(TAG, "可用存储空间: " + (freeSpace / 1024 / 1024) + "MB, 需要: " + (requiredBytes / 1024 / 1024) + "MB");
             
             // 留出10MB的缓冲空间
-            return freeSpace > (requiredBytes + 10 * 1024 * 1024);
+            return freeSpace > (requiredBytes + ExportEstimator.STORAGE_RESERVE_BYTES);
             
         } catch (Exception e) {
             Log.e(TAG, "检查存储空间失败", e);
@@ -863,15 +247,9 @@ public class ExportUtils {
             Class.forName("com.itextpdf.kernel.pdf.PdfDocument");
             Class.forName("org.apache.poi.xwpf.usermodel.XWPFDocument");
             
-            // 检查基本的存储权限
-            String testPath = getSafeExportPath("test", ".txt");
-            File testFile = new File(testPath);
-            File parentDir = testFile.getParentFile();
-            
-            boolean canWrite = parentDir != null && parentDir.canWrite();
-            Log.d(TAG, "导出工具可用性检查 - 权限可用: " + canWrite);
-            
-            return canWrite;
+            // 默认导出位置不需要存储权限（分区存储下经 MediaStore 写入），不再试探目录是否可写
+            Log.d(TAG, "导出工具可用性检查 - 依赖可用");
+            return true;
             
         } catch (Exception e) {
             Log.e(TAG, "导出工具依赖检查失败", e);
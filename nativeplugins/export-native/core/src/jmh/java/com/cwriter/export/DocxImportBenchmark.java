@@ -0,0 +1,49 @@
+package com.cwriter.export;
+
+import com.alibaba.fastjson.JSONObject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 导入基准：解析由DOCX渲染器生成的合成作品，并按样式还原章节
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms512m", "-Xmx512m"})
+public class DocxImportBenchmark {
+
+    @Param({"10000", "100000", "1000000", "5000000"})
+    public int chars;
+
+    private byte[] docx;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        docx = SyntheticCorpus.docx(SyntheticCorpus.options(chars, 42));
+    }
+
+    @Benchmark
+    public JSONObject parse(CharCounters counters) throws Exception {
+        ExportMetrics metrics = new ExportMetrics();
+        JSONObject data = DocxWorkParser.parse(new ByteArrayInputStream(docx), null, "benchmark", metrics);
+        counters.chars += metrics.charsProcessed();
+        return data;
+    }
+}
@@ -0,0 +1,55 @@
+package com.cwriter.export;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 导出基准：各格式渲染同一份合成作品
+ *
+ * chars 计数器给出 chars/s，-prof gc 给出分配速率，HeapPeakProfiler 给出堆峰值。
+ * 堆上限取 512MB，接近中端机的应用堆大小。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms512m", "-Xmx512m"})
+public class ExportBenchmark {
+
+    @Param({"10000", "100000", "1000000", "5000000"})
+    public int chars;
+
+    @Param({"pdf", "docx", "txt", "epub"})
+    public String format;
+
+    private ExportWork work;
+    private WorkRenderer renderer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        work = ExportWork.from(SyntheticCorpus.options(chars, 42));
+        renderer = MultiFormatExporter.rendererFor(format);
+    }
+
+    @Benchmark
+    public long render(CharCounters counters) throws Exception {
+        ExportMetrics metrics = new ExportMetrics();
+        renderer.render(work, OutputStream.nullOutputStream(), metrics);
+        counters.chars += metrics.charsProcessed();
+        return metrics.bytesWritten();
+    }
+}
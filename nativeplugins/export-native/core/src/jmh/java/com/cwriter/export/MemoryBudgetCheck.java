@@ -0,0 +1,245 @@
+package com.cwriter.export;
+
+import com.alibaba.fastjson.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.lang.ref.Reference;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * 内存预算检查 - 用固定规模的合成作品（100、1000、5000章）跑各导出/导入引擎，
+ * 超出预算时以非零状态退出：
+ *
+ *   1. 每字符分配字节数（当前线程的累计分配量）
+ *   2. 章节边界上的存活堆增量（相对渲染开始前，已扣除作品本身）
+ *   3. 章节边界上存活的排版对象数（iText layout / POI XWPF 实例）
+ *
+ * PDF 和 TXT 的存活量必须与作品规模无关；DOCX 由 POI 在内存中持有整个文档，
+ * 只限制每字符/每段落的成本，防止它进一步恶化。
+ *
+ * 运行: gradle memoryBudget（不随 check 运行，需要单独执行）
+ */
+final class MemoryBudgetCheck {
+
+    private static final int[] CHAPTER_COUNTS = {100, 1000, 5000};
+    private static final int CHARS_PER_CHAPTER = 600;
+    /** 每次渲染的采样点数，采样会触发完整GC */
+    private static final int CHECKPOINTS = 8;
+
+    private static final Pattern HISTOGRAM_LINE = Pattern.compile("^\\s*\\d+:\\s+(\\d+)\\s+(\\d+)\\s+(\\S+)");
+
+    /**
+     * 各引擎的预算
+     */
+    private static final class Budget {
+        final String name;
+        /** 每字符分配字节数上限 */
+        final double allocatedPerChar;
+        /** 存活堆增量的固定上限 */
+        final long retainedFixed;
+        /** 存活堆增量中允许随字符数增长的部分 */
+        final double retainedPerChar;
+        /** 存活排版对象数的固定上限 */
+        final long layoutObjectsFixed;
+        /** 存活排版对象数中允许随段落数增长的部分 */
+        final double layoutObjectsPerParagraph;
+        /** 存活排版对象的类名前缀 */
+        final String layoutPrefix;
+
+        Budget(String name, double allocatedPerChar, long retainedFixed, double retainedPerChar,
+               long layoutObjectsFixed, double layoutObjectsPerParagraph, String layoutPrefix) {
+            this.name = name;
+            this.allocatedPerChar = allocatedPerChar;
+            this.retainedFixed = retainedFixed;
+            this.retainedPerChar = retainedPerChar;
+            this.layoutObjectsFixed = layoutObjectsFixed;
+            this.layoutObjectsPerParagraph = layoutObjectsPerParagraph;
+            this.layoutPrefix = layoutPrefix;
+        }
+    }
+
+    private static final long MB = 1024 * 1024;
+
+    // 预算约为当前实测值的两倍（600字/章，JDK 17，SerialGC）
+    private static final Budget[] EXPORT_BUDGETS = {
+        // iText 按页刷出，存活的排版对象应保持在几十个
+        new Budget("pdf", 800, 16 * MB, 0, 200, 0, "com.itextpdf.layout."),
+        // XWPFDocument 在内存中持有整个文档：约 24 字节/字符、每段落 2~3 个对象
+        new Budget("docx", 200, 16 * MB, 48, 1000, 3, "org.apache.poi.xwpf.usermodel."),
+        // 流式DOCX（内存准入的降级路径）不构建文档对象，只有压缩器和写缓冲
+        new Budget("docx-stream", 8, 4 * MB, 0, 0, 0, null),
+        new Budget("txt", 8, 4 * MB, 0, 0, 0, null),
+        // EPUB每章一个XHTML条目，和流式DOCX一样只有压缩器和写缓冲
+        new Budget("epub", 24, 4 * MB, 0, 0, 0, null),
+    };
+
+    // 解析结束后只应保留结果数据（字符串约 2 字节/字符），文档对象必须已释放
+    private static final Budget IMPORT_BUDGET = new Budget("import.docx", 400, 16 * MB, 8, 1000, 0,
+        "org.apache.poi.xwpf.usermodel.");
+
+    private final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final List<String> violations = new ArrayList<>();
+
+    public static void main(String[] args) throws Exception {
+        MemoryBudgetCheck check = new MemoryBudgetCheck();
+        // 先跑一遍最小规模，排除类加载和字体加载的一次性分配
+        for (Budget budget : EXPORT_BUDGETS) {
+            check.export(budget, ExportWork.from(SyntheticCorpus.options(10, CHARS_PER_CHAPTER, 1)), false);
+        }
+
+        for (int chapters : CHAPTER_COUNTS) {
+            JSONObject options = SyntheticCorpus.options(chapters, CHARS_PER_CHAPTER, 42);
+            ExportWork work = ExportWork.from(options);
+            for (Budget budget : EXPORT_BUDGETS) {
+                check.export(budget, work, true);
+            }
+            check.importDocx(SyntheticCorpus.docx(options), work, true);
+        }
+
+        if (!check.violations.isEmpty()) {
+            System.out.println();
+            System.out.println("Memory budget exceeded:");
+            for (String violation : check.violations) {
+                System.out.println("  " + violation);
+            }
+            System.exit(1);
+        }
+        System.out.println("All memory budgets met");
+    }
+
+    private void export(Budget budget, ExportWork work, boolean enforce) throws Exception {
+        WorkRenderer renderer = "docx-stream".equals(budget.name)
+            ? new StreamingDocxWorkRenderer() : MultiFormatExporter.rendererFor(budget.name);
+        ExportMetrics metrics = new ExportMetrics();
+        Sampler sampler = new Sampler(budget, work.chapters.size());
+        metrics.setChapterListener(sampler);
+
+        sampler.baseline();
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        renderer.render(work, OutputStream.nullOutputStream(), metrics);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore - sampler.samplingAllocated;
+
+        if (enforce) {
+            report(budget, work.chapters.size(), work.charCount, work.paragraphCount, allocated, sampler);
+        }
+    }
+
+    private void importDocx(byte[] docx, ExportWork work, boolean enforce) throws Exception {
+        ExportMetrics metrics = new ExportMetrics();
+        Sampler sampler = new Sampler(IMPORT_BUDGET, 0);
+        sampler.baseline();
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        JSONObject data = DocxWorkParser.parse(new ByteArrayInputStream(docx), null, "budget", metrics);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        // 解析结果本身随作品增长，在采样时保持可达
+        sampler.sample(0, data);
+        if (enforce) {
+            report(IMPORT_BUDGET, work.chapters.size(), work.charCount, work.paragraphCount, allocated, sampler);
+        }
+    }
+
+    private void report(Budget budget, int chapters, long chars, int paragraphs, long allocated, Sampler sampler) {
+        double allocatedPerChar = (double) allocated / chars;
+        long retainedLimit = budget.retainedFixed + (long) (budget.retainedPerChar * chars);
+        long layoutLimit = budget.layoutObjectsFixed + (long) (budget.layoutObjectsPerParagraph * paragraphs);
+
+        System.out.printf("%-12s chapters=%5d chars=%8d  alloc=%7.1f B/char (<= %.0f)  retained=%6.1f MB (<= %.1f)  layoutObjects=%7d (<= %d)%n",
+            budget.name, chapters, chars, allocatedPerChar, budget.allocatedPerChar,
+            sampler.maxRetained / (double) MB, retainedLimit / (double) MB, sampler.maxLayoutObjects, layoutLimit);
+
+        String where = budget.name + " @ " + chapters + " chapters: ";
+        if (allocatedPerChar > budget.allocatedPerChar) {
+            violations.add(where + String.format("allocated %.1f B/char > %.0f", allocatedPerChar, budget.allocatedPerChar));
+        }
+        if (sampler.maxRetained > retainedLimit) {
+            violations.add(where + "retained " + sampler.maxRetained + " bytes > " + retainedLimit
+                + " (after chapter " + sampler.maxRetainedChapter + ")");
+        }
+        if (budget.layoutPrefix != null && sampler.maxLayoutObjects > layoutLimit) {
+            violations.add(where + "live layout objects " + sampler.maxLayoutObjects + " > " + layoutLimit);
+        }
+    }
+
+    /**
+     * 在章节边界采样存活堆和排版对象数；采样本身的分配从预算中扣除
+     */
+    private final class Sampler implements ExportMetrics.ChapterListener {
+        private final Budget budget;
+        private final int interval;
+        private long baselineBytes;
+        private long samplingAllocated;
+        private long maxRetained;
+        private int maxRetainedChapter;
+        private long maxLayoutObjects;
+
+        Sampler(Budget budget, int chapters) {
+            this.budget = budget;
+            this.interval = Math.max(1, chapters / CHECKPOINTS);
+        }
+
+        void baseline() throws Exception {
+            baselineBytes = histogram(null)[0];
+        }
+
+        @Override
+        public void chapterRendered(int chaptersRendered) {
+            if (chaptersRendered % interval == 0) {
+                sample(chaptersRendered, null);
+            }
+        }
+
+        void sample(int chapter, Object keepAlive) {
+            long threadId = Thread.currentThread().getId();
+            long before = threads.getThreadAllocatedBytes(threadId);
+            try {
+                long[] totals = histogram(budget.layoutPrefix);
+                long retained = totals[0] - baselineBytes;
+                if (retained > maxRetained) {
+                    maxRetained = retained;
+                    maxRetainedChapter = chapter;
+                }
+                maxLayoutObjects = Math.max(maxLayoutObjects, totals[1]);
+            } catch (Exception e) {
+                throw new IllegalStateException("Class histogram unavailable", e);
+            }
+            samplingAllocated += threads.getThreadAllocatedBytes(threadId) - before;
+            Reference.reachabilityFence(keepAlive);
+        }
+    }
+
+    /**
+     * 通过 DiagnosticCommand 取存活对象直方图（会先做一次完整GC）
+     *
+     * @return [存活字节总数, 类名以prefix开头的实例数]
+     */
+    private static long[] histogram(String prefix) throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("com.sun.management:type=DiagnosticCommand");
+        String output = (String) server.invoke(name, "gcClassHistogram",
+            new Object[]{new String[0]}, new String[]{String[].class.getName()});
+        long totalBytes = 0;
+        long instances = 0;
+        for (String line : output.split("\n")) {
+            Matcher matcher = HISTOGRAM_LINE.matcher(line);
+            if (!matcher.find()) {
+                continue;
+            }
+            totalBytes += Long.parseLong(matcher.group(2));
+            if (prefix != null && matcher.group(3).startsWith(prefix)) {
+                instances += Long.parseLong(matcher.group(1));
+            }
+        }
+        return new long[]{totalBytes, instances};
+    }
+}
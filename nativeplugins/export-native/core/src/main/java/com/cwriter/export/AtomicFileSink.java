@@ -0,0 +1,288 @@
+package com.cwriter.export;
+
+import com.alibaba.fastjson.JSONObject;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * 原子输出 - 导出先写到同一目录下的临时文件，成功后再改名为目标文件
+ *
+ * 渲染器经过一个大缓冲区写盘，POI/iText 的小块写入合并为少量系统调用；
+ * 渲染失败时删除临时文件，目标路径上不会留下写了一半的文件；进程在写入中被杀掉时留下的临时文件，
+ * 在之后第一次向同一目录导出时清理。
+ * 渲染器关闭输出流时刷新缓冲区、按需 fsync 并关闭文件，之后由调用方 commit 或 abort。
+ * 输出流同时是 WritableByteChannel：自己管理（直接）缓冲区的渲染器（TXT）可以绕过流缓冲，直接写 FileChannel。
+ * 内容URI之类不能改名的目标（ExportTarget）直接写入平台打开的输出流，写完后的发布和失败时的清理交给 Publisher。
+ */
+final class AtomicFileSink implements ExportTarget.Output {
+
+    private static final String TAG = "AtomicFileSink";
+
+    static final int BUFFER_SIZE = 256 * 1024;
+
+    /** 超过这个时间没有修改的临时文件视为进程被杀掉后留下的 */
+    static final long STALE_PART_MS = 6L * 60 * 60 * 1000;
+
+    /** open 创建的临时文件名：“.目标文件名.随机数.part” */
+    private static final Pattern PART_NAME = Pattern.compile("\\..+\\.\\d+\\.part");
+
+    /** 本进程已经清理过的目录 */
+    private static final Set<String> SWEPT = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 直接写入的目标在写完后发布（如清除 MediaStore 的 IS_PENDING），失败时清理
+     */
+    interface Publisher {
+        void publish() throws IOException;
+
+        void discard();
+    }
+
+    private final File target;
+    private final File temp;
+    private final Publisher publisher;
+    private final boolean sync;
+    private final OutputStream out;
+    /** 输出是文件时的通道，用于直接写 ByteBuffer 和 fsync；提供方只给出普通流时为null */
+    private final FileChannel channel;
+    private final OutputStream stream;
+    private long writeCalls;
+    private long syncNanos;
+    private boolean closed;
+    private boolean committed;
+
+    private AtomicFileSink(File target, boolean sync) throws IOException {
+        this.target = target;
+        this.sync = sync;
+        this.publisher = null;
+        File dir = target.getAbsoluteFile().getParentFile();
+        if (SWEPT.add(dir.getPath())) {
+            sweep(dir, System.currentTimeMillis() - STALE_PART_MS);
+        }
+        this.temp = File.createTempFile("." + target.getName() + ".", ".part", dir);
+        FileOutputStream file = new FileOutputStream(temp);
+        this.out = file;
+        this.channel = file.getChannel();
+        this.stream = new SinkOutput(new SinkStream(file));
+    }
+
+    private AtomicFileSink(OutputStream out, boolean sync, Publisher publisher) {
+        this.target = null;
+        this.temp = null;
+        this.publisher = publisher;
+        this.out = out;
+        this.channel = out instanceof FileOutputStream ? ((FileOutputStream) out).getChannel() : null;
+        this.sync = sync && channel != null;
+        this.stream = new SinkOutput(new SinkStream(out));
+    }
+
+    /**
+     * 在目标文件所在目录创建临时文件
+     *
+     * @param target 最终的文件
+     * @param sync   关闭前是否 fsync，保证改名后的文件内容已经落盘
+     */
+    static AtomicFileSink open(File target, boolean sync) throws IOException {
+        return new AtomicFileSink(target, sync);
+    }
+
+    /**
+     * 直接写入平台打开的目标，不经过临时文件
+     *
+     * @param out       目标的输出流；是 FileOutputStream 时按 ByteBuffer 写入直接写它的通道
+     * @param sync      关闭前是否 fsync（只对文件有效）
+     * @param publisher 写完后发布、失败时清理目标
+     */
+    static AtomicFileSink direct(OutputStream out, boolean sync, Publisher publisher) {
+        return new AtomicFileSink(out, sync, publisher);
+    }
+
+    /**
+     * 删除目录中早于 before 的临时文件；正在写入的临时文件会不断更新修改时间，不会被删除
+     *
+     * @return 删除的文件数
+     */
+    static int sweep(File dir, long before) {
+        File[] parts = dir.listFiles((parent, name) -> PART_NAME.matcher(name).matches());
+        int deleted = 0;
+        if (parts == null) {
+            return deleted;
+        }
+        for (File part : parts) {
+            if (part.isFile() && part.lastModified() < before) {
+                if (part.delete()) {
+                    deleted++;
+                } else {
+                    ExportLog.w(TAG, "无法删除残留的临时文件: " + part.getAbsolutePath());
+                }
+            }
+        }
+        if (deleted > 0) {
+            ExportLog.d(TAG, "清理残留的临时文件 " + deleted + " 个: " + dir.getAbsolutePath());
+        }
+        return deleted;
+    }
+
+    /**
+     * 导出选项中的 fsync 开关，默认关闭（与命令行的 --fsync 相同）：改名本身是原子的，
+     * 只有要求断电后也不丢失刚导出的文件时才需要开启
+     */
+    static boolean syncRequested(JSONObject options) {
+        return options != null && Boolean.TRUE.equals(options.getBoolean("fsync"));
+    }
+
+    /**
+     * 交给渲染器的输出流，渲染器负责关闭；同时实现 WritableByteChannel
+     */
+    @Override
+    public OutputStream stream() {
+        return stream;
+    }
+
+    /**
+     * 写入文件的系统调用次数（write 和 fsync）
+     */
+    @Override
+    public long syscalls() {
+        return writeCalls + (syncNanos > 0 ? 1 : 0);
+    }
+
+    long syncNanos() {
+        return syncNanos;
+    }
+
+    /**
+     * 把临时文件改名为目标文件；同一文件系统内为原子操作，已存在的目标文件会被替换
+     */
+    @Override
+    public void commit() throws IOException {
+        stream.close();
+        if (publisher != null) {
+            publisher.publish();
+            committed = true;
+            return;
+        }
+        try {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            ExportLog.w(TAG, "文件系统不支持原子改名，直接改名: " + target.getAbsolutePath());
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        committed = true;
+    }
+
+    /**
+     * 放弃本次输出，删除临时文件；已经 commit 时不做任何事
+     */
+    @Override
+    public void abort() {
+        if (committed) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            ExportLog.w(TAG, "关闭临时文件失败", e);
+        }
+        if (publisher != null) {
+            publisher.discard();
+            return;
+        }
+        if (temp.exists() && !temp.delete()) {
+            ExportLog.w(TAG, "无法删除临时文件: " + temp.getAbsolutePath());
+        }
+    }
+
+    /**
+     * 渲染器看到的一层：普通写入经过缓冲区；按 ByteBuffer 写入时先刷出缓冲区，再直接写 FileChannel
+     */
+    private final class SinkOutput extends BufferedOutputStream implements WritableByteChannel {
+
+        SinkOutput(OutputStream out) {
+            super(out, BUFFER_SIZE);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            flush();
+            int written = 0;
+            if (channel == null) {
+                // 没有文件通道：堆缓冲区直接交给流，不逐字节复制
+                written = src.remaining();
+                if (src.hasArray()) {
+                    out.write(src.array(), src.arrayOffset() + src.position(), written);
+                    src.position(src.limit());
+                } else {
+                    byte[] bytes = new byte[written];
+                    src.get(bytes);
+                    out.write(bytes);
+                }
+                writeCalls++;
+                return written;
+            }
+            while (src.hasRemaining()) {
+                written += channel.write(src);
+                writeCalls++;
+            }
+            return written;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return !closed;
+        }
+    }
+
+    /**
+     * 直接写文件的一层：统计 write 次数，关闭前按需 fsync
+     */
+    private final class SinkStream extends FilterOutputStream {
+
+        SinkStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            writeCalls++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            writeCalls++;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (sync) {
+                    long start = System.nanoTime();
+                    channel.force(true);
+                    syncNanos = Math.max(1, System.nanoTime() - start);
+                }
+            } finally {
+                out.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.cwriter.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.regex.Pattern;
+
+/**
+ * 章节渲染缓存 - 按章节内容和格式参数的哈希，把单章的渲染结果持久化到缓存目录
+ *
+ * DOCX 缓存每章的 document.xml 片段；PDF 在每章从新页开始（chapterPageBreak）时缓存单章的PDF，
+ * 导出时复制其页面。修改一两章后重新导出，只有改动的章节需要重新排版。
+ * 未配置缓存目录（工作站上的基准测试、命令行未指定 --cache）时不启用。
+ * 缓存总是放在指定目录下单独的 cwriter-render-cache 子目录中，清理时只删除自己的缓存条目和残留的临时文件。
+ */
+final class ChapterRenderCache {
+
+    private static final String TAG = "ChapterRenderCache";
+
+    /** 渲染器输出格式变化时加一，使旧缓存失效 */
+    static final int RENDER_VERSION = 7;
+
+    static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    /** 缓存所在的子目录名 */
+    static final String DIR_NAME = "cwriter-render-cache";
+
+    /** 缓存条目：章节键（SHA-256 的十六进制）加扩展名 */
+    private static final Pattern ENTRY_NAME = Pattern.compile("[0-9a-f]{64}\\.(pdf|xml)");
+
+    /** put 写入中的临时文件：章节键加随机数 */
+    private static final Pattern PART_NAME = Pattern.compile("[0-9a-f]{64}\\d+\\.part");
+
+    private static volatile ChapterRenderCache shared;
+
+    private final File dir;
+    private final long maxBytes;
+
+    private ChapterRenderCache(File dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 设置共享的缓存目录；parent 为null时关闭缓存
+     *
+     * @param parent 缓存放在它的 cwriter-render-cache 子目录中，目录里的其他文件不受影响
+     */
+    static void configure(File parent, long maxBytes) {
+        if (parent == null) {
+            shared = null;
+            return;
+        }
+        File dir = new File(parent, DIR_NAME);
+        ChapterRenderCache current = shared;
+        if (current != null && current.dir.equals(dir) && current.maxBytes == maxBytes) {
+            return;
+        }
+        if (!dir.exists() && !dir.mkdirs()) {
+            ExportLog.w(TAG, "无法创建缓存目录: " + dir.getAbsolutePath());
+            shared = null;
+            return;
+        }
+        shared = new ChapterRenderCache(dir, maxBytes);
+    }
+
+    /**
+     * 作品可以使用的缓存；未配置或作品关闭了缓存时返回null
+     */
+    static ChapterRenderCache forWork(ExportWork work) {
+        return work.renderCache ? shared : null;
+    }
+
+    /**
+     * 章节的缓存键
+     */
+    String key(String format, ExportWork work, ExportWork.Chapter chapter) {
+        return WorkFingerprint.ofChapter(format, RENDER_VERSION, work, chapter);
+    }
+
+    /**
+     * 读取缓存的渲染结果，没有时返回null；命中时更新修改时间，供清理时按最近使用排序
+     */
+    byte[] get(String key, String extension) {
+        File file = new File(dir, key + extension);
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            if (!file.setLastModified(System.currentTimeMillis())) {
+                ExportLog.d(TAG, "无法更新缓存时间: " + file.getName());
+            }
+            return bytes;
+        } catch (IOException e) {
+            ExportLog.w(TAG, "读取章节缓存失败: " + file.getName(), e);
+            return null;
+        }
+    }
+
+    /**
+     * 写入渲染结果；先写临时文件再改名，并发导出不会读到写了一半的缓存
+     */
+    void put(String key, String extension, byte[] bytes) {
+        File file = new File(dir, key + extension);
+        try {
+            File temp = File.createTempFile(key, ".part", dir);
+            Files.write(temp.toPath(), bytes);
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            ExportLog.w(TAG, "写入章节缓存失败: " + file.getName(), e);
+        }
+    }
+
+    /**
+     * 缓存超过上限时，从最久未使用的条目开始删除；只处理缓存条目，正在写入的临时文件不受影响，
+     * 进程被杀掉后残留的临时文件超过 AtomicFileSink.STALE_PART_MS 后删除
+     */
+    void trim() {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long staleBefore = System.currentTimeMillis() - AtomicFileSink.STALE_PART_MS;
+        File[] entries = new File[files.length];
+        int count = 0;
+        long total = 0;
+        for (File file : files) {
+            String name = file.getName();
+            if (ENTRY_NAME.matcher(name).matches()) {
+                entries[count++] = file;
+                total += file.length();
+            } else if (PART_NAME.matcher(name).matches() && file.lastModified() < staleBefore && !file.delete()) {
+                ExportLog.d(TAG, "无法删除残留的临时文件: " + name);
+            }
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+        entries = Arrays.copyOf(entries, count);
+        Arrays.sort(entries, Comparator.comparingLong(File::lastModified));
+        for (File file : entries) {
+            if (total <= maxBytes * 3 / 4) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.cwriter.export;
+
+import java.util.Arrays;
+
+/**
+ * 中文折行 - 按缓存的字形宽度贪心折行，一遍完成避头尾和标点挤压
+ *
+ * 规则（参照《中文排版需求》）：
+ * 行首不出现“，。、；：？！）」”等，行尾不出现“（「“”等；需要断开时优先把行尾的句末标点挤进本行（压缩其半个字宽的空白），
+ * 放不下再把上一个可断点之后的字符推到下一行。相邻的标点之间压缩半个字宽。
+ * 中日韩字符之间可以断行；西文只在空格和连字符后断开，单词比一行还长时强制断开。
+ *
+ * 结果交给 PdfWorkRenderer 以硬换行的方式写入段落；计算宽度时留出一点余量，保证 iText 不会再次折行。
+ */
+final class CjkLineBreaker {
+
+    private static final byte OTHER = 0;
+    /** 行首禁止、字形在左半边可压缩：，。、；：」』）】》〉”’ */
+    private static final byte CLOSING = 1;
+    /** 行尾禁止、字形在右半边可压缩：「『（【《〈“‘ */
+    private static final byte OPENING = 2;
+    /** 行首禁止、不可压缩：？！…—～·和半角标点 */
+    private static final byte NO_START = 3;
+    /** 行尾禁止、不可压缩：半角左括号和货币符号 */
+    private static final byte NO_END = 4;
+
+    private static final byte[] CLASSES = new byte[0x10000];
+
+    /** 与 iText 计算的行宽之间留出的误差（磅） */
+    private static final float EPSILON = 0.01f;
+
+    static {
+        mark("，。、；：」』）】》〉〕］｝〗〙〛”’．", CLOSING);
+        mark("「『（【《〈〔［｛〖〘〚“‘", OPENING);
+        mark("？！…‥—～·・々〻ーゝゞヽヾぁぃぅぇぉっゃゅょゎァィゥェォッャュョヮヵヶ！？％）",
+            NO_START);
+        mark("!%),.:;?]}¢°‰′″℃", NO_START);
+        mark("([{£¥$＄￥￡", NO_END);
+    }
+
+    private CjkLineBreaker() {
+    }
+
+    private static void mark(String chars, byte kind) {
+        for (int i = 0; i < chars.length(); i++) {
+            CLASSES[chars.charAt(i)] = kind;
+        }
+    }
+
+    /**
+     * 折行结果：每行的起止位置，以及需要挤压的字符（在该字符后减少的间距，单位为磅）
+     */
+    static final class Lines {
+        private int[] bounds = new int[8];
+        private int count;
+        private int[] squeezeAt = new int[4];
+        private float[] squeezeBy = new float[4];
+        private int squeezes;
+
+        int count() {
+            return count;
+        }
+
+        int start(int line) {
+            return bounds[2 * line];
+        }
+
+        int end(int line) {
+            return bounds[2 * line + 1];
+        }
+
+        int squeezeCount() {
+            return squeezes;
+        }
+
+        int squeezeAt(int i) {
+            return squeezeAt[i];
+        }
+
+        float squeezeBy(int i) {
+            return squeezeBy[i];
+        }
+
+        private void add(int start, int end) {
+            if (2 * count + 2 > bounds.length) {
+                bounds = Arrays.copyOf(bounds, bounds.length * 2);
+            }
+            bounds[2 * count] = start;
+            bounds[2 * count + 1] = end;
+            count++;
+        }
+
+        private void squeeze(int at, float by) {
+            if (squeezes == squeezeAt.length) {
+                squeezeAt = Arrays.copyOf(squeezeAt, squeezes * 2);
+                squeezeBy = Arrays.copyOf(squeezeBy, squeezes * 2);
+            }
+            squeezeAt[squeezes] = at;
+            squeezeBy[squeezes] = by;
+            squeezes++;
+        }
+    }
+
+    /**
+     * 折行
+     *
+     * @param text      文本，[start, end) 为一个段落，首尾没有空白
+     * @param metrics   段落字体和字号对应的宽度表
+     * @param lineWidth 行宽（磅）
+     */
+    static Lines breakLines(String text, int start, int end, GlyphMetrics.Sized metrics, float lineWidth) {
+        Lines lines = new Lines();
+        float limit = lineWidth - EPSILON;
+        int lineStart = start;
+        int lastBreak = -1;
+        float width = 0;
+        int i = start;
+        while (i < end) {
+            char c = text.charAt(i);
+            if (i > lineStart && canBreakBefore(text, i)) {
+                lastBreak = i;
+            }
+            float squeeze = squeezeAfter(text, i, end, metrics);
+            float advance = metrics.advance(text, i) - squeeze;
+            if (width + advance > limit && i > lineStart) {
+                if (c == ' ') {
+                    // 行尾的空格不占行宽，直接在这里断开
+                    lines.add(lineStart, trimEnd(text, lineStart, i));
+                    i = skipSpaces(text, i, end);
+                    lineStart = i;
+                    lastBreak = -1;
+                    width = 0;
+                    continue;
+                }
+                if (CLASSES[c] == CLOSING && squeeze == 0 && width + advance / 2 <= limit) {
+                    // 行尾挤压：句末标点压缩半个字宽后留在本行
+                    lines.squeeze(i, advance / 2);
+                    lines.add(lineStart, i + 1);
+                    i = skipSpaces(text, i + 1, end);
+                    lineStart = i;
+                    lastBreak = -1;
+                    width = 0;
+                    continue;
+                }
+                // 推出：从上一个可断点换行；没有可断点时强制断开
+                int breakAt = lastBreak > lineStart ? lastBreak : i;
+                lines.add(lineStart, trimEnd(text, lineStart, breakAt));
+                lineStart = breakAt;
+                lastBreak = -1;
+                width = 0;
+                for (int k = breakAt; k < i; k++) {
+                    if (k > lineStart && canBreakBefore(text, k)) {
+                        lastBreak = k;
+                    }
+                    width += metrics.advance(text, k) - squeezeAfter(text, k, end, metrics);
+                }
+                continue;
+            }
+            if (squeeze > 0) {
+                lines.squeeze(i, squeeze);
+            }
+            width += advance;
+            i++;
+        }
+        if (lineStart < end || lines.count == 0) {
+            lines.add(lineStart, end);
+        }
+        return lines;
+    }
+
+    /**
+     * 第 i 个字符之前是否可以断行
+     */
+    private static boolean canBreakBefore(String text, int i) {
+        char a = text.charAt(i - 1);
+        char b = text.charAt(i);
+        if (Character.isLowSurrogate(b) || b == ' ') {
+            return false;
+        }
+        byte before = CLASSES[a];
+        byte after = CLASSES[b];
+        if (after == CLOSING || after == NO_START || before == OPENING || before == NO_END) {
+            return false;
+        }
+        if (a == ' ' || a == '-') {
+            return true;
+        }
+        // 全角标点之后、中日韩字符前后可以断开；半角标点之后（如 3.14）不断开
+        return isCjk(a) || isCjk(b) || a >= 0x2000 && before != OTHER || b >= 0x2000 && after == OPENING;
+    }
+
+    /**
+     * 第 i 个字符与下一个字符都是可压缩标点时，两者之间压缩的宽度
+     */
+    private static float squeezeAfter(String text, int i, int end, GlyphMetrics.Sized metrics) {
+        if (i + 1 >= end) {
+            return 0;
+        }
+        char c = text.charAt(i);
+        char next = text.charAt(i + 1);
+        byte kind = CLASSES[c];
+        byte nextKind = CLASSES[next];
+        if (kind == CLOSING && (nextKind == CLOSING || nextKind == OPENING)) {
+            return metrics.advance(c) / 2;
+        }
+        if (kind == OPENING && nextKind == OPENING) {
+            return metrics.advance(next) / 2;
+        }
+        return 0;
+    }
+
+    private static boolean isCjk(char c) {
+        return c >= 0x2E80 && c < 0xD800 || c >= 0xF900 && c < 0xFB00 || c >= 0xFF00 && c < 0xFFF0
+            || Character.isHighSurrogate(c);
+    }
+
+    private static int trimEnd(String text, int start, int end) {
+        while (end > start && text.charAt(end - 1) == ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    private static int skipSpaces(String text, int i, int end) {
+        while (i < end && text.charAt(i) == ' ') {
+            i++;
+        }
+        return i;
+    }
+}
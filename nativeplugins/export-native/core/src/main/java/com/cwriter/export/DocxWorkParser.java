@@ -0,0 +1,299 @@
+package com.cwriter.export;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFRun;
+
+import java.io.InputStream;
+
+/**
+ * DOCX解析器 - 按段落样式识别标题、简介和章节，还原为作品数据
+ */
+final class DocxWorkParser {
+
+    private static final String TAG = "DocxWorkParser";
+
+    private DocxWorkParser() {
+    }
+
+    /**
+     * 解析DOCX
+     *
+     * @param in            DOCX输入流，由调用方关闭
+     * @param styleConfig   样式配置，可为null，覆盖默认的各类段落样式
+     * @param fallbackTitle 文档中没有识别到标题时使用的标题
+     * @param metrics       解析和分类阶段的指标
+     * @return 作品数据：title、description、chapters
+     */
+    static JSONObject parse(InputStream in, JSONObject styleConfig, String fallbackTitle, ExportMetrics metrics) throws Exception {
+        XWPFDocument document = null;
+        try {
+            metrics.begin(ExportMetrics.PHASE_PARSE);
+            document = new XWPFDocument(in);
+            metrics.end(ExportMetrics.PHASE_PARSE);
+            ExportLog.d(TAG, "XWPFDocument创建成功");
+
+            // 默认样式配置
+            JSONObject finalStyleConfig = new JSONObject();
+            finalStyleConfig.put("title", createStyleConfig("宋体", 22, true));
+            finalStyleConfig.put("descriptionTitle", createStyleConfig("宋体", 16, true));
+            finalStyleConfig.put("descriptionContent", createStyleConfig("宋体", 14, false));
+            finalStyleConfig.put("chapterTitle", createStyleConfig("宋体", 16, true));
+            finalStyleConfig.put("chapterContent", createStyleConfig("宋体", 14, false));
+
+            // 如果提供了样式配置，合并到默认配置中
+            if (styleConfig != null) {
+                mergeStyleConfig(finalStyleConfig, styleConfig);
+            }
+
+            // 解析文档
+            String title = "";
+            String description = "";
+            JSONArray chapters = new JSONArray();
+
+            boolean foundTitle = false;
+            boolean foundDescription = false;
+            boolean inDescription = false;
+            String currentChapterTitle = "";
+            StringBuilder currentChapterContent = new StringBuilder();
+
+            metrics.begin(ExportMetrics.PHASE_CLASSIFY);
+            for (XWPFParagraph paragraph : document.getParagraphs()) {
+                String text = paragraph.getText();
+                if (text == null || text.trim().isEmpty()) {
+                    continue;
+                }
+                metrics.addChars(text.length());
+
+                // 获取段落样式
+                JSONObject paraStyle = getParagraphStyle(paragraph);
+
+                // 检测标题（第一个匹配标题样式的段落）
+                if (!foundTitle && matchesStyle(paraStyle, finalStyleConfig.getJSONObject("title"))) {
+                    title = text.trim();
+                    foundTitle = true;
+                    ExportLog.d(TAG, "Found title: " + title);
+                    continue;
+                }
+
+                // 检测简介标题
+                if (!foundDescription && text.trim().equals("简介") &&
+                    matchesStyle(paraStyle, finalStyleConfig.getJSONObject("descriptionTitle"))) {
+                    foundDescription = true;
+                    inDescription = true;
+                    ExportLog.d(TAG, "Found description title");
+                    continue;
+                }
+
+                // 检测简介内容
+                if (inDescription && matchesStyle(paraStyle, finalStyleConfig.getJSONObject("descriptionContent"))) {
+                    description = text.trim();
+                    inDescription = false;
+                    ExportLog.d(TAG, "Found description: " + description.substring(0, Math.min(50, description.length())));
+                    continue;
+                }
+
+                // 检测章节标题
+                if (matchesStyle(paraStyle, finalStyleConfig.getJSONObject("chapterTitle"))) {
+                    // 保存上一个章节
+                    if (currentChapterTitle != null && !currentChapterTitle.isEmpty()) {
+                        JSONObject chapter = new JSONObject();
+                        chapter.put("title", currentChapterTitle);
+                        chapter.put("content", currentChapterContent.toString());
+                        chapters.add(chapter);
+                        ExportLog.d(TAG, "Added chapter: " + currentChapterTitle);
+                    }
+
+                    // 开始新章节
+                    currentChapterTitle = text.trim();
+                    currentChapterContent = new StringBuilder();
+                    ExportLog.d(TAG, "Found chapter title: " + currentChapterTitle);
+                    continue;
+                }
+
+                // 检测章节正文
+                if (matchesStyle(paraStyle, finalStyleConfig.getJSONObject("chapterContent"))) {
+                    // 获取缩进
+                    String indent = getParagraphIndent(paragraph);
+                    if (currentChapterContent.length() > 0) {
+                        currentChapterContent.append("\n");
+                    }
+                    currentChapterContent.append(indent).append(text.trim());
+                    metrics.addParagraphs(1);
+                }
+            }
+            metrics.end(ExportMetrics.PHASE_CLASSIFY);
+
+            // 保存最后一个章节
+            if (currentChapterTitle != null && !currentChapterTitle.isEmpty()) {
+                JSONObject chapter = new JSONObject();
+                chapter.put("title", currentChapterTitle);
+                chapter.put("content", currentChapterContent.toString());
+                chapters.add(chapter);
+                ExportLog.d(TAG, "Added last chapter: " + currentChapterTitle);
+            }
+
+            // 如果没有找到标题，使用调用方提供的标题（通常是文件名）
+            if (title == null || title.isEmpty()) {
+                title = fallbackTitle != null ? fallbackTitle : "";
+                ExportLog.d(TAG, "Using fallback title: " + title);
+            }
+
+            JSONObject data = new JSONObject();
+            data.put("title", title);
+            data.put("description", description != null ? description : "");
+            data.put("chapters", chapters);
+            return data;
+        } finally {
+            if (document != null) {
+                try {
+                    document.close();
+                } catch (Exception e) {
+                    ExportLog.w(TAG, "Error closing DOCX document", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 创建样式配置对象
+     */
+    static JSONObject createStyleConfig(String font, int size, boolean bold) {
+        JSONObject style = new JSONObject();
+        style.put("font", font);
+        style.put("size", size);
+        style.put("bold", bold);
+        return style;
+    }
+
+    /**
+     * 合并样式配置
+     */
+    private static void mergeStyleConfig(JSONObject target, JSONObject source) {
+        if (source.containsKey("title")) {
+            target.put("title", source.getJSONObject("title"));
+        }
+        if (source.containsKey("descriptionTitle")) {
+            target.put("descriptionTitle", source.getJSONObject("descriptionTitle"));
+        }
+        if (source.containsKey("descriptionContent")) {
+            target.put("descriptionContent", source.getJSONObject("descriptionContent"));
+        }
+        if (source.containsKey("chapterTitle")) {
+            target.put("chapterTitle", source.getJSONObject("chapterTitle"));
+        }
+        if (source.containsKey("chapterContent")) {
+            target.put("chapterContent", source.getJSONObject("chapterContent"));
+        }
+    }
+
+    /**
+     * 获取段落样式
+     */
+    private static JSONObject getParagraphStyle(XWPFParagraph paragraph) {
+        JSONObject style = new JSONObject();
+
+        // 获取第一个Run的样式（通常段落中所有Run的样式相同）
+        if (paragraph.getRuns() != null && paragraph.getRuns().size() > 0) {
+            XWPFRun run = paragraph.getRuns().get(0);
+
+            // 字体
+            String fontFamily = run.getFontFamily();
+            if (fontFamily == null || fontFamily.isEmpty()) {
+                fontFamily = "宋体"; // 默认字体
+            }
+            style.put("font", fontFamily);
+
+            // 字号
+            Double fontSize = run.getFontSizeAsDouble();
+            if (fontSize == null) {
+                fontSize = 14.0; // 默认字号
+            }
+            style.put("size", fontSize.intValue());
+
+            // 加粗
+            boolean isBold = run.isBold();
+            style.put("bold", isBold);
+        } else {
+            // 如果没有Run，使用默认值
+            style.put("font", "宋体");
+            style.put("size", 14);
+            style.put("bold", false);
+        }
+
+        return style;
+    }
+
+    /**
+     * 检查样式是否匹配
+     */
+    private static boolean matchesStyle(JSONObject paraStyle, JSONObject targetStyle) {
+        if (paraStyle == null || targetStyle == null) {
+            return false;
+        }
+
+        // 检查字体（允许部分匹配，因为可能包含字体族信息）
+        String paraFont = paraStyle.getString("font");
+        String targetFont = targetStyle.getString("font");
+        if (targetFont != null && paraFont != null) {
+            if (!paraFont.contains(targetFont) && !targetFont.contains(paraFont)) {
+                return false;
+            }
+        }
+
+        // 检查字号（允许±1的误差）
+        int paraSize = paraStyle.getIntValue("size");
+        int targetSize = targetStyle.getIntValue("size");
+        if (Math.abs(paraSize - targetSize) > 1) {
+            return false;
+        }
+
+        // 检查加粗
+        boolean paraBold = paraStyle.getBooleanValue("bold");
+        boolean targetBold = targetStyle.getBooleanValue("bold");
+        return paraBold == targetBold;
+    }
+
+    /**
+     * 获取段落缩进
+     */
+    private static String getParagraphIndent(XWPFParagraph paragraph) {
+        try {
+            // 直接访问CTP来获取缩进信息
+            org.openxmlformats.schemas.wordprocessingml.x2006.main.CTPPr ppr =
+                paragraph.getCTP().getPPr();
+            if (ppr != null && ppr.getInd() != null) {
+                org.openxmlformats.schemas.wordprocessingml.x2006.main.CTInd ind = ppr.getInd();
+                // 获取首行缩进（以字符为单位）
+                if (ind.getFirstLine() != null) {
+                    Object firstLineObj = ind.getFirstLine();
+                    long firstLine = 0;
+                    if (firstLineObj instanceof Number) {
+                        firstLine = ((Number) firstLineObj).longValue();
+                    } else if (firstLineObj instanceof String) {
+                        try {
+                            firstLine = Long.parseLong((String) firstLineObj);
+                        } catch (Exception e) {
+                            firstLine = 0;
+                        }
+                    }
+                    // Word的缩进单位是twips（1/20 point），200 twips ≈ 1字符
+                    int spaces = (int) (firstLine / 200);
+                    if (spaces > 0) {
+                        StringBuilder sb = new StringBuilder();
+                        for (int i = 0; i < spaces; i++) {
+                            sb.append(" ");
+                        }
+                        return sb.toString();
+                    }
+                }
+            }
+        } catch (Exception e) {
+            ExportLog.w(TAG, "Error getting paragraph indent", e);
+        }
+        return "";
+    }
+}
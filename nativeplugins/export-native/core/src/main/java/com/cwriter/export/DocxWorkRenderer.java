@@ -0,0 +1,158 @@
+package com.cwriter.export;
+
+import org.apache.poi.xwpf.usermodel.ParagraphAlignment;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFRun;
+
+import java.io.OutputStream;
+
+/**
+ * DOCX渲染器 - 使用Apache POI生成DOCX
+ */
+final class DocxWorkRenderer implements WorkRenderer {
+
+    private static final String TAG = "DocxWorkRenderer";
+
+    @Override
+    public String format() {
+        return "docx";
+    }
+
+    @Override
+    public String extension() {
+        return ".docx";
+    }
+
+    @Override
+    public void render(ExportWork work, OutputStream out, ExportMetrics metrics) throws Exception {
+        if (ChapterRenderCache.forWork(work) != null || work.imageCount > 0) {
+            // 启用了章节缓存时改用流式渲染：格式相同，且只需重新生成修改过的章节；
+            // 有插图时也用流式渲染，图片直接从文件复制进zip，不像POI那样全部留在内存中
+            new StreamingDocxWorkRenderer().render(work, out, metrics);
+            return;
+        }
+        out = metrics.countingStream(out);
+        metrics.addChars(work.charCount);
+        ExportTrace.record(ExportTrace.LEVEL_INFO, ExportTrace.EVENT_BEGIN, metrics.jobId(),
+            PerformanceStats.exportOp(format()), work.charCount);
+        ExportTrace.record(ExportTrace.LEVEL_DEBUG, ExportTrace.EVENT_OPTIONS, metrics.jobId(),
+            work.chapters.size(), work.paragraphCount);
+        XWPFDocument document = null;
+        try {
+            metrics.begin(ExportMetrics.PHASE_DOCUMENT_CREATE);
+            document = createDocument();
+            metrics.end(ExportMetrics.PHASE_DOCUMENT_CREATE);
+
+            metrics.begin(ExportMetrics.PHASE_LAYOUT);
+            // 添加标题 - 根据格式要求：宋体二号，加粗，居中
+            XWPFParagraph titlePara = document.createParagraph();
+            titlePara.setAlignment(ParagraphAlignment.CENTER);
+            titlePara.setSpacingAfter(200); // 20磅间距
+            XWPFRun titleRun = titlePara.createRun();
+            titleRun.setText(work.title);
+            titleRun.setBold(true);
+            titleRun.setFontFamily("宋体");
+            titleRun.setFontSize(work.titleSize);
+
+            // 添加简介（如果存在）- 根据格式要求：宋体三号，加粗，靠左
+            if (!work.description.trim().isEmpty()) {
+                XWPFParagraph descTitlePara = document.createParagraph();
+                descTitlePara.setAlignment(ParagraphAlignment.LEFT);
+                descTitlePara.setSpacingBefore(100);
+                descTitlePara.setSpacingAfter(80);
+                XWPFRun descTitleRun = descTitlePara.createRun();
+                descTitleRun.setText("简介");
+                descTitleRun.setBold(true);
+                descTitleRun.setFontFamily("宋体");
+                descTitleRun.setFontSize(work.headingSize);
+
+                // 简介内容 - 根据格式要求：宋体四号
+                XWPFParagraph descPara = document.createParagraph();
+                descPara.setAlignment(ParagraphAlignment.LEFT);
+                descPara.setSpacingAfter(150);
+                XWPFRun descRun = descPara.createRun();
+                descRun.setText(work.description);
+                descRun.setFontFamily("宋体");
+                descRun.setFontSize(work.bodySize);
+            }
+
+            // 添加章节内容
+            for (ExportWork.Chapter chapter : work.chapters) {
+                metrics.beginChapter();
+                try {
+                    // 章节标题 - 根据格式要求：宋体三号，加粗，靠左
+                    XWPFParagraph chapterTitlePara = document.createParagraph();
+                    chapterTitlePara.setAlignment(ParagraphAlignment.LEFT);
+                    chapterTitlePara.setSpacingBefore(150);
+                    chapterTitlePara.setSpacingAfter(100);
+                    XWPFRun chapterTitleRun = chapterTitlePara.createRun();
+                    chapterTitleRun.setText(chapter.heading);
+                    chapterTitleRun.setBold(true);
+                    chapterTitleRun.setFontFamily("宋体");
+                    chapterTitleRun.setFontSize(work.headingSize);
+
+                    // 章节内容 - 根据格式要求：宋体四号，1.5倍行距
+                    for (int i = 0; i < chapter.paragraphCount(); i++) {
+                        XWPFParagraph contentPara = document.createParagraph();
+                        contentPara.setAlignment(ParagraphAlignment.LEFT);
+                        contentPara.setSpacingAfter(150);
+                        contentPara.setSpacingBetween(work.lineSpacing);
+                        XWPFRun contentRun = contentPara.createRun();
+                        contentRun.setText(chapter.paragraph(i));
+                        contentRun.setFontFamily("宋体");
+                        contentRun.setFontSize(work.bodySize);
+                    }
+                    metrics.addParagraphs(chapter.paragraphCount());
+                } catch (Exception e) {
+                    ExportLog.w(TAG, "Failed to add chapter " + (chapter.index + 1) + ", continuing", e);
+                }
+                metrics.endChapter();
+                metrics.sampleHeap();
+            }
+            metrics.end(ExportMetrics.PHASE_LAYOUT);
+
+            metrics.begin(ExportMetrics.PHASE_SERIALIZATION);
+            document.write(out);
+            metrics.end(ExportMetrics.PHASE_SERIALIZATION);
+            out.flush();
+        } finally {
+            try {
+                out.close();
+            } catch (Exception e) {
+                ExportLog.w(TAG, "Error closing output stream", e);
+            }
+            if (document != null) {
+                try {
+                    document.close();
+                } catch (Exception e) {
+                    ExportLog.w(TAG, "Error closing DOCX document", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 创建XWPFDocument，把类加载和内存错误转换为带说明的异常
+     */
+    private static XWPFDocument createDocument() {
+        try {
+            return new XWPFDocument();
+        } catch (OutOfMemoryError e) {
+            ExportLog.e(TAG, "OutOfMemoryError creating XWPFDocument", e);
+            throw new RuntimeException("Out of memory creating XWPFDocument", e);
+        } catch (NoClassDefFoundError e) {
+            ExportLog.e(TAG, "NoClassDefFoundError creating XWPFDocument", e);
+            throw new RuntimeException("Missing class definition: " + e.getMessage(), e);
+        } catch (ExceptionInInitializerError e) {
+            ExportLog.e(TAG, "ExceptionInInitializerError creating XWPFDocument", e);
+            throw new RuntimeException("Initialization error: " + e.getMessage(), e);
+        } catch (LinkageError e) {
+            ExportLog.e(TAG, "LinkageError creating XWPFDocument", e);
+            throw new RuntimeException("Linkage error (possibly missing dependency): " + e.getMessage(), e);
+        } catch (Exception e) {
+            ExportLog.e(TAG, "Failed to create XWPFDocument", e);
+            throw new RuntimeException("Failed to create XWPFDocument: " + e.getMessage(), e);
+        }
+    }
+}
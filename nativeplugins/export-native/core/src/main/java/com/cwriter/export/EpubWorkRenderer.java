@@ -0,0 +1,376 @@
+package com.cwriter.export;
+
+import com.itextpdf.io.font.FontProgram;
+import com.itextpdf.io.font.FontProgramFactory;
+import com.itextpdf.io.font.TrueTypeFont;
+import com.itextpdf.io.font.otf.Glyph;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * EPUB渲染器 - EPUB 3（同时带 EPUB 2 的 toc.ncx），每章一个XHTML文件，边遍历章节边写进zip
+ *
+ * 不需要排版和分页，内存占用与作品大小无关（只有压缩器和写缓冲）。章节文件写完后再写 content.opf 的
+ * manifest/spine、nav.xhtml 和 toc.ncx，它们只依赖章节标题，不需要回头修改已写出的内容。
+ * 字号按正文的倍数写成 em，阅读器调整字号时比例不变。
+ *
+ * 指定 format.embedFont（TrueType 字体文件路径，TTC 写成“路径,序号”）时，记录正文用到的字符，
+ * 最后嵌入只保留这些字形的子集；CFF 字体（如 NotoSansCJK）不支持子集化，跳过嵌入。
+ */
+final class EpubWorkRenderer implements WorkRenderer {
+
+    private static final String TAG = "EpubWorkRenderer";
+
+    private static final String MIMETYPE = "application/epub+zip";
+
+    private static final String CONTAINER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+        + "<container version=\"1.0\" xmlns=\"urn:oasis:names:tc:opendocument:xmlns:container\">"
+        + "<rootfiles><rootfile full-path=\"OEBPS/content.opf\" media-type=\"application/oebps-package+xml\"/></rootfiles>"
+        + "</container>";
+
+    private static final String XHTML_START = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<!DOCTYPE html>\n"
+        + "<html xmlns=\"http://www.w3.org/1999/xhtml\" xmlns:epub=\"http://www.idpf.org/2007/ops\""
+        + " xml:lang=\"zh-CN\" lang=\"zh-CN\"><head><meta charset=\"UTF-8\"/><title>";
+
+    private static final String XHTML_HEAD_END = "</title><link rel=\"stylesheet\" type=\"text/css\" href=\"style.css\"/></head><body>";
+
+    private static final String XHTML_END = "</body></html>";
+
+    private static final String FONT_PATH = "fonts/embedded.ttf";
+    private static final String FONT_FAMILY = "CwriterEmbedded";
+
+    @Override
+    public String format() {
+        return "epub";
+    }
+
+    @Override
+    public String extension() {
+        return ".epub";
+    }
+
+    @Override
+    public void render(ExportWork work, OutputStream out, ExportMetrics metrics) throws Exception {
+        out = metrics.countingStream(out);
+        metrics.addChars(work.charCount);
+        ExportTrace.record(ExportTrace.LEVEL_INFO, ExportTrace.EVENT_BEGIN, metrics.jobId(),
+            PerformanceStats.exportOp(format()), work.charCount);
+        ExportTrace.record(ExportTrace.LEVEL_DEBUG, ExportTrace.EVENT_OPTIONS, metrics.jobId(),
+            work.chapters.size(), work.paragraphCount);
+        ZipOutputStream zip = new ZipOutputStream(out);
+        try {
+            metrics.begin(ExportMetrics.PHASE_FONT_LOAD);
+            TrueTypeFont font = loadFont(work.embedFont);
+            BitSet usedChars = font != null ? new BitSet() : null;
+            metrics.end(ExportMetrics.PHASE_FONT_LOAD);
+
+            metrics.begin(ExportMetrics.PHASE_DOCUMENT_CREATE);
+            // mimetype 必须是第一个条目，不压缩
+            writeStored(zip, "mimetype", MIMETYPE.getBytes(StandardCharsets.US_ASCII));
+            // 不关闭writer，否则会连带关闭zip；切换条目前先 flush
+            Writer writer = new BufferedWriter(new OutputStreamWriter(zip, StandardCharsets.UTF_8), 64 * 1024);
+            putEntry(zip, writer, "META-INF/container.xml");
+            writer.write(CONTAINER);
+            putEntry(zip, writer, "OEBPS/style.css");
+            writeStyle(writer, work, font != null);
+            metrics.end(ExportMetrics.PHASE_DOCUMENT_CREATE);
+
+            // 每章的XHTML在同一遍中生成并压缩，全部计入 layout
+            metrics.begin(ExportMetrics.PHASE_LAYOUT);
+            putEntry(zip, writer, "OEBPS/title.xhtml");
+            writeTitlePage(writer, work, usedChars);
+            for (ExportWork.Chapter chapter : work.chapters) {
+                metrics.beginChapter();
+                putEntry(zip, writer, "OEBPS/" + chapterFile(chapter));
+                writeChapter(writer, chapter, usedChars);
+                metrics.addParagraphs(chapter.paragraphCount());
+                metrics.endChapter();
+            }
+            metrics.end(ExportMetrics.PHASE_LAYOUT);
+
+            metrics.begin(ExportMetrics.PHASE_SERIALIZATION);
+            boolean embedded = false;
+            if (font != null) {
+                byte[] subset = subsetFont(font, usedChars);
+                if (subset != null) {
+                    putEntry(zip, writer, "OEBPS/" + FONT_PATH);
+                    zip.write(subset);
+                    embedded = true;
+                }
+            }
+            putEntry(zip, writer, "OEBPS/content.opf");
+            writePackage(writer, work, embedded);
+            putEntry(zip, writer, "OEBPS/nav.xhtml");
+            writeNav(writer, work);
+            putEntry(zip, writer, "OEBPS/toc.ncx");
+            writeNcx(writer, work);
+            writer.flush();
+            zip.closeEntry();
+            zip.finish();
+            metrics.end(ExportMetrics.PHASE_SERIALIZATION);
+            out.flush();
+        } finally {
+            try {
+                zip.close();
+            } catch (Exception e) {
+                ExportLog.w(TAG, "Error closing output stream", e);
+            }
+        }
+    }
+
+    private static String chapterFile(ExportWork.Chapter chapter) {
+        return String.format(Locale.ROOT, "chapter-%05d.xhtml", chapter.index + 1);
+    }
+
+    /**
+     * 作品的标识：按标题生成，同一作品重新导出后阅读器仍能识别为同一本书
+     */
+    private static String identifier(ExportWork work) {
+        return "urn:uuid:" + UUID.nameUUIDFromBytes(("cwriter:" + work.title).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeStored(ZipOutputStream zip, String name, byte[] content) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(content.length);
+        entry.setCompressedSize(content.length);
+        entry.setCrc(crc.getValue());
+        zip.putNextEntry(entry);
+        zip.write(content);
+        zip.closeEntry();
+    }
+
+    private static void putEntry(ZipOutputStream zip, Writer writer, String name) throws IOException {
+        writer.flush();
+        zip.putNextEntry(new ZipEntry(name));
+    }
+
+    private static void writeStyle(Writer writer, ExportWork work, boolean embedFont) throws IOException {
+        float body = work.bodySize;
+        if (embedFont) {
+            writer.write("@font-face{font-family:\"" + FONT_FAMILY + "\";src:url(\"" + FONT_PATH + "\");}\n");
+            writer.write("body{font-family:\"" + FONT_FAMILY + "\",serif;}\n");
+        }
+        writer.write(String.format(Locale.ROOT,
+            "h1{font-size:%.2fem;font-weight:bold;text-align:center;margin:2em 0 1em;}\n"
+                + "h2{font-size:%.2fem;font-weight:bold;margin:1em 0 0.8em;}\n"
+                + "p{text-indent:2em;line-height:%.2f;margin:0 0 0.4em;}\n"
+                + "p.description{text-indent:0;}\n"
+                + "nav ol{list-style:none;padding:0;}\n",
+            work.titleSize / body, work.headingSize / body, work.lineSpacing));
+    }
+
+    private static void startXhtml(Writer writer, String title) throws IOException {
+        writer.write(XHTML_START);
+        writeEscaped(writer, title, 0, title.length());
+        writer.write(XHTML_HEAD_END);
+    }
+
+    /**
+     * 标题页：作品标题和简介
+     */
+    private static void writeTitlePage(Writer writer, ExportWork work, BitSet usedChars) throws IOException {
+        startXhtml(writer, work.title);
+        writer.write("<section epub:type=\"titlepage\"><h1>");
+        writeText(writer, work.title, 0, work.title.length(), usedChars);
+        writer.write("</h1>");
+        if (!work.description.trim().isEmpty()) {
+            writer.write("<h2>");
+            writeText(writer, "简介", 0, 2, usedChars);
+            writer.write("</h2><p class=\"description\">");
+            writeText(writer, work.description, 0, work.description.length(), usedChars);
+            writer.write("</p>");
+        }
+        writer.write("</section>");
+        writer.write(XHTML_END);
+    }
+
+    private static void writeChapter(Writer writer, ExportWork.Chapter chapter, BitSet usedChars) throws IOException {
+        startXhtml(writer, chapter.heading);
+        writer.write("<section epub:type=\"chapter\"><h2>");
+        writeText(writer, chapter.heading, 0, chapter.heading.length(), usedChars);
+        writer.write("</h2>");
+        for (int i = 0; i < chapter.paragraphCount(); i++) {
+            writer.write("<p>");
+            // 段落由 text-indent 缩进，跳过原文的全角空格缩进
+            int start = ParagraphTokenizer.skipIndent(chapter.content, chapter.start(i), chapter.end(i));
+            writeText(writer, chapter.content, start, chapter.end(i), usedChars);
+            writer.write("</p>");
+        }
+        writer.write("</section>");
+        writer.write(XHTML_END);
+    }
+
+    private static void writePackage(Writer writer, ExportWork work, boolean embeddedFont) throws IOException {
+        SimpleDateFormat modified = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.ROOT);
+        modified.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        writer.write("<package xmlns=\"http://www.idpf.org/2007/opf\" version=\"3.0\" unique-identifier=\"bookid\" xml:lang=\"zh-CN\">");
+        writer.write("<metadata xmlns:dc=\"http://purl.org/dc/elements/1.1/\">");
+        writer.write("<dc:identifier id=\"bookid\">" + identifier(work) + "</dc:identifier><dc:title>");
+        writeEscaped(writer, work.title, 0, work.title.length());
+        writer.write("</dc:title><dc:language>zh-CN</dc:language>");
+        if (!work.description.trim().isEmpty()) {
+            writer.write("<dc:description>");
+            writeEscaped(writer, work.description, 0, work.description.length());
+            writer.write("</dc:description>");
+        }
+        writer.write("<meta property=\"dcterms:modified\">" + modified.format(new Date()) + "</meta>");
+        writer.write("</metadata><manifest>");
+        writer.write("<item id=\"nav\" href=\"nav.xhtml\" media-type=\"application/xhtml+xml\" properties=\"nav\"/>");
+        writer.write("<item id=\"ncx\" href=\"toc.ncx\" media-type=\"application/x-dtbncx+xml\"/>");
+        writer.write("<item id=\"style\" href=\"style.css\" media-type=\"text/css\"/>");
+        writer.write("<item id=\"title\" href=\"title.xhtml\" media-type=\"application/xhtml+xml\"/>");
+        for (ExportWork.Chapter chapter : work.chapters) {
+            writer.write("<item id=\"c" + (chapter.index + 1) + "\" href=\"" + chapterFile(chapter)
+                + "\" media-type=\"application/xhtml+xml\"/>");
+        }
+        if (embeddedFont) {
+            writer.write("<item id=\"font\" href=\"" + FONT_PATH + "\" media-type=\"font/ttf\"/>");
+        }
+        writer.write("</manifest><spine toc=\"ncx\"><itemref idref=\"title\"/>");
+        for (ExportWork.Chapter chapter : work.chapters) {
+            writer.write("<itemref idref=\"c" + (chapter.index + 1) + "\"/>");
+        }
+        writer.write("</spine></package>");
+    }
+
+    /**
+     * EPUB 3 的目录（nav）
+     */
+    private static void writeNav(Writer writer, ExportWork work) throws IOException {
+        startXhtml(writer, "目录");
+        writer.write("<nav epub:type=\"toc\" id=\"toc\"><h2>目录</h2><ol>");
+        for (ExportWork.Chapter chapter : work.chapters) {
+            writer.write("<li><a href=\"" + chapterFile(chapter) + "\">");
+            writeEscaped(writer, chapter.heading, 0, chapter.heading.length());
+            writer.write("</a></li>");
+        }
+        writer.write("</ol></nav>");
+        writer.write(XHTML_END);
+    }
+
+    /**
+     * EPUB 2 的目录（NCX），供只认 toc.ncx 的旧阅读器使用
+     */
+    private static void writeNcx(Writer writer, ExportWork work) throws IOException {
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        writer.write("<ncx xmlns=\"http://www.daisy.org/z3986/2005/ncx/\" version=\"2005-1\" xml:lang=\"zh-CN\"><head>");
+        writer.write("<meta name=\"dtb:uid\" content=\"" + identifier(work) + "\"/>");
+        writer.write("<meta name=\"dtb:depth\" content=\"1\"/><meta name=\"dtb:totalPageCount\" content=\"0\"/>"
+            + "<meta name=\"dtb:maxPageNumber\" content=\"0\"/></head><docTitle><text>");
+        writeEscaped(writer, work.title, 0, work.title.length());
+        writer.write("</text></docTitle><navMap>");
+        for (ExportWork.Chapter chapter : work.chapters) {
+            int order = chapter.index + 1;
+            writer.write("<navPoint id=\"n" + order + "\" playOrder=\"" + order + "\"><navLabel><text>");
+            writeEscaped(writer, chapter.heading, 0, chapter.heading.length());
+            writer.write("</text></navLabel><content src=\"" + chapterFile(chapter) + "\"/></navPoint>");
+        }
+        writer.write("</navMap></ncx>");
+    }
+
+    /**
+     * 写出正文文字；需要嵌入字体时同时记录用到的字符
+     */
+    private static void writeText(Writer writer, String text, int start, int end, BitSet usedChars) throws IOException {
+        if (usedChars != null) {
+            for (int i = start; i < end; ) {
+                int codePoint = text.codePointAt(i);
+                usedChars.set(codePoint);
+                i += Character.charCount(codePoint);
+            }
+        }
+        writeEscaped(writer, text, start, end);
+    }
+
+    /**
+     * 转义XML特殊字符，并去掉XML 1.0中不允许出现的控制字符
+     */
+    private static void writeEscaped(Writer writer, String text, int start, int end) throws IOException {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            String replacement;
+            if (c == '<') {
+                replacement = "&lt;";
+            } else if (c == '>') {
+                replacement = "&gt;";
+            } else if (c == '&') {
+                replacement = "&amp;";
+            } else if (c < 0x20 && c != '\t') {
+                replacement = "";
+            } else if (c == 0xFFFE || c == 0xFFFF) {
+                replacement = "";
+            } else {
+                continue;
+            }
+            writer.write(text, start, i - start);
+            writer.write(replacement);
+            start = i + 1;
+        }
+        writer.write(text, start, end - start);
+    }
+
+    /**
+     * 读取要嵌入的字体；未指定、不是 TrueType 轮廓或读取失败时返回null，导出继续但不嵌入字体
+     */
+    private static TrueTypeFont loadFont(String source) {
+        if (source == null || source.isEmpty()) {
+            return null;
+        }
+        int comma = source.lastIndexOf(',');
+        try {
+            FontProgram program = comma > 0
+                ? FontProgramFactory.createFont(source.substring(0, comma), Integer.parseInt(source.substring(comma + 1)), false)
+                : FontProgramFactory.createFont(source, false);
+            if (!(program instanceof TrueTypeFont) || ((TrueTypeFont) program).isCff()) {
+                ExportLog.w(TAG, "只支持嵌入 TrueType 轮廓的字体，跳过: " + source);
+                return null;
+            }
+            return (TrueTypeFont) program;
+        } catch (Exception e) {
+            ExportLog.w(TAG, "读取嵌入字体失败，跳过: " + source, e);
+            return null;
+        }
+    }
+
+    /**
+     * 只保留用到的字形；其余字形的轮廓清空，字形编号和 cmap 不变，阅读器可以直接使用
+     */
+    private static byte[] subsetFont(TrueTypeFont font, BitSet usedChars) {
+        Set<Integer> glyphs = new HashSet<>();
+        glyphs.add(0);
+        for (int c = usedChars.nextSetBit(0); c >= 0; c = usedChars.nextSetBit(c + 1)) {
+            Glyph glyph = font.getGlyph(c);
+            if (glyph != null) {
+                glyphs.add(glyph.getCode());
+            }
+        }
+        try {
+            // subset 为 false 时保留 name/post 表，阅读器（和字体校验）要求这两张表
+            return font.getSubset(glyphs, false);
+        } catch (Exception e) {
+            ExportLog.w(TAG, "字体子集化失败，不嵌入字体", e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package com.cwriter.export;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 导出检查点 - 记录大作品的导出任务和已完成的章节，进程被杀或崩溃后可以从断点继续
+ *
+ * 已完成章节的渲染结果就是 ChapterRenderCache 中的片段（DOCX 的XML片段、每章从新页开始时的单章PDF），
+ * 检查点只需要另外保存任务本身：开始时把导出选项写入缓存目录一次，之后每隔一段时间更新一个很小的进度记录。
+ * 继续导出时用保存的选项重新提交，已完成的章节全部命中缓存，只排版剩余的章节。
+ * 任务号由格式、作品内容、格式选项和目标文件计算，同一导出再次提交时沿用原来的检查点。
+ * PDF正文连续排版（没有 chapterPageBreak）时每章的分页取决于前面所有章节，无法从中间继续，不记录检查点。
+ */
+final class ExportCheckpoint implements ExportMetrics.ChapterListener {
+
+    private static final String TAG = "ExportCheckpoint";
+
+    /** 字符数少于此值的作品导出很快，不记录检查点 */
+    static final long MIN_CHARS = 200_000;
+
+    /** 进度记录的最短间隔 */
+    static final long SAVE_INTERVAL_MS = 1000;
+
+    /** 最多保留的未完成任务数，超出时删除最早的 */
+    static final int MAX_JOBS = 8;
+
+    /** 未完成任务的保留时间 */
+    static final long MAX_AGE_MS = 7L * 24 * 60 * 60 * 1000;
+
+    private static final String RECORD_SUFFIX = ".json";
+    private static final String OPTIONS_SUFFIX = ".options";
+
+    private static volatile File sharedDir;
+
+    private final File dir;
+    private final JSONObject record;
+    private final int resumedChapters;
+    private long savedAt;
+    private int savedChapters;
+    private int renderedChapters;
+
+    private ExportCheckpoint(File dir, JSONObject record, int resumedChapters) {
+        this.dir = dir;
+        this.record = record;
+        this.resumedChapters = resumedChapters;
+        this.savedChapters = resumedChapters;
+        this.savedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * 设置检查点目录；dir 为null时不记录检查点
+     */
+    static void configure(File dir) {
+        if (dir == null) {
+            sharedDir = null;
+            return;
+        }
+        if (dir.equals(sharedDir)) {
+            return;
+        }
+        if (!dir.exists() && !dir.mkdirs()) {
+            ExportLog.w(TAG, "无法创建检查点目录: " + dir.getAbsolutePath());
+            sharedDir = null;
+            return;
+        }
+        sharedDir = dir;
+    }
+
+    /**
+     * 开始带检查点的导出：记录任务并在每章完成时更新进度
+     *
+     * @param format  导出格式，pdf 或 docx
+     * @param options 导出选项，原样保存（保存路径换成 target）
+     * @param target  解析后的导出目标
+     * @return 检查点；未配置目录、作品太小或章节结果不能复用时返回null
+     */
+    static ExportCheckpoint begin(String format, JSONObject options, ExportWork work, ExportTarget target,
+                                  ExportMetrics metrics) {
+        File dir = sharedDir;
+        if (dir == null || options == null || work.charCount < MIN_CHARS || !resumable(format, work)) {
+            return null;
+        }
+        JSONObject stored = options.clone();
+        stored.put("savePath", target.location());
+        String jobId = WorkFingerprint.ofExport(format, stored).substring(0, 16);
+        try {
+            ExportCheckpoint checkpoint;
+            synchronized (ExportCheckpoint.class) {
+                JSONObject existing = read(new File(dir, jobId + RECORD_SUFFIX));
+                if (existing != null && new File(dir, jobId + OPTIONS_SUFFIX).isFile()) {
+                    // 同一导出的检查点：选项已经保存过，已完成的章节留在渲染缓存中
+                    checkpoint = new ExportCheckpoint(dir, existing, existing.getIntValue("completed"));
+                    ExportLog.d(TAG, "继续导出 " + jobId + "，已完成 " + checkpoint.resumedChapters + " 章");
+                } else {
+                    expire(dir, MAX_JOBS - 1);
+                    writeOptions(new File(dir, jobId + OPTIONS_SUFFIX), stored);
+                    JSONObject record = new JSONObject();
+                    record.put("jobId", jobId);
+                    record.put("format", format);
+                    record.put("title", work.title);
+                    record.put("path", target.location());
+                    record.put("total", work.chapters.size());
+                    record.put("completed", 0);
+                    record.put("created", System.currentTimeMillis());
+                    checkpoint = new ExportCheckpoint(dir, record, 0);
+                }
+                checkpoint.save(checkpoint.resumedChapters);
+            }
+            metrics.setChapterListener(checkpoint);
+            return checkpoint;
+        } catch (IOException e) {
+            ExportLog.w(TAG, "记录导出检查点失败，本次导出不能继续: " + jobId, e);
+            new File(dir, jobId + OPTIONS_SUFFIX).delete();
+            return null;
+        }
+    }
+
+    /**
+     * 已完成章节的渲染结果是否会留在 ChapterRenderCache 中
+     */
+    static boolean resumable(String format, ExportWork work) {
+        if (ChapterRenderCache.forWork(work) == null) {
+            return false;
+        }
+        // DOCX 启用缓存时走流式渲染，每章写完即缓存；PDF 只有每章从新页开始时才按章缓存
+        return "docx".equals(format) || ("pdf".equals(format) && work.chapterPageBreak);
+    }
+
+    /**
+     * 继续导出所需的任务信息：jobId、format、title、path、total、completed
+     *
+     * @return 没有这个任务或任务已过期时返回null
+     */
+    static JSONObject find(String jobId) {
+        File dir = sharedDir;
+        if (dir == null || jobId == null || !jobId.matches("[0-9a-f]{16}")) {
+            return null;
+        }
+        synchronized (ExportCheckpoint.class) {
+            JSONObject record = read(new File(dir, jobId + RECORD_SUFFIX));
+            if (record == null || !new File(dir, jobId + OPTIONS_SUFFIX).isFile() || expired(record)) {
+                return null;
+            }
+            return record;
+        }
+    }
+
+    /**
+     * 读取任务保存的导出选项，保存路径为原来的目标文件
+     */
+    static JSONObject options(String jobId) throws IOException {
+        File dir = sharedDir;
+        if (dir == null) {
+            throw new IOException("检查点目录未配置");
+        }
+        File file = new File(dir, jobId + OPTIONS_SUFFIX);
+        JSONObject options = JSON.parseObject(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        if (options == null) {
+            throw new IOException("导出选项为空: " + file.getName());
+        }
+        return options;
+    }
+
+    /**
+     * 未完成的导出任务，最近更新的在前
+     */
+    static JSONArray pending() {
+        JSONArray jobs = new JSONArray();
+        File dir = sharedDir;
+        if (dir == null) {
+            return jobs;
+        }
+        synchronized (ExportCheckpoint.class) {
+            expire(dir, MAX_JOBS);
+            List<JSONObject> records = records(dir);
+            records.sort(Comparator.comparingLong((JSONObject record) -> record.getLongValue("updated")).reversed());
+            jobs.addAll(records);
+        }
+        return jobs;
+    }
+
+    @Override
+    public void chapterRendered(int chaptersRendered) {
+        renderedChapters = chaptersRendered;
+        // 重试或继续导出时从第一章重新计数，已经记录的进度不回退
+        if (chaptersRendered <= savedChapters) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (now - savedAt < SAVE_INTERVAL_MS) {
+            return;
+        }
+        try {
+            save(chaptersRendered);
+        } catch (IOException e) {
+            ExportLog.w(TAG, "更新导出进度失败: " + jobId(), e);
+            savedAt = now;
+        }
+    }
+
+    String jobId() {
+        return record.getString("jobId");
+    }
+
+    /**
+     * 导出成功：删除检查点
+     */
+    void complete() {
+        synchronized (ExportCheckpoint.class) {
+            delete(dir, jobId());
+        }
+    }
+
+    /**
+     * 导出失败：保存最后的进度，保留检查点供 resumeExport 继续
+     */
+    void fail() {
+        if (renderedChapters <= savedChapters) {
+            return;
+        }
+        try {
+            save(renderedChapters);
+        } catch (IOException e) {
+            ExportLog.w(TAG, "更新导出进度失败: " + jobId(), e);
+        }
+    }
+
+    /**
+     * 在导出结果中写入任务号和从检查点继续的章节数
+     */
+    void describe(JSONObject result) {
+        result.put("jobId", jobId());
+        if (resumedChapters > 0) {
+            result.put("resumedChapters", resumedChapters);
+        }
+    }
+
+    private void save(int completed) throws IOException {
+        long now = System.currentTimeMillis();
+        synchronized (ExportCheckpoint.class) {
+            record.put("completed", Math.min(completed, record.getIntValue("total")));
+            record.put("updated", now);
+            File file = new File(dir, jobId() + RECORD_SUFFIX);
+            File temp = File.createTempFile(jobId(), ".part", dir);
+            try {
+                Files.write(temp.toPath(), record.toJSONString().getBytes(StandardCharsets.UTF_8));
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                temp.delete();
+            }
+        }
+        savedAt = now;
+        savedChapters = completed;
+    }
+
+    /**
+     * 选项中的章节正文可能有几十MB：边序列化边写入文件，不先生成完整的字符串
+     */
+    private static void writeOptions(File file, JSONObject options) throws IOException {
+        File temp = File.createTempFile(file.getName(), ".part", file.getParentFile());
+        try {
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8), 64 * 1024)) {
+                JSON.writeJSONString(writer, options);
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            temp.delete();
+        }
+    }
+
+    private static JSONObject read(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            return JSON.parseObject(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            ExportLog.w(TAG, "检查点记录损坏: " + file.getName(), e);
+            return null;
+        }
+    }
+
+    private static List<JSONObject> records(File dir) {
+        List<JSONObject> records = new ArrayList<>();
+        File[] files = dir.listFiles((parent, name) -> name.endsWith(RECORD_SUFFIX));
+        if (files == null) {
+            return records;
+        }
+        for (File file : files) {
+            JSONObject record = read(file);
+            if (record != null && record.getString("jobId") != null) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    private static boolean expired(JSONObject record) {
+        return System.currentTimeMillis() - record.getLongValue("updated") > MAX_AGE_MS;
+    }
+
+    /**
+     * 删除过期、损坏和缺少选项的任务，以及超出 keep 个的最早任务
+     */
+    private static void expire(File dir, int keep) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        List<JSONObject> live = new ArrayList<>();
+        List<String> liveIds = new ArrayList<>();
+        for (JSONObject record : records(dir)) {
+            String jobId = record.getString("jobId");
+            if (expired(record) || !new File(dir, jobId + OPTIONS_SUFFIX).isFile()) {
+                delete(dir, jobId);
+            } else {
+                live.add(record);
+                liveIds.add(jobId);
+            }
+        }
+        live.sort(Comparator.comparingLong(record -> record.getLongValue("updated")));
+        for (int i = 0; i < live.size() - Math.max(0, keep); i++) {
+            String jobId = live.get(i).getString("jobId");
+            ExportLog.d(TAG, "未完成的导出过多，删除最早的检查点: " + jobId);
+            delete(dir, jobId);
+            liveIds.remove(jobId);
+        }
+        // 没有记录的选项文件（写完选项进程即被杀）和残留的临时文件；写入都持有同一把锁，这里不会删到正在写的文件
+        for (File file : files) {
+            String name = file.getName();
+            boolean orphan = name.endsWith(OPTIONS_SUFFIX)
+                && !liveIds.contains(name.substring(0, name.length() - OPTIONS_SUFFIX.length()));
+            if ((orphan || name.endsWith(".part")) && file.exists() && !file.delete()) {
+                ExportLog.w(TAG, "无法删除检查点文件: " + name);
+            }
+        }
+    }
+
+    private static void delete(File dir, String jobId) {
+        for (File file : Arrays.asList(new File(dir, jobId + RECORD_SUFFIX), new File(dir, jobId + OPTIONS_SUFFIX))) {
+            if (file.exists() && !file.delete()) {
+                ExportLog.w(TAG, "无法删除检查点文件: " + file.getName());
+            }
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.cwriter.export;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 命令行批量导出 - 在工作站或无界面的Linux服务器上把作品目录/JSON选项文件导出为PDF、DOCX、TXT
+ *
+ * <pre>
+ * cwriter-export [-f pdf,docx,txt,epub] [-o 输出目录] [-j 线程数] [-s 汇总文件] [--fsync] [--cache 缓存目录] 作品目录|上级目录|选项.json ...
+ * </pre>
+ *
+ * 渲染与插件的 ExportUtils.exportToPDFDirect/exportToDOCXDirect 使用同一套渲染器。
+ * 作品之间按线程数并行（默认等于CPU核数），同一作品的各格式在同一线程内依次渲染，避免线程数超过核数。
+ * 汇总JSON写到标准输出或 -s 指定的文件；任一导出失败时退出码为1，参数错误时为2。
+ * --cache 的章节渲染缓存放在该目录下的 cwriter-render-cache 子目录中。
+ * 输出文件名含中文，服务器上需要UTF-8区域设置（如 LANG=C.UTF-8），否则JVM会把文件名中的中文替换为问号。
+ */
+public final class ExportCli {
+
+    private static final String TAG = "ExportCli";
+
+    private ExportCli() {
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        int status;
+        try {
+            status = run(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(usage());
+            status = 2;
+        }
+        System.exit(status);
+    }
+
+    static int run(String[] args) {
+        Set<String> formats = new LinkedHashSet<>();
+        File outputDir = new File("exports");
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path summaryFile = null;
+        boolean sync = false;
+        List<Path> inputs = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "-f":
+                case "--format":
+                    for (String format : value(args, ++i, arg).split(",")) {
+                        String trimmed = format.trim().toLowerCase();
+                        if (MultiFormatExporter.rendererFor(trimmed) == null) {
+                            throw new IllegalArgumentException("不支持的格式: " + format);
+                        }
+                        formats.add(trimmed);
+                    }
+                    break;
+                case "-o":
+                case "--output":
+                    outputDir = new File(value(args, ++i, arg));
+                    break;
+                case "-j":
+                case "--jobs":
+                    try {
+                        threads = Integer.parseInt(value(args, ++i, arg));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("线程数无效: " + args[i]);
+                    }
+                    if (threads <= 0) {
+                        throw new IllegalArgumentException("线程数必须大于0");
+                    }
+                    break;
+                case "-s":
+                case "--summary":
+                    summaryFile = Paths.get(value(args, ++i, arg));
+                    break;
+                case "--fsync":
+                    sync = true;
+                    break;
+                case "--cache":
+                    ChapterRenderCache.configure(new File(value(args, ++i, arg)), ChapterRenderCache.DEFAULT_MAX_BYTES);
+                    break;
+                case "-h":
+                case "--help":
+                    System.out.println(usage());
+                    return 0;
+                default:
+                    if (arg.startsWith("-")) {
+                        throw new IllegalArgumentException("未知参数: " + arg);
+                    }
+                    inputs.add(Paths.get(arg));
+                    break;
+            }
+        }
+        if (formats.isEmpty()) {
+            formats.add("pdf");
+        }
+
+        List<Path> sources = new ArrayList<>();
+        for (Path input : inputs) {
+            try {
+                List<Path> expanded = WorkDirectoryReader.expand(input);
+                if (expanded.isEmpty()) {
+                    ExportLog.w(TAG, "没有找到作品: " + input);
+                }
+                sources.addAll(expanded);
+            } catch (IOException e) {
+                ExportLog.e(TAG, "读取输入失败: " + input, e);
+            }
+        }
+        if (sources.isEmpty()) {
+            throw new IllegalArgumentException("没有可导出的作品");
+        }
+        if (!outputDir.exists() && !outputDir.mkdirs()) {
+            throw new IllegalArgumentException("无法创建输出目录: " + outputDir);
+        }
+
+        JSONObject summary = exportAll(sources, formats, outputDir, threads, sync);
+        String text = JSONObject.toJSONString(summary, SerializerFeature.PrettyFormat);
+        if (summaryFile != null) {
+            try {
+                Files.write(summaryFile, text.getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                ExportLog.e(TAG, "写入汇总失败: " + summaryFile, e);
+                System.out.println(text);
+            }
+        } else {
+            System.out.println(text);
+        }
+        return summary.getBooleanValue("success") ? 0 : 1;
+    }
+
+    /**
+     * 并行导出全部作品
+     *
+     * @return 汇总：success、works、failed、threads、duration、results[]
+     */
+    static JSONObject exportAll(List<Path> sources, Set<String> formats, File outputDir, int threads, boolean sync) {
+        long startTime = System.currentTimeMillis();
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, sources.size()), runnable -> {
+            Thread thread = new Thread(runnable, "cwriter-batch-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        List<Future<JSONObject>> futures = new ArrayList<>();
+        for (int i = 0; i < sources.size(); i++) {
+            final Path source = sources.get(i);
+            final int index = i + 1;
+            futures.add(pool.submit(() -> exportWork(source, index, formats, outputDir, sync)));
+        }
+
+        JSONArray results = new JSONArray();
+        int failed = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            JSONObject result;
+            try {
+                result = futures.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                result = failure(sources.get(i), "导出等待被中断");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                result = failure(sources.get(i), String.valueOf(cause.getMessage()));
+            }
+            if (!result.getBooleanValue("success")) {
+                failed++;
+            }
+            results.add(result);
+        }
+        pool.shutdown();
+
+        JSONObject summary = new JSONObject();
+        summary.put("success", failed == 0);
+        summary.put("works", sources.size());
+        summary.put("failed", failed);
+        summary.put("threads", Math.min(threads, sources.size()));
+        summary.put("duration", System.currentTimeMillis() - startTime);
+        summary.put("results", results);
+        summary.put("stats", PerformanceStats.snapshot());
+        return summary;
+    }
+
+    private static JSONObject exportWork(Path source, int index, Set<String> formats, File outputDir, boolean sync) {
+        long startTime = System.currentTimeMillis();
+        JSONObject result = new JSONObject();
+        result.put("source", source.toString());
+        try {
+            ExportWork work = ExportWork.from(WorkDirectoryReader.read(source));
+            result.put("title", work.title);
+            result.put("chapters", work.chapters.size());
+            result.put("chars", work.charCount);
+
+            // 不同作品可能同名，文件名加上输入序号
+            String baseName = index + "_" + sanitizeFileName(work.title);
+            JSONObject outputs = new JSONObject();
+            boolean success = true;
+            for (String format : formats) {
+                WorkRenderer renderer = MultiFormatExporter.rendererFor(format);
+                ExportTarget target = ExportTarget.forFile(new File(outputDir, baseName + renderer.extension()));
+                JSONObject formatResult = MultiFormatExporter.renderOne(work, renderer, target, sync);
+                success &= formatResult.getBooleanValue("success");
+                outputs.put(format, formatResult);
+            }
+            result.put("success", success);
+            result.put("outputs", outputs);
+        } catch (Throwable t) {
+            ExportLog.e(TAG, "读取作品失败: " + source, t);
+            result.put("success", false);
+            result.put("error", "读取作品失败: " + t.getMessage());
+        }
+        result.put("duration", System.currentTimeMillis() - startTime);
+        return result;
+    }
+
+    private static JSONObject failure(Path source, String message) {
+        JSONObject result = new JSONObject();
+        result.put("source", source.toString());
+        result.put("success", false);
+        result.put("error", message);
+        return result;
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException(option + " 缺少参数值");
+        }
+        return args[index];
+    }
+
+    /**
+     * 去掉文件名中不允许的字符
+     */
+    private static String sanitizeFileName(String title) {
+        String name = title == null ? "" : title.replaceAll("[\\\\/:*?\"<>|\\s]+", "_");
+        return name.isEmpty() ? "untitled" : name;
+    }
+
+    private static String usage() {
+        return "用法: cwriter-export [-f pdf,docx,txt,epub] [-o 输出目录] [-j 线程数] [-s 汇总文件] [--fsync] [--cache 缓存目录] 作品目录|上级目录|选项.json ...";
+    }
+}
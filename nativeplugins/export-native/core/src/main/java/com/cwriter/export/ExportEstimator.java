@@ -0,0 +1,240 @@
+package com.cwriter.export;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+
+import java.io.File;
+import java.util.Locale;
+
+/**
+ * 导出预估 - 不生成文件，只按PDF渲染器的排版规则快速走一遍，估算页数、文件大小、耗时和磁盘空间
+ *
+ * 折行使用与 PdfWorkRenderer 相同的 CjkLineBreaker 和 GlyphMetrics 宽度表，排版规则（A4、50pt页边距、字号、行距、段落间距）也一致；
+ * 耗时按本机最近导出的吞吐量中位数（PerformanceStats）换算，还没有导出记录时使用保守的默认值。
+ */
+final class ExportEstimator {
+
+    /** 磁盘上除输出文件外至少保留的空间，与 ExportUtils.checkStorageSpace 一致 */
+    static final long STORAGE_RESERVE_BYTES = 10L * 1024 * 1024;
+
+    // A4页面（595x842pt）去掉四边50pt页边距后的版心
+    private static final float CONTENT_WIDTH = 595f - 100f;
+    private static final float CONTENT_HEIGHT = 842f - 100f;
+
+    /** iText 段落默认行距倍数（标题和章节标题未设置行距） */
+    private static final float DEFAULT_LEADING = 1.35f;
+    /** iText 段落默认的上边距（正文段落只设置了下边距） */
+    private static final float DEFAULT_MARGIN_TOP = 4f;
+    /** 行高 = 字号 × 行距 × 该系数：iText按字体的上伸部到下伸部（STSong-Light约1.2倍字号）计算倍数行距 */
+    private static final float LINE_HEIGHT_FACTOR = 1.2f;
+
+    /** 没有导出记录时的吞吐量（字符/秒），按中低端手机取保守值 */
+    private static final long DEFAULT_PDF_CHARS_PER_SECOND = 60_000;
+    private static final long DEFAULT_DOCX_CHARS_PER_SECOND = 150_000;
+    private static final long DEFAULT_TXT_CHARS_PER_SECOND = 5_000_000;
+    private static final long DEFAULT_EPUB_CHARS_PER_SECOND = 1_500_000;
+
+    private ExportEstimator() {
+    }
+
+    /**
+     * 预估导出
+     *
+     * @param options   与 exportToPDF 相同的导出选项
+     * @param formats   要预估的格式，如 pdf、docx、txt、epub
+     * @param targetDir 输出目录，用来检查剩余空间；为null时不检查
+     * @return chars、paragraphs、chapters、formats（各格式的 pages/sizeBytes/durationMs/calibrated/renderMode）、
+     *         requiredBytes、freeBytes、enoughSpace、estimateMs
+     */
+    static JSONObject estimate(JSONObject options, JSONArray formats, File targetDir) {
+        long startNanos = System.nanoTime();
+        ExportWork work = ExportWork.from(options);
+
+        JSONObject perFormat = new JSONObject();
+        long requiredBytes = 0;
+        for (int i = 0; i < formats.size(); i++) {
+            String format = formats.getString(i) != null ? formats.getString(i).toLowerCase() : "";
+            JSONObject item = new JSONObject();
+            long size;
+            if ("pdf".equals(format)) {
+                int pages = estimatePdfPages(work);
+                // 压缩后的内容流约2.2字节/字符，每页的页面对象和资源约300字节
+                size = 8L * 1024 + pages * 300L + work.charCount * 22 / 10;
+                item.put("pages", pages);
+            } else if ("docx".equals(format)) {
+                // document.xml 压缩后约1.7字节/字符（含段落属性）
+                size = 4L * 1024 + work.charCount * 17 / 10;
+            } else if ("txt".equals(format)) {
+                size = txtBytes(work);
+            } else if ("epub".equals(format)) {
+                // 章节XHTML压缩后约1.5字节/字符，每章的文件头、目录和zip条目约400字节
+                size = 4L * 1024 + work.chapters.size() * 400L + work.charCount * 15 / 10;
+            } else {
+                item.put("error", "不支持的格式: " + format);
+                perFormat.put(format, item);
+                continue;
+            }
+            requiredBytes += size;
+            item.put("sizeBytes", size);
+
+            int op = PerformanceStats.exportOp(format);
+            long charsPerSecond = PerformanceStats.medianCharsPerSecond(op);
+            item.put("calibrated", charsPerSecond > 0);
+            if (charsPerSecond <= 0) {
+                charsPerSecond = "pdf".equals(format) ? DEFAULT_PDF_CHARS_PER_SECOND
+                    : "docx".equals(format) ? DEFAULT_DOCX_CHARS_PER_SECOND
+                    : "epub".equals(format) ? DEFAULT_EPUB_CHARS_PER_SECOND : DEFAULT_TXT_CHARS_PER_SECOND;
+            }
+            item.put("durationMs", work.charCount * 1000 / charsPerSecond);
+
+            // 与 MemoryAdmission 相同的判断：当前内存是否放得下，DOCX放不下时会走流式渲染
+            long peak = MemoryAdmission.estimatePeakBytes(format, work.charCount, work.paragraphCount);
+            item.put("estimatedPeakBytes", peak);
+            boolean fits = peak <= MemoryAdmission.availableBytes() * 0.8;
+            item.put("renderMode", fits || !"docx".equals(format) ? "direct" : "streaming");
+            perFormat.put(format, item);
+        }
+
+        JSONObject result = new JSONObject();
+        result.put("success", true);
+        result.put("chars", work.charCount);
+        result.put("paragraphs", work.paragraphCount);
+        result.put("chapters", work.chapters.size());
+        result.put("formats", perFormat);
+        result.put("requiredBytes", requiredBytes);
+        if (targetDir != null) {
+            long free = usableSpace(targetDir);
+            result.put("freeBytes", free);
+            result.put("enoughSpace", free < 0 || free > requiredBytes + STORAGE_RESERVE_BYTES);
+        }
+        result.put("estimateMs", (System.nanoTime() - startNanos) / 1000000);
+        return result;
+    }
+
+    /**
+     * 按 PdfWorkRenderer 的排版规则估算页数：逐段按字符宽度折行，段落可以跨页；再加上目录的页数
+     */
+    static int estimatePdfPages(ExportWork work) {
+        Layout layout = new Layout();
+        layout.paragraph(work.title, work.titleSize, DEFAULT_LEADING, DEFAULT_MARGIN_TOP, 20);
+        if (!work.description.trim().isEmpty()) {
+            layout.paragraph("简介", work.headingSize, DEFAULT_LEADING, 15, 8);
+            layout.paragraph(work.description, work.bodySize, work.lineSpacing, DEFAULT_MARGIN_TOP, 15);
+        }
+        if (PdfTableOfContents.enabled(work) && !work.chapterPageBreak) {
+            layout.newPage();
+        }
+        for (ExportWork.Chapter chapter : work.chapters) {
+            layout.paragraph(chapter.heading, work.headingSize, DEFAULT_LEADING, 15, 10);
+            for (int i = 0; i < chapter.paragraphCount(); i++) {
+                layout.paragraph(chapter.content, chapter.start(i), chapter.end(i), work.bodySize, work.lineSpacing, DEFAULT_MARGIN_TOP, 5);
+            }
+        }
+        return layout.pages + PdfTableOfContents.pageCount(work);
+    }
+
+    /**
+     * 编码后的TXT大小，行结构、换行符和缩进与 TxtWorkRenderer 一致
+     */
+    private static long txtBytes(ExportWork work) {
+        boolean utf8 = !isDoubleByteCharset(work.txtEncoding);
+        int newLine = work.txtLineEnding.length();
+        long indent = work.txtIndent != null ? encodedLength(work.txtIndent, 0, work.txtIndent.length(), utf8) : 0;
+        long bytes = encodedLength(work.title, 0, work.title.length(), utf8) + newLine;
+        if (!work.description.trim().isEmpty()) {
+            bytes += encodedLength("简介", 0, 2, utf8) + 2 * newLine;
+            int[] bounds = ParagraphTokenizer.tokenize(work.description);
+            for (int i = 0; i < bounds.length; i += 2) {
+                bytes += indent + encodedLength(work.description, txtStart(work, work.description, bounds[i], bounds[i + 1]),
+                    bounds[i + 1], utf8) + newLine;
+            }
+        }
+        for (ExportWork.Chapter chapter : work.chapters) {
+            bytes += encodedLength(chapter.heading, 0, chapter.heading.length(), utf8) + 2 * newLine;
+            for (int i = 0; i < chapter.paragraphCount(); i++) {
+                bytes += indent + encodedLength(chapter.content, txtStart(work, chapter.content, chapter.start(i), chapter.end(i)),
+                    chapter.end(i), utf8) + newLine;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * TXT中段落开始写出的位置：指定了 format.indent 时原有的缩进被替换
+     */
+    private static int txtStart(ExportWork work, String text, int start, int end) {
+        return work.txtIndent != null ? ParagraphTokenizer.skipIndent(text, start, end) : start;
+    }
+
+    /**
+     * GBK 一类的双字节编码：ASCII 一个字节，其余两个字节
+     */
+    private static boolean isDoubleByteCharset(String encoding) {
+        String name = encoding.toUpperCase(Locale.ROOT);
+        return name.startsWith("GB") || name.equals("BIG5");
+    }
+
+    private static long encodedLength(String text, int start, int end, boolean utf8) {
+        long length = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (!utf8 || Character.isSurrogate(c)) {
+                length += 2;
+            } else {
+                length += c < 0x800 ? 2 : 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * 目录所在分区的可用空间；目录还不存在时取最近的已存在的上级目录，无法获取时返回-1
+     */
+    private static long usableSpace(File dir) {
+        File existing = dir;
+        while (existing != null && !existing.exists()) {
+            existing = existing.getParentFile();
+        }
+        if (existing == null) {
+            return -1;
+        }
+        try {
+            return existing.getUsableSpace();
+        } catch (SecurityException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 版心中的排版位置
+     */
+    private static final class Layout {
+        int pages = 1;
+        float y;
+
+        void newPage() {
+            pages++;
+            y = 0;
+        }
+
+        void paragraph(String text, int fontSize, float leading, float marginTop, float marginBottom) {
+            paragraph(text, 0, text.length(), fontSize, leading, marginTop, marginBottom);
+        }
+
+        void paragraph(String text, int start, int end, int fontSize, float leading, float marginTop, float marginBottom) {
+            float lineHeight = fontSize * leading * LINE_HEIGHT_FACTOR;
+            y += marginTop;
+            int lines = CjkLineBreaker.breakLines(text, start, end, GlyphMetrics.body().atSize(fontSize), CONTENT_WIDTH).count();
+            for (int i = 0; i < lines; i++) {
+                if (y + lineHeight > CONTENT_HEIGHT) {
+                    pages++;
+                    y = 0;
+                }
+                y += lineHeight;
+            }
+            y += marginBottom;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.cwriter.export;
+
+/**
+ * 导出核心的日志入口 - 不依赖 android.util.Log
+ *
+ * 插件加载时由 AndroidPlatform 接到 Logcat；在工作站上（基准测试、命令行）默认只把警告和错误写到标准错误。
+ */
+final class ExportLog {
+
+    static final int DEBUG = 3;
+    static final int INFO = 4;
+    static final int WARN = 5;
+    static final int ERROR = 6;
+
+    /**
+     * 日志输出目标
+     */
+    interface Sink {
+        void log(int priority, String tag, String message, Throwable error);
+    }
+
+    private static final Sink STDERR = (priority, tag, message, error) -> {
+        if (priority < WARN) {
+            return;
+        }
+        System.err.println((priority == ERROR ? "E/" : "W/") + tag + ": " + message);
+        if (error != null) {
+            error.printStackTrace();
+        }
+    };
+
+    private static volatile Sink sink = STDERR;
+
+    private ExportLog() {
+    }
+
+    static void setSink(Sink newSink) {
+        sink = newSink != null ? newSink : STDERR;
+    }
+
+    static void d(String tag, String message) {
+        sink.log(DEBUG, tag, message, null);
+    }
+
+    static void i(String tag, String message) {
+        sink.log(INFO, tag, message, null);
+    }
+
+    static void w(String tag, String message) {
+        sink.log(WARN, tag, message, null);
+    }
+
+    static void w(String tag, String message, Throwable error) {
+        sink.log(WARN, tag, message, error);
+    }
+
+    static void e(String tag, String message) {
+        sink.log(ERROR, tag, message, null);
+    }
+
+    static void e(String tag, String message, Throwable error) {
+        sink.log(ERROR, tag, message, error);
+    }
+}
@@ -0,0 +1,323 @@
+package com.cwriter.export;
+
+import com.alibaba.fastjson.JSONObject;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * 单次导出/导入的阶段耗时和资源指标
+ *
+ * 每个任务（每种格式）各用一个实例，只在该任务的线程上写入，随结果以 metrics 字段返回。
+ */
+final class ExportMetrics {
+
+    static final int PHASE_FONT_LOAD = 0;
+    static final int PHASE_DOCUMENT_CREATE = 1;
+    static final int PHASE_LAYOUT = 2;
+    static final int PHASE_SERIALIZATION = 3;
+    static final int PHASE_FLUSH = 4;
+    static final int PHASE_PARSE = 5;
+    static final int PHASE_CLASSIFY = 6;
+
+    private static final String[] PHASE_NAMES = {
+        "fontLoad", "documentCreate", "layout", "serialization", "flush", "parse", "classify"
+    };
+
+    /** 系统跟踪区段名，与阶段一一对应 */
+    private static final String[] SECTION_NAMES = {
+        "cwriter:fontLoad", "cwriter:documentCreate", "cwriter:layout", "cwriter:serialization",
+        "cwriter:flush", "cwriter:parse", "cwriter:classify"
+    };
+
+    private final long jobId = ExportTrace.nextJobId();
+    private final long startNanos = System.nanoTime();
+    private final long[] phaseNanos = new long[PHASE_NAMES.length];
+    private final long[] phaseStart = new long[PHASE_NAMES.length];
+    private final long[] flushAtStart = new long[PHASE_NAMES.length];
+
+    private long bytesWritten;
+    private long writeSyscalls;
+    private int chapterCacheHits;
+    private int chapterCacheMisses;
+    private long bytesRead;
+    private long charsProcessed;
+    private int paragraphsEmitted;
+    private long peakHeapBytes;
+    private int chaptersRendered;
+    private ChapterListener chapterListener;
+    private String renderMode;
+    private long estimatedPeakBytes;
+    private long admissionWaitMillis;
+
+    /**
+     * 章节渲染完成的回调，用于内存预算检查在章节边界采样
+     */
+    interface ChapterListener {
+        void chapterRendered(int chaptersRendered);
+    }
+
+    ExportMetrics() {
+        sampleHeap();
+    }
+
+    /**
+     * 开始计时某个阶段
+     */
+    void begin(int phase) {
+        SystemTrace.begin(SECTION_NAMES[phase], jobId);
+        flushAtStart[phase] = phaseNanos[PHASE_FLUSH];
+        phaseStart[phase] = System.nanoTime();
+    }
+
+    /**
+     * 结束计时某个阶段；阶段内发生的写盘刷新只计入 flush，不重复计入该阶段
+     */
+    void end(int phase) {
+        long elapsed = System.nanoTime() - phaseStart[phase];
+        SystemTrace.end(SECTION_NAMES[phase], jobId);
+        if (phase != PHASE_FLUSH) {
+            elapsed -= phaseNanos[PHASE_FLUSH] - flushAtStart[phase];
+        }
+        phaseNanos[phase] += Math.max(0, elapsed);
+        ExportTrace.record(ExportTrace.LEVEL_DEBUG, ExportTrace.EVENT_PHASE, jobId, phase, elapsed / 1000);
+        sampleHeap();
+    }
+
+    /**
+     * 标记单个章节的渲染区段（仅系统跟踪，不单独计时）
+     */
+    void beginChapter() {
+        SystemTrace.begin(SystemTrace.SECTION_CHAPTER, jobId);
+    }
+
+    void endChapter() {
+        SystemTrace.end(SystemTrace.SECTION_CHAPTER, jobId);
+        chaptersRendered++;
+        if (chapterListener != null) {
+            chapterListener.chapterRendered(chaptersRendered);
+        }
+    }
+
+    void setChapterListener(ChapterListener listener) {
+        chapterListener = listener;
+    }
+
+    void addChars(long chars) {
+        charsProcessed += chars;
+    }
+
+    void addParagraphs(int paragraphs) {
+        paragraphsEmitted += paragraphs;
+    }
+
+    /**
+     * 记录内存准入的结果：渲染方式、预估峰值和等待内存的时间
+     */
+    void setAdmission(String mode, long estimatedBytes, long waitMillis) {
+        renderMode = mode;
+        estimatedPeakBytes = estimatedBytes;
+        admissionWaitMillis = waitMillis;
+    }
+
+    /**
+     * 渲染失败后重试前清空内容计数；阶段耗时保留，计入实际花费的时间
+     */
+    void restartCounters() {
+        bytesWritten = 0;
+        writeSyscalls = 0;
+        charsProcessed = 0;
+        paragraphsEmitted = 0;
+        chaptersRendered = 0;
+        chapterCacheHits = 0;
+        chapterCacheMisses = 0;
+    }
+
+    /**
+     * 记录写文件的系统调用次数（由 AtomicFileSink 统计）
+     */
+    void addWriteSyscalls(long syscalls) {
+        writeSyscalls += syscalls;
+    }
+
+    /**
+     * 记录一次章节渲染缓存查询
+     */
+    void addChapterCacheLookup(boolean hit) {
+        if (hit) {
+            chapterCacheHits++;
+        } else {
+            chapterCacheMisses++;
+        }
+    }
+
+    void addBytesRead(long bytes) {
+        bytesRead += bytes;
+    }
+
+    /**
+     * 跟踪任务号，同一次导出/导入的跟踪事件共用
+     */
+    long jobId() {
+        return jobId;
+    }
+
+    long startNanos() {
+        return startNanos;
+    }
+
+    long bytesWritten() {
+        return bytesWritten;
+    }
+
+    long bytesRead() {
+        return bytesRead;
+    }
+
+    long charsProcessed() {
+        return charsProcessed;
+    }
+
+    long peakHeapBytes() {
+        return peakHeapBytes;
+    }
+
+    /**
+     * 采样当前Java堆占用，记录峰值
+     */
+    void sampleHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        if (used > peakHeapBytes) {
+            peakHeapBytes = used;
+        }
+    }
+
+    /**
+     * 包装输出流：统计写入字节数，并把 flush/close 的耗时计入 flush 阶段
+     */
+    OutputStream countingStream(OutputStream out) {
+        return new CountingOutputStream(out);
+    }
+
+    /**
+     * 与 countingStream 相同，但按 ByteBuffer 写入；out 本身是 WritableByteChannel（AtomicFileSink）时直接写入，
+     * 不经过流的缓冲区
+     */
+    WritableByteChannel countingChannel(OutputStream out) {
+        return new CountingChannel(out);
+    }
+
+    JSONObject toJSON() {
+        JSONObject phases = new JSONObject();
+        for (int i = 0; i < PHASE_NAMES.length; i++) {
+            if (phaseNanos[i] > 0) {
+                phases.put(PHASE_NAMES[i], Math.round(phaseNanos[i] / 10000.0) / 100.0);
+            }
+        }
+        JSONObject json = new JSONObject();
+        json.put("phasesMs", phases);
+        json.put("bytesWritten", bytesWritten);
+        if (writeSyscalls > 0) {
+            json.put("writeSyscalls", writeSyscalls);
+        }
+        if (bytesRead > 0) {
+            json.put("bytesRead", bytesRead);
+        }
+        json.put("charsProcessed", charsProcessed);
+        if (chapterCacheHits + chapterCacheMisses > 0) {
+            json.put("chapterCacheHits", chapterCacheHits);
+            json.put("chapterCacheMisses", chapterCacheMisses);
+        }
+        json.put("paragraphsEmitted", paragraphsEmitted);
+        json.put("peakHeapBytes", peakHeapBytes);
+        json.put("maxHeapBytes", Runtime.getRuntime().maxMemory());
+        if (renderMode != null) {
+            json.put("renderMode", renderMode);
+            json.put("estimatedPeakBytes", estimatedPeakBytes);
+            json.put("admissionWaitMs", admissionWaitMillis);
+        }
+        return json;
+    }
+
+    private final class CountingChannel implements WritableByteChannel {
+        private final OutputStream stream;
+        private final WritableByteChannel channel;
+
+        CountingChannel(OutputStream out) {
+            this.stream = out;
+            this.channel = out instanceof WritableByteChannel ? (WritableByteChannel) out : Channels.newChannel(out);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int written = channel.write(src);
+            bytesWritten += written;
+            return written;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            SystemTrace.begin(SECTION_NAMES[PHASE_FLUSH], jobId);
+            long start = System.nanoTime();
+            try {
+                stream.close();
+            } finally {
+                phaseNanos[PHASE_FLUSH] += System.nanoTime() - start;
+                SystemTrace.end(SECTION_NAMES[PHASE_FLUSH], jobId);
+            }
+        }
+    }
+
+    private final class CountingOutputStream extends FilterOutputStream {
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            bytesWritten++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            bytesWritten += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            SystemTrace.begin(SECTION_NAMES[PHASE_FLUSH], jobId);
+            long start = System.nanoTime();
+            try {
+                out.flush();
+            } finally {
+                phaseNanos[PHASE_FLUSH] += System.nanoTime() - start;
+                SystemTrace.end(SECTION_NAMES[PHASE_FLUSH], jobId);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            SystemTrace.begin(SECTION_NAMES[PHASE_FLUSH], jobId);
+            long start = System.nanoTime();
+            try {
+                out.close();
+            } finally {
+                phaseNanos[PHASE_FLUSH] += System.nanoTime() - start;
+                SystemTrace.end(SECTION_NAMES[PHASE_FLUSH], jobId);
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.cwriter.export;
+
+import com.alibaba.fastjson.JSONObject;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 导出队列 - 按优先级串行执行导出任务，并合并相同的在途请求
+ *
+ * 相同键（作品内容指纹 + 格式 + 选项）的请求只执行一次，所有调用方共享同一结果；
+ * 交互式导出（用户点击）排在后台导出（自动保存等）之前执行。
+ */
+final class ExportQueue {
+
+    private static final String TAG = "ExportQueue";
+
+    /** 交互式导出：用户主动触发，优先执行 */
+    static final int PRIORITY_INTERACTIVE = 0;
+    /** 后台导出：自动保存等触发，空闲时执行 */
+    static final int PRIORITY_BACKGROUND = 1;
+
+    private static final ExportQueue SHARED = new ExportQueue();
+
+    /**
+     * 导出任务
+     */
+    interface Task {
+        JSONObject run();
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final ConcurrentHashMap<String, Job> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    private ExportQueue() {
+        // 单个工作线程：导出非常占内存，同时渲染多份大作品容易OOM
+        executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+            new PriorityBlockingQueue<Runnable>(), new ExportThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    static ExportQueue shared() {
+        return SHARED;
+    }
+
+    /**
+     * 解析导出选项中的优先级，默认为交互式
+     */
+    static int priorityOf(JSONObject options) {
+        if (options != null && "background".equals(options.getString("priority"))) {
+            return PRIORITY_BACKGROUND;
+        }
+        return PRIORITY_INTERACTIVE;
+    }
+
+    /**
+     * 提交导出任务；若相同键的任务已在排队或执行中，直接加入该任务
+     *
+     * @param key      任务键，相同键的请求会被合并
+     * @param priority 任务优先级
+     * @param task     实际执行导出的任务
+     * @return 任务结果，每个调用方拿到各自的结果副本
+     */
+    CompletableFuture<JSONObject> submit(String key, int priority, Task task) {
+        Job job;
+        boolean created = false;
+        synchronized (inFlight) {
+            job = inFlight.get(key);
+            if (job == null) {
+                job = new Job(key, priority, sequence.getAndIncrement(), task);
+                inFlight.put(key, job);
+                created = true;
+            } else {
+                job.callers++;
+                ExportTrace.record(ExportTrace.LEVEL_DEBUG, ExportTrace.EVENT_QUEUE_JOIN, 0, priority, job.callers);
+                if (priority < job.priority && executor.getQueue().remove(job)) {
+                    // 交互式请求加入了仍在排队的后台任务，提升优先级重新入队
+                    job.priority = priority;
+                    executor.execute(job);
+                    ExportLog.d(TAG, "排队中的任务提升为交互式优先级");
+                }
+            }
+        }
+        if (created) {
+            executor.execute(job);
+            ExportTrace.record(ExportTrace.LEVEL_DEBUG, ExportTrace.EVENT_QUEUE_SUBMIT, 0, priority, pendingCount());
+        }
+        // 复制结果，避免调用方之间互相修改同一个JSONObject
+        final boolean shared = !created;
+        return job.future.thenApply(result -> {
+            JSONObject copy = result.clone();
+            if (shared) {
+                copy.put("shared", true);
+            }
+            return copy;
+        });
+    }
+
+    /**
+     * 当前排队中（尚未开始执行）的任务数
+     */
+    int pendingCount() {
+        return executor.getQueue().size();
+    }
+
+    private final class Job implements Runnable, Comparable<Job> {
+        final String key;
+        final long order;
+        final Task task;
+        final CompletableFuture<JSONObject> future = new CompletableFuture<>();
+        volatile int priority;
+        int callers = 1;
+
+        Job(String key, int priority, long order, Task task) {
+            this.key = key;
+            this.priority = priority;
+            this.order = order;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            JSONObject result;
+            try {
+                result = task.run();
+                if (result == null) {
+                    result = new JSONObject();
+                    result.put("success", false);
+                    result.put("error", "导出结果为空");
+                }
+            } catch (Throwable t) {
+                ExportLog.e(TAG, "导出任务执行异常", t);
+                result = new JSONObject();
+                result.put("success", false);
+                result.put("error", "导出异常: " + t.getMessage());
+            }
+            synchronized (inFlight) {
+                inFlight.remove(key, this);
+            }
+            future.complete(result);
+        }
+
+        @Override
+        public int compareTo(Job other) {
+            if (priority != other.priority) {
+                return priority < other.priority ? -1 : 1;
+            }
+            return Long.compare(order, other.order);
+        }
+    }
+
+    private static final class ExportThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "cwriter-export-" + count.incrementAndGet());
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        }
+    }
+}
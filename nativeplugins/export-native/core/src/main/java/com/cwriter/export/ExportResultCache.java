@@ -0,0 +1,235 @@
+package com.cwriter.export;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 导出结果缓存 - 在导出目录（CwriterExports）下维护一个指纹索引，记录每次成功导出的文件
+ *
+ * 作品内容和格式选项都没有变化时，直接返回上次导出的文件路径；指定了另一个保存路径时复制过去。
+ * 条目按导出目标的位置（ExportTarget.location）记录，能按文件校验的位置才记录：本地文件和 MediaStore 条目的路径；
+ * 只有内容URI的文档（文档选择器）无法校验，不记录。
+ * 文件被删除、改写（大小或修改时间不一致）时视为失效并重新导出。选项 forceRebuild 为 true 时总是重新导出。
+ * 未配置索引目录时不启用。
+ */
+final class ExportResultCache {
+
+    private static final String TAG = "ExportResultCache";
+
+    static final String INDEX_NAME = ".cwriter-export-index.json";
+
+    /** 索引最多保留的条目数，超出时删除最早导出的条目（只删索引，不删文件） */
+    static final int MAX_ENTRIES = 256;
+
+    private static volatile ExportResultCache shared;
+
+    private final File indexFile;
+    private JSONObject entries;
+
+    private ExportResultCache(File indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * 设置索引所在的导出目录；dir 为null时关闭缓存
+     */
+    static void configure(File dir) {
+        if (dir == null) {
+            shared = null;
+            return;
+        }
+        ExportResultCache current = shared;
+        File indexFile = new File(dir, INDEX_NAME);
+        if (current != null && current.indexFile.equals(indexFile)) {
+            return;
+        }
+        if (!dir.exists() && !dir.mkdirs()) {
+            ExportLog.w(TAG, "无法创建导出目录: " + dir.getAbsolutePath());
+            shared = null;
+            return;
+        }
+        shared = new ExportResultCache(indexFile);
+    }
+
+    /**
+     * 导出选项中的强制重新导出开关，默认关闭
+     */
+    static boolean forceRequested(JSONObject options) {
+        return options != null && Boolean.TRUE.equals(options.getBoolean("forceRebuild"));
+    }
+
+    /**
+     * 执行单一格式的导出任务：指纹命中且文件完好时直接返回已有文件，否则执行任务并记录结果
+     *
+     * @param format  导出格式，如 pdf、docx
+     * @param options 导出选项
+     * @param task    实际的导出任务，结果中 success 为 true 时应包含 path
+     */
+    static JSONObject run(String format, JSONObject options, ExportQueue.Task task) {
+        ExportResultCache cache = shared;
+        if (cache == null || options == null) {
+            return task.run();
+        }
+        long startTime = System.currentTimeMillis();
+        String key = WorkFingerprint.ofResult(format, ChapterRenderCache.RENDER_VERSION, options);
+        if (!forceRequested(options)) {
+            ExportTarget reused = cache.reuse(key, format, options.getString("savePath"), AtomicFileSink.syncRequested(options));
+            if (reused != null) {
+                ExportLog.d(TAG, "导出内容未变化，复用已有文件: " + reused.location());
+                JSONObject result = new JSONObject();
+                result.put("success", true);
+                reused.describe(result);
+                result.put("reused", true);
+                result.put("duration", System.currentTimeMillis() - startTime);
+                return result;
+            }
+        }
+        JSONObject result = task.run();
+        if (result != null && result.getBooleanValue("success") && result.getString("path") != null) {
+            cache.record(key, format, result.getString("path"));
+        }
+        return result;
+    }
+
+    /**
+     * 查找指纹对应的完好文件；savePath 指向别处（另一个文件或内容URI）时把文件复制过去
+     *
+     * @return 可以直接返回给调用方的目标，没有可复用的文件时返回null
+     */
+    private ExportTarget reuse(String key, String format, String savePath, boolean sync) {
+        File cached;
+        synchronized (this) {
+            JSONObject entry = entries().getJSONObject(key);
+            if (entry == null) {
+                return null;
+            }
+            cached = new File(entry.getString("path"));
+            if (!intact(cached, entry)) {
+                ExportLog.d(TAG, "已导出的文件已删除或被修改: " + cached.getAbsolutePath());
+                entries.remove(key);
+                save();
+                return null;
+            }
+        }
+        if (savePath == null || savePath.isEmpty()
+                || (!savePath.contains("://") && new File(savePath).getAbsoluteFile().equals(cached.getAbsoluteFile()))) {
+            return ExportTarget.forFile(cached);
+        }
+
+        ExportTarget.Output sink = null;
+        try {
+            ExportTarget target = ExportTarget.forLocation(savePath, cached.getName());
+            sink = target.open(sync);
+            Files.copy(cached.toPath(), sink.stream());
+            sink.commit();
+            sink = null;
+            return target;
+        } catch (IOException e) {
+            ExportLog.w(TAG, "复制已导出的" + format + "文件失败，重新导出: " + savePath, e);
+            return null;
+        } finally {
+            if (sink != null) {
+                sink.abort();
+            }
+        }
+    }
+
+    /**
+     * 记录成功导出的目标；同一路径上的旧条目一并移除。内容URI和不能按路径读取的位置不记录
+     *
+     * @param location 导出结果中的 path（ExportTarget.location）
+     */
+    private synchronized void record(String key, String format, String location) {
+        File file = location.contains("://") ? null : new File(location);
+        if (file == null || !file.isFile()) {
+            ExportLog.d(TAG, "导出位置不能按文件校验，不记录: " + location);
+            return;
+        }
+        JSONObject index = entries();
+        String path = file.getAbsolutePath();
+        List<String> stale = new ArrayList<>();
+        for (String other : index.keySet()) {
+            if (path.equals(index.getJSONObject(other).getString("path"))) {
+                stale.add(other);
+            }
+        }
+        for (String other : stale) {
+            index.remove(other);
+        }
+        JSONObject entry = new JSONObject();
+        entry.put("format", format);
+        entry.put("path", path);
+        entry.put("size", file.length());
+        entry.put("modified", file.lastModified());
+        entry.put("created", System.currentTimeMillis());
+        index.put(key, entry);
+        trim(index);
+        save();
+    }
+
+    /**
+     * 文件仍然存在，且大小和修改时间与导出时一致
+     */
+    private static boolean intact(File file, JSONObject entry) {
+        return file.isFile()
+            && file.length() == entry.getLongValue("size")
+            && file.lastModified() == entry.getLongValue("modified");
+    }
+
+    private static void trim(JSONObject index) {
+        while (index.size() > MAX_ENTRIES) {
+            String oldest = null;
+            long oldestTime = Long.MAX_VALUE;
+            for (String key : index.keySet()) {
+                long created = index.getJSONObject(key).getLongValue("created");
+                if (created < oldestTime) {
+                    oldestTime = created;
+                    oldest = key;
+                }
+            }
+            index.remove(oldest);
+        }
+    }
+
+    /**
+     * 首次使用时从磁盘读取索引；索引损坏时从空索引开始
+     */
+    private JSONObject entries() {
+        if (entries != null) {
+            return entries;
+        }
+        entries = new JSONObject();
+        if (indexFile.isFile()) {
+            try {
+                JSONObject stored = JSON.parseObject(new String(Files.readAllBytes(indexFile.toPath()), StandardCharsets.UTF_8));
+                if (stored != null) {
+                    entries = stored;
+                }
+            } catch (Exception e) {
+                ExportLog.w(TAG, "导出索引损坏，重新建立: " + indexFile.getAbsolutePath(), e);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * 先写临时文件再改名，进程被杀时不会留下半个索引
+     */
+    private void save() {
+        try {
+            File temp = File.createTempFile(INDEX_NAME, ".part", indexFile.getParentFile());
+            Files.write(temp.toPath(), entries.toJSONString().getBytes(StandardCharsets.UTF_8));
+            Files.move(temp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            ExportLog.w(TAG, "写入导出索引失败: " + indexFile.getAbsolutePath(), e);
+        }
+    }
+}
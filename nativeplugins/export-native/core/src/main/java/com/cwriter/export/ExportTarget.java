@@ -0,0 +1,222 @@
+package com.cwriter.export;
+
+import com.alibaba.fastjson.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * 导出目标 - 渲染器写入的位置：本地文件、文档选择器返回的 content:// URI 或 MediaStore 条目
+ *
+ * 渲染器只看到 Output 的输出流，直接写入目标，不先写私有目录再复制。
+ * 文件以外的目标由平台层的 Resolver 解析（Android 上为 ContentExportTarget），未安装时只支持文件路径。
+ */
+abstract class ExportTarget {
+
+    private static final String TAG = "ExportTarget";
+
+    /**
+     * 一次写入：渲染器关闭 stream 后由调用方 commit，失败时 abort
+     */
+    interface Output {
+        OutputStream stream();
+
+        void commit() throws IOException;
+
+        /**
+         * 放弃本次输出并清理目标；已经 commit 时不做任何事
+         */
+        void abort();
+
+        /** 写入的系统调用次数 */
+        long syscalls();
+    }
+
+    /**
+     * 平台的目标解析；不认识的位置返回null，按文件路径处理
+     */
+    interface Resolver {
+        ExportTarget resolve(String location, String defaultName) throws IOException;
+
+        /**
+         * 未指定保存路径时的导出目录；没有时返回null
+         */
+        default File defaultDirectory() {
+            return null;
+        }
+    }
+
+    private static volatile Resolver resolver;
+
+    /**
+     * 安装平台的目标解析，传null恢复为只支持文件路径
+     */
+    static void setResolver(Resolver resolver) {
+        ExportTarget.resolver = resolver;
+    }
+
+    static ExportTarget forFile(File file) {
+        return new FileTarget(file);
+    }
+
+    /**
+     * 平台的默认导出目录，未安装平台或没有默认目录时返回null
+     */
+    static File defaultDirectory() {
+        Resolver current = resolver;
+        return current != null ? current.defaultDirectory() : null;
+    }
+
+    /**
+     * 解析一次导出的保存位置：savePath 为空时放在默认导出目录下，文件名为清理后的标题加时间戳
+     *
+     * @param savePath  文件路径或 URI，可以为空
+     * @param title     作品标题，用于默认文件名
+     * @param extension 含点的扩展名，如 ".pdf"
+     * @throws IOException 没有默认导出目录或平台无法解析的 URI
+     */
+    static ExportTarget forExport(String savePath, String title, String extension) throws IOException {
+        String fileName = defaultFileName(title, extension);
+        if (savePath == null || savePath.isEmpty()) {
+            File directory = defaultDirectory();
+            if (directory == null) {
+                throw new IOException("未指定保存路径");
+            }
+            savePath = new File(directory, fileName).getAbsolutePath();
+            ExportLog.d(TAG, "Using default save path: " + savePath);
+        }
+        return forLocation(savePath, fileName);
+    }
+
+    /**
+     * 默认文件名：清理后的标题加时间戳
+     */
+    static String defaultFileName(String title, String extension) {
+        String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
+        String cleanTitle = title.replaceAll("[^a-zA-Z0-9\\u4e00-\\u9fa5]", "_"); // 清理文件名，只保留中英文和数字
+        return cleanTitle + "_" + timeStamp + extension;
+    }
+
+    /**
+     * 解析保存位置
+     *
+     * @param location    文件路径或 URI；为空时由平台选择默认位置
+     * @param defaultName location 是目录（如文档树 URI）或为空时使用的文件名
+     * @throws IOException 平台无法解析的 URI
+     */
+    static ExportTarget forLocation(String location, String defaultName) throws IOException {
+        Resolver current = resolver;
+        if (current != null) {
+            ExportTarget target = current.resolve(location, defaultName);
+            if (target != null) {
+                return target;
+            }
+        }
+        if (location == null || location.isEmpty()) {
+            throw new IOException("未指定保存路径");
+        }
+        if (location.contains("://")) {
+            throw new IOException("不支持的保存位置: " + location);
+        }
+        return new FileTarget(new File(location));
+    }
+
+    /**
+     * 返回给调用方的位置：文件的绝对路径；MediaStore 条目为它在公共目录中的路径，
+     * 只有文档选择器返回的文档没有路径，为内容 URI
+     */
+    abstract String location();
+
+    /**
+     * 实际写入的内容 URI（文档选择器的文档、MediaStore 条目）；本地文件为null
+     */
+    String uri() {
+        return null;
+    }
+
+    /**
+     * 把位置写入导出结果：path 为 location()，写入了内容 URI 时另有 uri
+     */
+    void describe(JSONObject result) {
+        result.put("path", location());
+        String uri = uri();
+        if (uri != null) {
+            result.put("uri", uri);
+        }
+    }
+
+    /** 文件名（含扩展名） */
+    abstract String name();
+
+    /**
+     * 同一目录下名为 name 的另一个目标，用于分卷
+     */
+    abstract ExportTarget sibling(String name) throws IOException;
+
+    /**
+     * 开始一次写入
+     *
+     * @param sync 关闭前是否 fsync（只对文件有效）
+     */
+    abstract Output open(boolean sync) throws IOException;
+
+    /**
+     * 目标所在的本地目录，用于检查剩余空间；不是本地文件时为null
+     */
+    File directory() {
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return location();
+    }
+
+    /**
+     * 本地文件：经 AtomicFileSink 写临时文件后改名
+     */
+    static final class FileTarget extends ExportTarget {
+        private final File file;
+
+        FileTarget(File file) {
+            this.file = file;
+        }
+
+        @Override
+        String location() {
+            return file.getAbsolutePath();
+        }
+
+        @Override
+        String name() {
+            return file.getName();
+        }
+
+        @Override
+        ExportTarget sibling(String name) {
+            return new FileTarget(new File(file.getAbsoluteFile().getParentFile(), name));
+        }
+
+        @Override
+        Output open(boolean sync) throws IOException {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("无法创建目录: " + parent.getAbsolutePath());
+            }
+            try {
+                return AtomicFileSink.open(file, sync);
+            } catch (IOException e) {
+                throw new IOException("无法写入目录 " + parent + ": " + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        File directory() {
+            return file.getAbsoluteFile().getParentFile();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.cwriter.export;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 导出跟踪记录器 - 固定大小的内存环形缓冲区
+ *
+ * 每个事件只记录时间、线程、事件码、任务号和两个数值参数，写入路径不拼接字符串、不分配对象；
+ * 事件名和参数含义只在 dump() 时才转换成文本。缓冲区写满后覆盖最旧的事件。
+ */
+final class ExportTrace {
+
+    static final int LEVEL_OFF = 0;
+    static final int LEVEL_ERROR = 1;
+    static final int LEVEL_INFO = 2;
+    static final int LEVEL_DEBUG = 3;
+
+    private static final String[] LEVEL_NAMES = {"off", "error", "info", "debug"};
+
+    /** 开始导出/导入：a=操作(PerformanceStats.OP_*)，b=字符数（导入时为文件字节数） */
+    static final int EVENT_BEGIN = 0;
+    /** 完成：a=操作，b=耗时(微秒) */
+    static final int EVENT_END = 1;
+    /** 失败：a=操作，b=错误类别(PerformanceStats.ERROR_*) */
+    static final int EVENT_FAIL = 2;
+    /** 作品摘要：a=章节数，b=段落数 */
+    static final int EVENT_OPTIONS = 3;
+    /** 阶段耗时：a=阶段(ExportMetrics.PHASE_*)，b=耗时(微秒) */
+    static final int EVENT_PHASE = 4;
+    /** 写出字节：a=操作，b=字节数 */
+    static final int EVENT_BYTES = 5;
+    /** 入队：a=优先级，b=排队中的任务数 */
+    static final int EVENT_QUEUE_SUBMIT = 6;
+    /** 合并到在途任务：a=优先级，b=共享调用方数 */
+    static final int EVENT_QUEUE_JOIN = 7;
+    /** 回调：a=是否成功(1/0)，b=未用 */
+    static final int EVENT_CALLBACK = 8;
+    /** 降级：a=降级类别(PerformanceStats.FALLBACK_*)，b=未用 */
+    static final int EVENT_FALLBACK = 9;
+    /** 内存准入：a=渲染方式(MemoryAdmission.MODE_*)，b=预估峰值(KB) */
+    static final int EVENT_ADMISSION = 10;
+
+    private static final String[] EVENT_NAMES = {
+        "begin", "end", "fail", "options", "phase", "bytes",
+        "queueSubmit", "queueJoin", "callback", "fallback", "admission"
+    };
+
+    /** 缓冲区容量，必须是2的幂 */
+    static final int CAPACITY = 1024;
+    private static final int MASK = CAPACITY - 1;
+
+    /** 每个事件占用的long字段：时间、线程、级别和事件码、任务号、参数a、参数b */
+    private static final int FIELDS = 6;
+
+    private static final AtomicLongArray SLOTS = new AtomicLongArray(CAPACITY * FIELDS);
+    /** 每个槽位已写完的事件序号+1，dump时用来跳过正在写入的槽位 */
+    private static final AtomicLongArray PUBLISHED = new AtomicLongArray(CAPACITY);
+    private static final AtomicLong NEXT = new AtomicLong();
+    private static final AtomicLong JOB_IDS = new AtomicLong();
+
+    private static volatile int level = LEVEL_INFO;
+
+    private ExportTrace() {
+    }
+
+    static boolean enabled(int eventLevel) {
+        return eventLevel <= level;
+    }
+
+    /**
+     * 按名称设置级别（off/error/info/debug），无法识别时返回false
+     */
+    static boolean setLevel(String name) {
+        for (int i = 0; i < LEVEL_NAMES.length; i++) {
+            if (LEVEL_NAMES[i].equalsIgnoreCase(name)) {
+                level = i;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 分配新的任务号，用于把同一次导出的事件串起来
+     */
+    static long nextJobId() {
+        return JOB_IDS.incrementAndGet();
+    }
+
+    /**
+     * 记录一个事件；级别未开启时直接返回
+     */
+    static void record(int eventLevel, int event, long jobId, long a, long b) {
+        if (eventLevel > level) {
+            return;
+        }
+        long sequence = NEXT.getAndIncrement();
+        int slot = (int) (sequence & MASK);
+        int base = slot * FIELDS;
+        PUBLISHED.set(slot, 0);
+        SLOTS.set(base, System.nanoTime());
+        SLOTS.set(base + 1, Thread.currentThread().getId());
+        SLOTS.set(base + 2, ((long) eventLevel << 32) | event);
+        SLOTS.set(base + 3, jobId);
+        SLOTS.set(base + 4, a);
+        SLOTS.set(base + 5, b);
+        PUBLISHED.set(slot, sequence + 1);
+    }
+
+    /**
+     * 导出缓冲区中最近的事件，按时间先后排列
+     */
+    static JSONObject dump() {
+        long nowNanos = System.nanoTime();
+        long nowMillis = System.currentTimeMillis();
+        long end = NEXT.get();
+        long start = Math.max(0, end - CAPACITY);
+
+        JSONArray events = new JSONArray();
+        for (long sequence = start; sequence < end; sequence++) {
+            int slot = (int) (sequence & MASK);
+            if (PUBLISHED.get(slot) != sequence + 1) {
+                // 正在写入或已被更新的事件覆盖
+                continue;
+            }
+            int base = slot * FIELDS;
+            long nanos = SLOTS.get(base);
+            long code = SLOTS.get(base + 2);
+            long jobId = SLOTS.get(base + 3);
+            long a = SLOTS.get(base + 4);
+            long b = SLOTS.get(base + 5);
+            long thread = SLOTS.get(base + 1);
+            if (PUBLISHED.get(slot) != sequence + 1) {
+                continue;
+            }
+            int event = (int) code;
+            JSONObject item = new JSONObject();
+            item.put("seq", sequence);
+            item.put("time", nowMillis - (nowNanos - nanos) / 1000000L);
+            item.put("thread", thread);
+            item.put("level", LEVEL_NAMES[(int) (code >>> 32)]);
+            item.put("event", event < EVENT_NAMES.length ? EVENT_NAMES[event] : String.valueOf(event));
+            if (jobId != 0) {
+                item.put("job", jobId);
+            }
+            item.put("a", a);
+            item.put("b", b);
+            events.add(item);
+        }
+
+        JSONObject result = new JSONObject();
+        result.put("success", true);
+        result.put("level", LEVEL_NAMES[level]);
+        result.put("capacity", CAPACITY);
+        result.put("recorded", end);
+        result.put("dropped", start);
+        result.put("events", events);
+        return result;
+    }
+}
@@ -0,0 +1,283 @@
+package com.cwriter.export;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 导出作品的中间表示 - 解析一次选项并切分一次段落（ParagraphTokenizer），供所有格式的渲染器共享
+ */
+final class ExportWork {
+
+    static final String DEFAULT_TITLE = "未命名作品";
+
+    final String title;
+    final String description;
+    final List<Chapter> chapters;
+
+    // 格式参数（根据格式要求：标题二号，章节标题三号，正文四号，1.5倍行距）
+    final int titleSize;
+    final int headingSize;
+    final int bodySize;
+    final float lineSpacing;
+    /** PDF每章从新页开始（format.chapterPageBreak），此时PDF也可以使用章节渲染缓存 */
+    final boolean chapterPageBreak;
+
+    /** PDF在标题页之后插入带页码的目录（format.toc，默认开启）；书签总是生成 */
+    final boolean toc;
+
+    /** EPUB嵌入的字体文件（format.embedFont），TTC 写成“路径,序号”；为null时不嵌入 */
+    final String embedFont;
+
+    /** TXT的字符编码（format.encoding），默认 UTF-8，常用 GBK */
+    final String txtEncoding;
+    /** TXT的换行符（format.lineEnding 为 crlf 时是 \r\n），默认 \n */
+    final String txtLineEnding;
+    /**
+     * TXT每段开头统一加的缩进（format.indent：fullwidth 为两个全角空格，spaces 为四个空格，none 为不缩进），
+     * 这时先去掉段落原有的缩进；默认为null，段落按原文输出，保留作者自己的缩进
+     */
+    final String txtIndent;
+
+    /** 封面图片的路径（options.cover），为null时没有封面 */
+    final String cover;
+    /** 插图按这一分辨率缩小和排版（format.imageDpi），默认 150 */
+    final int imageDpi;
+    /** 正文中的插图数，加上封面 */
+    final int imageCount;
+
+    /** 是否使用章节渲染缓存（options.renderCache，默认开启） */
+    final boolean renderCache;
+
+    /** 分卷方式（format.split.by：chapters、chars、volumes），为null时不分卷 */
+    final String splitBy;
+    /** 每卷的章节数或字符数（format.split.size），不大于0时使用 VolumeExporter 的默认值 */
+    final long splitSize;
+    /** 章节列表中的分卷标记，按出现顺序 */
+    final List<VolumeMarker> volumeMarkers;
+
+    /** 正文段落总数（不含标题） */
+    final int paragraphCount;
+    /** 标题、简介和正文的总字符数 */
+    final long charCount;
+
+    private ExportWork(String title, String description, List<Chapter> chapters, List<VolumeMarker> volumeMarkers,
+                       String cover, JSONObject format, boolean renderCache) {
+        this.title = title;
+        this.description = description;
+        this.chapters = Collections.unmodifiableList(chapters);
+        this.titleSize = intOption(format, "titleSize", 22);
+        this.headingSize = intOption(format, "headingSize", 16);
+        this.bodySize = intOption(format, "bodySize", 14);
+        this.lineSpacing = format != null && format.containsKey("lineSpacing") ? format.getFloatValue("lineSpacing") : 1.5f;
+        this.chapterPageBreak = format != null && format.getBooleanValue("chapterPageBreak");
+        this.toc = format == null || !Boolean.FALSE.equals(format.getBoolean("toc"));
+        this.embedFont = format != null ? format.getString("embedFont") : null;
+        String encoding = format != null ? format.getString("encoding") : null;
+        this.txtEncoding = encoding != null && !encoding.isEmpty() ? encoding : "UTF-8";
+        this.txtLineEnding = format != null && "crlf".equalsIgnoreCase(format.getString("lineEnding")) ? "\r\n" : "\n";
+        String indent = format != null ? format.getString("indent") : null;
+        this.txtIndent = "fullwidth".equals(indent) ? "\u3000\u3000" : "spaces".equals(indent) ? "    "
+            : "none".equals(indent) ? "" : null;
+        this.cover = cover;
+        this.imageDpi = intOption(format, "imageDpi", ImagePipeline.DEFAULT_DPI);
+        this.renderCache = renderCache;
+        JSONObject split = format != null ? format.getJSONObject("split") : null;
+        this.splitBy = split != null ? split.getString("by") : null;
+        this.splitSize = split != null ? split.getLongValue("size") : 0;
+        this.volumeMarkers = Collections.unmodifiableList(volumeMarkers);
+
+        int paragraphs = 0;
+        int images = cover != null ? 1 : 0;
+        long chars = title.length() + description.length();
+        for (Chapter chapter : chapters) {
+            paragraphs += chapter.paragraphCount();
+            images += chapter.imageCount;
+            chars += chapter.charCount();
+        }
+        this.paragraphCount = paragraphs;
+        this.imageCount = images;
+        this.charCount = chars;
+    }
+
+    /**
+     * 分卷：与 parent 相同的格式参数，只包含其中一段章节，不再分卷
+     */
+    private ExportWork(ExportWork parent, String title, List<Chapter> chapters) {
+        this.title = title;
+        this.description = parent.description;
+        this.chapters = Collections.unmodifiableList(chapters);
+        this.titleSize = parent.titleSize;
+        this.headingSize = parent.headingSize;
+        this.bodySize = parent.bodySize;
+        this.lineSpacing = parent.lineSpacing;
+        this.chapterPageBreak = parent.chapterPageBreak;
+        this.toc = parent.toc;
+        this.embedFont = parent.embedFont;
+        this.txtEncoding = parent.txtEncoding;
+        this.txtLineEnding = parent.txtLineEnding;
+        this.txtIndent = parent.txtIndent;
+        this.cover = parent.cover;
+        this.imageDpi = parent.imageDpi;
+        this.renderCache = parent.renderCache;
+        this.splitBy = null;
+        this.splitSize = 0;
+        this.volumeMarkers = Collections.emptyList();
+
+        int paragraphs = 0;
+        int images = cover != null ? 1 : 0;
+        long chars = title.length() + description.length();
+        for (Chapter chapter : chapters) {
+            paragraphs += chapter.paragraphCount();
+            images += chapter.imageCount;
+            chars += chapter.charCount();
+        }
+        this.paragraphCount = paragraphs;
+        this.imageCount = images;
+        this.charCount = chars;
+    }
+
+    /**
+     * 从导出选项构建作品：title、description、chapters、cover、format、renderCache
+     *
+     * chapters 中 type 为 volume 的条目是分卷标记（只有 title），不算作章节，章节编号跨卷连续。
+     * 正文中独占一段的“![说明](路径)”是插图（ImagePipeline）。
+     */
+    static ExportWork from(JSONObject options) {
+        String title = options.getString("title");
+        String description = options.getString("description");
+        JSONArray chapterArray = options.getJSONArray("chapters");
+        if (title == null) title = DEFAULT_TITLE;
+        if (description == null) description = "";
+
+        List<Chapter> chapters = new ArrayList<>();
+        List<VolumeMarker> volumeMarkers = new ArrayList<>();
+        if (chapterArray != null) {
+            for (int i = 0; i < chapterArray.size(); i++) {
+                JSONObject chapter = chapterArray.getJSONObject(i);
+                if (chapter == null) {
+                    continue;
+                }
+                if (VolumeMarker.TYPE.equals(chapter.getString("type"))) {
+                    String volumeTitle = chapter.getString("title");
+                    volumeMarkers.add(new VolumeMarker(chapters.size(),
+                        volumeTitle != null ? volumeTitle : "第" + (volumeMarkers.size() + 1) + "卷"));
+                    continue;
+                }
+                int index = chapters.size();
+                String chapterTitle = chapter.getString("title") != null ? chapter.getString("title") : "第" + (index + 1) + "章";
+                String chapterContent = chapter.getString("content") != null ? chapter.getString("content") : "";
+                chapters.add(new Chapter(index, chapterTitle, chapterContent));
+            }
+        }
+        String cover = options.getString("cover");
+        return new ExportWork(title, description, chapters, volumeMarkers, cover != null && !cover.isEmpty() ? cover : null,
+            options.getJSONObject("format"),
+            !Boolean.FALSE.equals(options.getBoolean("renderCache")));
+    }
+
+    /**
+     * 第 from 到 to（不含）章组成的一卷；章节重新从0排序以便渲染器按位置索引，标题中的编号保持不变
+     */
+    ExportWork volume(String volumeTitle, int from, int to) {
+        List<Chapter> part = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            part.add(new Chapter(i - from, chapters.get(i)));
+        }
+        return new ExportWork(this, volumeTitle != null ? title + " " + volumeTitle : title, part);
+    }
+
+    private static int intOption(JSONObject format, String key, int defaultValue) {
+        return format != null && format.containsKey(key) ? format.getIntValue(key) : defaultValue;
+    }
+
+    /**
+     * 分卷标记：从第 start 章（从0开始）起为新的一卷
+     */
+    static final class VolumeMarker {
+        static final String TYPE = "volume";
+
+        final int start;
+        final String title;
+
+        VolumeMarker(int start, String title) {
+            this.start = start;
+            this.title = title;
+        }
+    }
+
+    /**
+     * 章节：编号后的标题和正文；段落以区间的形式引用原始正文，渲染器按区间读取，不为每段复制字符串
+     */
+    static final class Chapter {
+        final int index;
+        final String title;
+        /** 带编号的章节标题，如“第1章 开端” */
+        final String heading;
+        /** 原始正文 */
+        final String content;
+        /** ParagraphTokenizer 切分出的段落边界 */
+        private final int[] bounds;
+        /** 插图段落数 */
+        final int imageCount;
+
+        Chapter(int index, String title, String content) {
+            this.index = index;
+            this.title = title;
+            this.heading = "第" + (index + 1) + "章 " + title;
+            this.content = content;
+            this.bounds = ParagraphTokenizer.tokenize(content);
+            this.imageCount = ImagePipeline.count(content, bounds);
+        }
+
+        /**
+         * 分卷中的章节：位置为 index，标题、正文和段落边界与 source 共享
+         */
+        Chapter(int index, Chapter source) {
+            this.index = index;
+            this.title = source.title;
+            this.heading = source.heading;
+            this.content = source.content;
+            this.bounds = source.bounds;
+            this.imageCount = source.imageCount;
+        }
+
+        /** 标题和正文段落的字符数 */
+        long charCount() {
+            long chars = heading.length();
+            for (int i = 0; i < paragraphCount(); i++) {
+                chars += end(i) - start(i);
+            }
+            return chars;
+        }
+
+        int paragraphCount() {
+            return bounds.length / 2;
+        }
+
+        /** 第 i 段在正文中的起点 */
+        int start(int i) {
+            return bounds[2 * i];
+        }
+
+        /** 第 i 段在正文中的终点（不含） */
+        int end(int i) {
+            return bounds[2 * i + 1];
+        }
+
+        /** 第 i 段是否是插图 */
+        boolean isImage(int i) {
+            return imageCount > 0 && ImagePipeline.isImage(content, bounds[2 * i], bounds[2 * i + 1]);
+        }
+
+        /**
+         * 第 i 段的文字；只在需要 String 的排版库（iText、POI）处复制
+         */
+        String paragraph(int i) {
+            return content.substring(bounds[2 * i], bounds[2 * i + 1]);
+        }
+    }
+}
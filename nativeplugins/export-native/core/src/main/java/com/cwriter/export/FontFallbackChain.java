@@ -0,0 +1,350 @@
+package com.cwriter.export;
+
+import com.itextpdf.io.font.PdfEncodings;
+import com.itextpdf.io.font.constants.StandardFonts;
+import com.itextpdf.kernel.font.PdfFont;
+import com.itextpdf.kernel.font.PdfFontFactory;
+import com.itextpdf.layout.element.Paragraph;
+import com.itextpdf.layout.element.Text;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 字体回退链 - 按顺序排列的字体（中文宋体、中文黑体、西文、符号、表情），每个字符使用链中第一个包含该字形的字体
+ *
+ * 中文宋体是 iText 内置的 STSong-Light，其余字体取系统中第一个存在的字体文件（Android 的 /system/fonts，
+ * 工作站的 /usr/share/fonts），嵌入子集。字符到字体的选择按码位缓存（BMP 为一个 byte 数组），
+ * 每个字符只查询一次字体覆盖范围。没有任何字体包含的字符交给西文字体，iText 对西文字体缺字不会出错，
+ * 而中文 CID 字体缺字会在写出字体时抛出异常。
+ */
+final class FontFallbackChain {
+
+    private static final String TAG = "FontFallbackChain";
+
+    private static final String[] CJK_SANS_FILES = {
+        "/system/fonts/NotoSansCJK-Regular.ttc,2",
+        "/system/fonts/NotoSansSC-Regular.otf",
+        "/system/fonts/DroidSansFallbackFull.ttf",
+        "/system/fonts/DroidSansFallback.ttf",
+        "/usr/share/fonts/opentype/noto/NotoSansCJK-Regular.ttc,2",
+        "/usr/share/fonts/truetype/droid/DroidSansFallbackFull.ttf",
+        "/usr/share/fonts/truetype/wqy/wqy-microhei.ttc,0",
+    };
+
+    private static final String[] SYMBOL_FILES = {
+        "/system/fonts/NotoSansSymbols-Regular-Subsetted.ttf",
+        "/system/fonts/NotoSansSymbols-Regular-Subsetted2.ttf",
+        "/usr/share/fonts/truetype/dejavu/DejaVuSans.ttf",
+    };
+
+    private static final String[] EMOJI_FILES = {
+        "/system/fonts/NotoEmoji-Regular.ttf",
+        "/system/fonts/NotoColorEmoji.ttf",
+        "/usr/share/fonts/truetype/noto/NotoEmoji-Regular.ttf",
+    };
+
+    private static volatile FontFallbackChain shared;
+
+    private final Face[] faces;
+    /** 链中第一个可用的字体，作为段落的默认字体 */
+    private final int primary;
+    /** 没有字体包含该字符时使用的字体 */
+    private final int fallback;
+    /** BMP字符选择的字体序号加一，0表示还没有查询过 */
+    private final byte[] bmp = new byte[0x10000];
+    private final ConcurrentHashMap<Integer, Integer> supplementary = new ConcurrentHashMap<>();
+
+    private FontFallbackChain(List<Face> faces, int fallback) {
+        this.faces = faces.toArray(new Face[0]);
+        this.fallback = fallback;
+        int first = fallback;
+        for (int i = 0; i < this.faces.length; i++) {
+            if (this.faces[i].available()) {
+                first = i;
+                break;
+            }
+        }
+        this.primary = first;
+    }
+
+    /**
+     * 默认的回退链，首次使用时检查系统字体文件
+     */
+    static FontFallbackChain shared() {
+        FontFallbackChain current = shared;
+        if (current == null) {
+            synchronized (FontFallbackChain.class) {
+                current = shared;
+                if (current == null) {
+                    current = createDefault();
+                    shared = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private static FontFallbackChain createDefault() {
+        List<Face> faces = new ArrayList<>();
+        faces.add(new Face("cjk-serif", "STSong-Light", "UniGB-UCS2-H", -1));
+        addFirstExisting(faces, "cjk-sans", CJK_SANS_FILES);
+        int latin = faces.size();
+        faces.add(new Face("latin", StandardFonts.TIMES_ROMAN, null, -1));
+        addFirstExisting(faces, "symbol", SYMBOL_FILES);
+        addFirstExisting(faces, "emoji", EMOJI_FILES);
+        StringBuilder names = new StringBuilder();
+        for (Face face : faces) {
+            names.append(names.length() > 0 ? ", " : "").append(face.role).append('=').append(face.source);
+        }
+        ExportLog.d(TAG, "字体回退链: " + names);
+        return new FontFallbackChain(faces, latin);
+    }
+
+    private static void addFirstExisting(List<Face> faces, String role, String[] candidates) {
+        for (String candidate : candidates) {
+            int comma = candidate.lastIndexOf(',');
+            String path = comma > 0 ? candidate.substring(0, comma) : candidate;
+            int ttcIndex = comma > 0 ? Integer.parseInt(candidate.substring(comma + 1)) : -1;
+            if (new File(path).isFile()) {
+                faces.add(new Face(role, path, PdfEncodings.IDENTITY_H, ttcIndex));
+                return;
+            }
+        }
+    }
+
+    /**
+     * 码位对应的字体序号
+     */
+    int select(int codePoint) {
+        if (codePoint < 0x10000) {
+            int cached = bmp[codePoint];
+            if (cached != 0) {
+                return cached - 1;
+            }
+            int face = lookup(codePoint);
+            // 并发时可能重复查询同一字符，结果相同，写入无需同步
+            bmp[codePoint] = (byte) (face + 1);
+            return face;
+        }
+        Integer cached = supplementary.get(codePoint);
+        if (cached != null) {
+            return cached;
+        }
+        int face = lookup(codePoint);
+        supplementary.put(codePoint, face);
+        return face;
+    }
+
+    private int lookup(int codePoint) {
+        for (int i = 0; i < faces.length; i++) {
+            if (faces[i].covers(codePoint)) {
+                return i;
+            }
+        }
+        return fallback;
+    }
+
+    /**
+     * 字符在所选字体中的宽度（千分之一字号）；没有字体包含该字符时为0，与 iText 跳过缺字的行为一致
+     */
+    int width(int codePoint) {
+        Face face = faces[select(codePoint)];
+        return face.covers(codePoint) ? face.width(codePoint) : 0;
+    }
+
+    /**
+     * 为一个PDF文档创建字体；PdfFont 属于具体文档，不能在文档之间共享
+     */
+    Fonts forDocument() {
+        return new Fonts();
+    }
+
+    /**
+     * 链中的一种字体：内置字体名或字体文件路径；probe 是不属于任何文档的实例，只用来查询覆盖范围和宽度
+     */
+    private static final class Face {
+        final String role;
+        final String source;
+        final String encoding;
+        final int ttcIndex;
+        private PdfFont probe;
+        private boolean failed;
+
+        Face(String role, String source, String encoding, int ttcIndex) {
+            this.role = role;
+            this.source = source;
+            this.encoding = encoding;
+            this.ttcIndex = ttcIndex;
+        }
+
+        synchronized boolean available() {
+            return probe() != null;
+        }
+
+        synchronized boolean covers(int codePoint) {
+            PdfFont font = probe();
+            return font != null && font.containsGlyph(codePoint);
+        }
+
+        synchronized int width(int codePoint) {
+            PdfFont font = probe();
+            return font != null ? font.getWidth(codePoint) : 0;
+        }
+
+        private PdfFont probe() {
+            if (probe == null && !failed) {
+                try {
+                    probe = create();
+                } catch (Exception e) {
+                    failed = true;
+                    PerformanceStats.recordFallback(PerformanceStats.FALLBACK_FONT);
+                    ExportLog.w(TAG, "加载字体失败，从回退链中跳过: " + role + "=" + source, e);
+                }
+            }
+            return probe;
+        }
+
+        PdfFont create() throws Exception {
+            if (ttcIndex >= 0) {
+                return PdfFontFactory.createTtcFont(source, ttcIndex, encoding,
+                    PdfFontFactory.EmbeddingStrategy.PREFER_EMBEDDED, true);
+            }
+            if (encoding == null) {
+                return PdfFontFactory.createFont(source);
+            }
+            if (source.indexOf('/') < 0) {
+                // iText 内置的亚洲字体，不嵌入
+                return PdfFontFactory.createFont(source, encoding);
+            }
+            return PdfFontFactory.createFont(source, encoding, PdfFontFactory.EmbeddingStrategy.PREFER_EMBEDDED);
+        }
+    }
+
+    /**
+     * 一个文档中用到的字体，按需创建
+     */
+    final class Fonts {
+        private final PdfFont[] fonts = new PdfFont[faces.length];
+
+        /**
+         * 段落的默认字体；整条链都不可用时返回null，由 iText 使用默认字体
+         */
+        PdfFont primary() {
+            return get(primary);
+        }
+
+        PdfFont get(int index) {
+            PdfFont font = fonts[index];
+            if (font == null) {
+                try {
+                    font = faces[index].create();
+                } catch (Exception e) {
+                    ExportLog.w(TAG, "创建字体失败: " + faces[index].source, e);
+                    return index != fallback ? get(fallback) : null;
+                }
+                fonts[index] = font;
+            }
+            return font;
+        }
+
+        /**
+         * 只有一段文字的段落
+         */
+        Paragraph paragraph(String text) {
+            Paragraph paragraph = new Paragraph();
+            Runs runs = new Runs(this, paragraph);
+            runs.append(text, 0, text.length());
+            runs.finish();
+            return paragraph;
+        }
+
+        /**
+         * 向段落追加文字，按字体和字间距切分成若干 Text
+         */
+        Runs runs(Paragraph paragraph) {
+            return new Runs(this, paragraph);
+        }
+    }
+
+    /**
+     * 把连续使用同一字体、同一字间距的字符合并为一个 Text；全部是默认字体时整段只有一个 Text，
+     * 字体继承自段落
+     */
+    final class Runs {
+        private final Paragraph paragraph;
+        private final Fonts fonts;
+        private final StringBuilder run = new StringBuilder();
+        private int runFace = -1;
+        private float runSpacing;
+
+        private Runs(Fonts fonts, Paragraph paragraph) {
+            this.fonts = fonts;
+            this.paragraph = paragraph;
+        }
+
+        void append(String text, int start, int end) {
+            int i = start;
+            while (i < end) {
+                int codePoint = text.codePointAt(i);
+                if (codePoint == '\n') {
+                    newLine();
+                    i++;
+                    continue;
+                }
+                int face = select(codePoint);
+                if (face != runFace || runSpacing != 0) {
+                    flush();
+                    runFace = face;
+                }
+                run.appendCodePoint(codePoint);
+                i += Character.charCount(codePoint);
+            }
+        }
+
+        /**
+         * 单独一个字符，之后的间距增加 spacing（负数表示挤压）
+         */
+        void appendSpaced(char c, float spacing) {
+            flush();
+            runFace = select(c);
+            runSpacing = spacing;
+            run.append(c);
+            flush();
+        }
+
+        /**
+         * 硬换行；换行符放在默认字体的 Text 中，西文 Type1 字体会丢弃它
+         */
+        void newLine() {
+            if (runFace != primary || runSpacing != 0) {
+                flush();
+                runFace = primary;
+            }
+            run.append('\n');
+        }
+
+        void finish() {
+            flush();
+        }
+
+        private void flush() {
+            if (run.length() == 0) {
+                runSpacing = 0;
+                return;
+            }
+            Text text = new Text(run.toString());
+            if (runFace != primary) {
+                text.setFont(fonts.get(runFace));
+            }
+            if (runSpacing != 0) {
+                text.setCharacterSpacing(runSpacing);
+            }
+            paragraph.add(text);
+            run.setLength(0);
+            runSpacing = 0;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.cwriter.export;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 字形宽度缓存 - 每条字体回退链一张BMP字符宽度表（千分之一字号），再按字号缓存换算成磅的宽度表
+ *
+ * 折行和预估分页时每个字符都要查宽度，直接调用 PdfFont.getWidth 太慢；首次用到某个字符时向回退链中
+ * 选中的字体查询一次，之后都是数组下标访问。宽度与具体的 PdfDocument 无关，缓存可以在导出之间共享。
+ */
+final class GlyphMetrics {
+
+    private static final String TAG = "GlyphMetrics";
+
+    private static final short UNKNOWN = -1;
+
+    private static final ConcurrentHashMap<FontFallbackChain, GlyphMetrics> CHAINS = new ConcurrentHashMap<>();
+
+    private final FontFallbackChain chain;
+    private final short[] units = new short[0x10000];
+    private final ConcurrentHashMap<Float, Sized> sizes = new ConcurrentHashMap<>();
+
+    private GlyphMetrics(FontFallbackChain chain) {
+        this.chain = chain;
+        Arrays.fill(units, UNKNOWN);
+    }
+
+    /**
+     * 回退链的宽度表，按链共享
+     */
+    static GlyphMetrics of(FontFallbackChain chain) {
+        return CHAINS.computeIfAbsent(chain, GlyphMetrics::new);
+    }
+
+    /**
+     * 默认回退链（与 PdfWorkRenderer 相同）的宽度表，供没有打开文档的预估使用
+     */
+    static GlyphMetrics body() {
+        return of(FontFallbackChain.shared());
+    }
+
+    /**
+     * 字符宽度，单位为千分之一字号
+     */
+    int advance(char c) {
+        short cached = units[c];
+        if (cached != UNKNOWN) {
+            return cached;
+        }
+        // 并发时可能重复查询同一字符，结果相同，写入无需同步
+        int width = measure(c);
+        units[c] = (short) width;
+        return width;
+    }
+
+    /**
+     * 某个字号下的宽度表（磅）
+     */
+    Sized atSize(float fontSize) {
+        Sized sized = sizes.get(fontSize);
+        if (sized == null) {
+            sized = sizes.computeIfAbsent(fontSize, size -> new Sized(this, size));
+        }
+        return sized;
+    }
+
+    private int measure(char c) {
+        // 代理对由 Sized.advance(String, int) 按完整码位查询
+        if (Character.isSurrogate(c)) {
+            return 0;
+        }
+        return Math.min(chain.width(c), Short.MAX_VALUE);
+    }
+
+    /**
+     * 一条回退链在一个字号下的宽度表，按码位索引的 float 数组，未查询过的字符为负数
+     */
+    static final class Sized {
+        private final GlyphMetrics font;
+        private final float scale;
+        private final float[] advances = new float[0x10000];
+
+        private Sized(GlyphMetrics font, float fontSize) {
+            this.font = font;
+            this.scale = fontSize / 1000f;
+            Arrays.fill(advances, -1f);
+        }
+
+        /**
+         * 字符宽度（磅）
+         */
+        float advance(char c) {
+            float cached = advances[c];
+            if (cached >= 0) {
+                return cached;
+            }
+            float width = font.advance(c) * scale;
+            advances[c] = width;
+            return width;
+        }
+
+        /**
+         * text 中第 i 个字符的宽度（磅）；代理对的宽度按完整码位查询并记在高位上，低位为0
+         */
+        float advance(String text, int i) {
+            char c = text.charAt(i);
+            if (!Character.isSurrogate(c)) {
+                return advance(c);
+            }
+            if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                return font.chain.width(Character.toCodePoint(c, text.charAt(i + 1))) * scale;
+            }
+            return 0;
+        }
+    }
+}
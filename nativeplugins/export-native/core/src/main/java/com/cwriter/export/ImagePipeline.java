@@ -0,0 +1,372 @@
+package com.cwriter.export;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 插图处理 - 解析正文中的图片引用，把图片缩小到排版需要的分辨率后交给 PDF/DOCX 渲染器
+ *
+ * 独占一段的“![说明](路径)”是一张插图，导出选项 cover 是封面。图片在渲染到它时才处理，同一时间只有一张在内存中：
+ * 先只读文件头得到尺寸；比目标尺寸（版心宽高按 format.imageDpi 换算成像素）大的图片交给平台的 Codec
+ * 按整数倍降采样解码、缩放并重新编码为 JPEG（有透明通道时为 PNG），结果按源文件和目标尺寸缓存在缓存目录中，
+ * 下次导出直接使用。处理后的图片按内容哈希去重，渲染器对同一哈希只写入一份数据。
+ * Android 上由 AndroidPlatform 提供基于 BitmapFactory 的 Codec；没有 Codec 或未配置缓存目录时，
+ * JPEG/PNG 原样嵌入（排版时缩小显示），其他格式跳过。
+ */
+final class ImagePipeline {
+
+    private static final String TAG = "ImagePipeline";
+
+    /** 处理方式变化时加一，使旧的缓存图片失效 */
+    static final int PIPELINE_VERSION = 1;
+
+    static final int DEFAULT_DPI = 150;
+
+    static final long DEFAULT_MAX_BYTES = 128L * 1024 * 1024;
+
+    static final String TYPE_JPEG = "jpeg";
+    static final String TYPE_PNG = "png";
+
+    // 与 PdfWorkRenderer 相同的A4版心，处理后的图片在 PDF 和 DOCX 中共用
+    private static final float CONTENT_WIDTH = 595f - 100f;
+    private static final float CONTENT_HEIGHT = 842f - 100f;
+
+    /** 进程内记录已处理的图片，键为源文件、修改时间和目标尺寸的哈希 */
+    private static final ConcurrentHashMap<String, Image> PROCESSED = new ConcurrentHashMap<>();
+    private static final int MAX_PROCESSED = 1024;
+
+    /**
+     * 平台的图片编解码：降采样解码 source 使其不超过 maxWidth × maxHeight，重新编码后写入 out
+     */
+    interface Codec {
+        /**
+         * @return 写入的格式（TYPE_JPEG 或 TYPE_PNG），无法解码时返回null
+         */
+        String transcode(File source, int maxWidth, int maxHeight, OutputStream out) throws IOException;
+    }
+
+    private static volatile Codec codec;
+    private static volatile File cacheDir;
+    private static volatile long maxBytes = DEFAULT_MAX_BYTES;
+    private static volatile boolean written;
+
+    private ImagePipeline() {
+    }
+
+    static void setCodec(Codec newCodec) {
+        codec = newCodec;
+    }
+
+    /**
+     * 设置处理后图片的缓存目录；dir 为null时不缓存（也不转码）
+     */
+    static void configure(File dir, long limit) {
+        if (dir != null && dir.equals(cacheDir) && limit == maxBytes) {
+            return;
+        }
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            ExportLog.w(TAG, "无法创建图片缓存目录: " + dir.getAbsolutePath());
+            dir = null;
+        }
+        cacheDir = dir;
+        maxBytes = limit;
+    }
+
+    /**
+     * 图片引用：说明文字和路径
+     */
+    static final class Reference {
+        final String alt;
+        final String path;
+
+        Reference(String alt, String path) {
+            this.alt = alt;
+            this.path = path;
+        }
+    }
+
+    /**
+     * 处理后的图片：文件、格式、像素尺寸和内容哈希；不持有图片数据
+     */
+    static final class Image {
+        final File file;
+        final String type;
+        final int width;
+        final int height;
+        final String hash;
+
+        Image(File file, String type, int width, int height, String hash) {
+            this.file = file;
+            this.type = type;
+            this.width = width;
+            this.height = height;
+            this.hash = hash;
+        }
+
+        /**
+         * 按 dpi 换算的显示尺寸（磅），等比缩小到 maxWidth × maxHeight 以内
+         */
+        float[] fit(int dpi, float maxWidth, float maxHeight) {
+            float w = width * 72f / dpi;
+            float h = height * 72f / dpi;
+            float scale = Math.min(1f, Math.min(maxWidth / w, maxHeight / h));
+            return new float[]{w * scale, h * scale};
+        }
+    }
+
+    /**
+     * text 的 [start, end) 区间（一个段落）是否是图片引用，段首可以有缩进；先比较首尾字符，可以在渲染循环中逐段调用
+     */
+    static boolean isImage(String text, int start, int end) {
+        start = ParagraphTokenizer.skipIndent(text, start, end);
+        return end - start >= 5 && text.charAt(start) == '!' && text.charAt(start + 1) == '['
+            && text.charAt(end - 1) == ')' && parse(text, start, end) != null;
+    }
+
+    /**
+     * 解析“![说明](路径)”，不是图片引用时返回null
+     */
+    static Reference parse(String text, int start, int end) {
+        start = ParagraphTokenizer.skipIndent(text, start, end);
+        if (end - start < 5 || text.charAt(start) != '!' || text.charAt(start + 1) != '[' || text.charAt(end - 1) != ')') {
+            return null;
+        }
+        int close = text.indexOf("](", start + 2);
+        if (close < 0 || close + 2 >= end - 1) {
+            return null;
+        }
+        String path = text.substring(close + 2, end - 1).trim();
+        return path.isEmpty() ? null : new Reference(text.substring(start + 2, close), path);
+    }
+
+    /**
+     * 章节正文中图片引用所在段落的个数
+     */
+    static int count(String text, int[] bounds) {
+        int images = 0;
+        for (int i = 0; i < bounds.length; i += 2) {
+            if (isImage(text, bounds[i], bounds[i + 1])) {
+                images++;
+            }
+        }
+        return images;
+    }
+
+    /**
+     * 图片源文件的状态（大小和修改时间），供指纹判断图片是否被替换
+     */
+    static String stamp(String path) {
+        File file = resolve(path);
+        return file.isFile() ? file.length() + "@" + file.lastModified() : "missing";
+    }
+
+    /**
+     * 按作品的分辨率处理图片；文件不存在或无法处理时记录警告并返回null
+     */
+    static Image load(String path, int dpi) {
+        File source = resolve(path);
+        if (!source.isFile()) {
+            ExportLog.w(TAG, "图片不存在: " + path);
+            return null;
+        }
+        int maxWidth = Math.round(CONTENT_WIDTH / 72f * dpi);
+        int maxHeight = Math.round(CONTENT_HEIGHT / 72f * dpi);
+        String key = key(source, maxWidth, maxHeight);
+        Image image = PROCESSED.get(key);
+        if (image != null && image.file.isFile()) {
+            return image;
+        }
+        try {
+            image = process(source, key, maxWidth, maxHeight);
+        } catch (IOException e) {
+            ExportLog.w(TAG, "图片处理失败: " + path, e);
+            return null;
+        }
+        if (image == null) {
+            ExportLog.w(TAG, "不支持的图片格式: " + path);
+            return null;
+        }
+        if (PROCESSED.size() >= MAX_PROCESSED) {
+            PROCESSED.clear();
+        }
+        PROCESSED.put(key, image);
+        return image;
+    }
+
+    private static Image process(File source, String key, int maxWidth, int maxHeight) throws IOException {
+        int[] header = readHeader(source);
+        // 尺寸合适的 JPEG/PNG 不重新编码，避免多一次有损压缩
+        if (header != null && header[1] <= maxWidth && header[2] <= maxHeight) {
+            return image(source, header);
+        }
+        Codec current = codec;
+        File dir = cacheDir;
+        if (current != null && dir != null) {
+            for (String type : new String[]{TYPE_JPEG, TYPE_PNG}) {
+                File cached = new File(dir, key + "." + type);
+                if (cached.isFile()) {
+                    if (!cached.setLastModified(System.currentTimeMillis())) {
+                        ExportLog.d(TAG, "无法更新缓存时间: " + cached.getName());
+                    }
+                    int[] cachedHeader = readHeader(cached);
+                    if (cachedHeader != null) {
+                        return image(cached, cachedHeader);
+                    }
+                }
+            }
+            File temp = File.createTempFile(key, ".part", dir);
+            try {
+                String type;
+                try (OutputStream out = new FileOutputStream(temp)) {
+                    type = current.transcode(source, maxWidth, maxHeight, out);
+                }
+                if (type != null) {
+                    File cached = new File(dir, key + "." + type);
+                    Files.move(temp.toPath(), cached.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    written = true;
+                    int[] cachedHeader = readHeader(cached);
+                    if (cachedHeader != null) {
+                        return image(cached, cachedHeader);
+                    }
+                }
+            } finally {
+                if (temp.exists() && !temp.delete()) {
+                    ExportLog.d(TAG, "无法删除临时文件: " + temp.getName());
+                }
+            }
+        }
+        // 无法转码：过大的 JPEG/PNG 原样嵌入，由渲染器缩小显示
+        return header != null ? image(source, header) : null;
+    }
+
+    private static Image image(File file, int[] header) throws IOException {
+        return new Image(file, header[0] == 0 ? TYPE_JPEG : TYPE_PNG, header[1], header[2], hash(file));
+    }
+
+    /**
+     * 缓存超过上限时，从最久未使用的图片开始删除；只在本进程写入过新图片后检查
+     */
+    static void trim() {
+        File dir = cacheDir;
+        if (!written || dir == null) {
+            return;
+        }
+        written = false;
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            if (total <= maxBytes * 3 / 4) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+            }
+        }
+    }
+
+    private static File resolve(String path) {
+        return new File(path.startsWith("file://") ? path.substring("file://".length()) : path);
+    }
+
+    private static String key(File source, int maxWidth, int maxHeight) {
+        MessageDigest digest = WorkFingerprint.newDigest();
+        digest.update((PIPELINE_VERSION + "|" + source.getAbsolutePath() + "|" + source.length() + "|"
+            + source.lastModified() + "|" + maxWidth + "x" + maxHeight).getBytes(StandardCharsets.UTF_8));
+        return WorkFingerprint.toHex(digest.digest());
+    }
+
+    private static String hash(File file) throws IOException {
+        MessageDigest digest = WorkFingerprint.newDigest();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return WorkFingerprint.toHex(digest.digest());
+    }
+
+    /**
+     * 读取 JPEG/PNG 文件头：{格式（0 为 JPEG，1 为 PNG），宽，高}；其他格式返回null
+     */
+    private static int[] readHeader(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 8 * 1024))) {
+            int first = in.readUnsignedShort();
+            if (first == 0xFFD8) {
+                return readJpegHeader(in);
+            }
+            if (first == 0x8950 && in.readUnsignedShort() == 0x4E47) {
+                // PNG 签名剩余的4字节、IHDR 的长度和类型之后是宽高
+                in.skipBytes(12);
+                return new int[]{1, in.readInt(), in.readInt()};
+            }
+            return null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private static int[] readJpegHeader(DataInputStream in) throws IOException {
+        while (true) {
+            int marker = in.readUnsignedByte();
+            if (marker != 0xFF) {
+                return null;
+            }
+            int type = in.readUnsignedByte();
+            while (type == 0xFF) {
+                type = in.readUnsignedByte();
+            }
+            if (type == 0xD8 || type >= 0xD0 && type <= 0xD7 || type == 0x01) {
+                continue;
+            }
+            int length = in.readUnsignedShort();
+            // SOF0-SOF15（除去 DHT、JPG、DAC）记录图像尺寸
+            if (type >= 0xC0 && type <= 0xCF && type != 0xC4 && type != 0xC8 && type != 0xCC) {
+                in.skipBytes(1);
+                int height = in.readUnsignedShort();
+                int width = in.readUnsignedShort();
+                return new int[]{0, width, height};
+            }
+            if (type == 0xD9 || type == 0xDA) {
+                return null;
+            }
+            skipFully(in, length - 2);
+        }
+    }
+
+    private static void skipFully(DataInputStream in, int count) throws IOException {
+        while (count > 0) {
+            int skipped = in.skipBytes(count);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            count -= skipped;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.cwriter.export;
+
+import java.io.File;
+
+/**
+ * 内存准入 - 渲染前按字符数、段落数和格式预估峰值内存，与堆上限和当前占用比较后再开始
+ *
+ * 放得下时直接渲染；DOCX放不下时改用 StreamingDocxWorkRenderer；仍然放不下时等待其他导出释放内存，
+ * 超时后返回内存不足的错误，而不是在添加内容时OOM导致整个App进程崩溃。
+ * 并行的导出（多格式导出、命令行批量导出）各自预留预估的内存，后来的任务会看到前面任务的预留量。
+ */
+final class MemoryAdmission {
+
+    private static final String TAG = "MemoryAdmission";
+
+    static final int MODE_DIRECT = 0;
+    static final int MODE_STREAMING = 1;
+
+    private static final String[] MODE_NAMES = {"direct", "streaming"};
+
+    /** 等待其他导出释放内存的最长时间 */
+    static final long DEFAULT_WAIT_MILLIS = 60_000;
+
+    /** 只使用可用内存的这一比例，给估算误差和其他线程留余量 */
+    private static final double HEADROOM = 0.8;
+
+    private static final long MB = 1024 * 1024;
+
+    private static final Object LOCK = new Object();
+    private static long reservedBytes;
+
+    private MemoryAdmission() {
+    }
+
+    /**
+     * 内存不足且等待超时
+     */
+    static final class InsufficientMemoryException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        InsufficientMemoryException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * 准入结果；关闭时归还预留的内存
+     */
+    static final class Admission implements AutoCloseable {
+        final int mode;
+        final WorkRenderer renderer;
+        final long estimatedBytes;
+        final long waitMillis;
+        private boolean released;
+
+        private Admission(int mode, WorkRenderer renderer, long estimatedBytes, long waitMillis) {
+            this.mode = mode;
+            this.renderer = renderer;
+            this.estimatedBytes = estimatedBytes;
+            this.waitMillis = waitMillis;
+        }
+
+        String modeName() {
+            return MODE_NAMES[mode];
+        }
+
+        @Override
+        public void close() {
+            synchronized (LOCK) {
+                if (!released) {
+                    released = true;
+                    reservedBytes -= estimatedBytes;
+                    LOCK.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * 预估渲染峰值内存（不含已经在内存中的作品本身）
+     *
+     * 系数与 MemoryBudgetCheck 的预算一致：PDF逐页写出，峰值基本固定；POI的DOCX文档随内容增长，
+     * 序列化时还要再占一份；流式DOCX和TXT只有缓冲区。
+     */
+    static long estimatePeakBytes(String format, long chars, int paragraphs) {
+        if ("pdf".equals(format)) {
+            return 16 * MB + 4 * chars;
+        }
+        if ("docx".equals(format)) {
+            return 16 * MB + 48 * chars + 400L * paragraphs;
+        }
+        if ("docx-stream".equals(format) || "epub".equals(format)) {
+            return 2 * MB;
+        }
+        return MB;
+    }
+
+    /**
+     * 当前可用的堆内存：堆上限减去已用和其他导出预留的部分
+     */
+    static long availableBytes() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        synchronized (LOCK) {
+            return runtime.maxMemory() - used - reservedBytes;
+        }
+    }
+
+    /**
+     * 申请渲染所需的内存
+     *
+     * @param renderer   期望使用的渲染器
+     * @param work       要渲染的作品
+     * @param waitMillis 放不下时最多等待多久
+     * @return 准入结果，renderer 为实际应使用的渲染器
+     */
+    static Admission admit(WorkRenderer renderer, ExportWork work, long waitMillis)
+            throws InsufficientMemoryException, InterruptedException {
+        long direct = estimatePeakBytes(renderer.format(), work.charCount, work.paragraphCount);
+        boolean canStream = renderer instanceof DocxWorkRenderer;
+        long streaming = estimatePeakBytes("docx-stream", work.charCount, work.paragraphCount);
+        long startTime = System.currentTimeMillis();
+        boolean collected = false;
+
+        while (true) {
+            Runtime runtime = Runtime.getRuntime();
+            synchronized (LOCK) {
+                long available = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory()) - reservedBytes;
+                long waited = System.currentTimeMillis() - startTime;
+                Admission admission = null;
+                if (direct <= available * HEADROOM) {
+                    admission = new Admission(MODE_DIRECT, renderer, direct, waited);
+                } else if (canStream && streaming <= available * HEADROOM) {
+                    admission = new Admission(MODE_STREAMING, new StreamingDocxWorkRenderer(), streaming, waited);
+                    PerformanceStats.recordFallback(PerformanceStats.FALLBACK_STREAMING);
+                    ExportLog.w(TAG, "内存不足以构建DOCX文档（预估 " + direct / MB + "MB，可用 " + available / MB + "MB），改用流式渲染");
+                }
+                if (admission != null) {
+                    reservedBytes += admission.estimatedBytes;
+                    ExportTrace.record(ExportTrace.LEVEL_INFO, ExportTrace.EVENT_ADMISSION, 0,
+                        admission.mode, admission.estimatedBytes / 1024);
+                    return admission;
+                }
+
+                // 其他导出正在占用内存：等它们结束后再试
+                if (reservedBytes > 0 && waited < waitMillis) {
+                    ExportLog.d(TAG, "等待其他导出释放内存，已预留 " + reservedBytes / MB + "MB");
+                    LOCK.wait(waitMillis - waited);
+                    continue;
+                }
+            }
+
+            // 已用内存里可能大部分是垃圾，回收一次后再判断
+            if (!collected) {
+                collected = true;
+                System.gc();
+                continue;
+            }
+            long needed = canStream ? streaming : direct;
+            throw new InsufficientMemoryException("内存不足，无法导出" + renderer.format().toUpperCase()
+                + "（预估需要 " + needed / MB + "MB，可用 " + Math.max(0, availableBytes()) / MB + "MB）");
+        }
+    }
+
+    /**
+     * 经过内存准入后渲染到目标；POI渲染中途仍然OOM时，丢弃已写的输出并用流式渲染重试一次
+     *
+     * 文件目标经 AtomicFileSink 写到临时文件，成功后才改名为目标文件；内容URI等目标直接写入（ExportTarget）。
+     *
+     * @param sync 改名前是否 fsync
+     */
+    static void render(ExportWork work, WorkRenderer renderer, ExportTarget target, ExportMetrics metrics, boolean sync) throws Exception {
+        try (Admission admission = admit(renderer, work, DEFAULT_WAIT_MILLIS)) {
+            metrics.setAdmission(admission.modeName(), admission.estimatedBytes, admission.waitMillis);
+            try {
+                renderAtomically(work, admission.renderer, target, metrics, sync);
+            } catch (Exception | OutOfMemoryError e) {
+                if (admission.mode != MODE_DIRECT || !(renderer instanceof DocxWorkRenderer)
+                        || PerformanceStats.classify(e) != PerformanceStats.ERROR_OUT_OF_MEMORY) {
+                    throw e;
+                }
+                ExportLog.w(TAG, "DOCX渲染时内存不足，改用流式渲染重试", e);
+                PerformanceStats.recordFallback(PerformanceStats.FALLBACK_STREAMING);
+                metrics.restartCounters();
+                metrics.setAdmission(MODE_NAMES[MODE_STREAMING],
+                    estimatePeakBytes("docx-stream", work.charCount, work.paragraphCount), admission.waitMillis);
+                renderAtomically(work, new StreamingDocxWorkRenderer(), target, metrics, sync);
+            }
+        }
+    }
+
+    private static void renderAtomically(ExportWork work, WorkRenderer renderer, ExportTarget target, ExportMetrics metrics,
+                                         boolean sync) throws Exception {
+        ExportTarget.Output sink = target.open(sync);
+        try {
+            renderer.render(work, sink.stream(), metrics);
+            sink.commit();
+        } finally {
+            sink.abort();
+            metrics.addWriteSyscalls(sink.syscalls());
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.cwriter.export;
+
+import com.alibaba.fastjson.JSONObject;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 多格式导出 - 作品只切分一次，多个渲染器同时消费同一份中间表示
+ *
+ * 总耗时接近最慢的单一格式，而不是各格式耗时之和。
+ */
+final class MultiFormatExporter {
+
+    private static final String TAG = "MultiFormatExporter";
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private static final ExecutorService RENDER_POOL = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "cwriter-render-" + THREAD_COUNT.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private MultiFormatExporter() {
+    }
+
+    /**
+     * 查找格式对应的渲染器，不支持的格式返回null
+     */
+    static WorkRenderer rendererFor(String format) {
+        if ("pdf".equalsIgnoreCase(format)) {
+            return new PdfWorkRenderer();
+        }
+        if ("docx".equalsIgnoreCase(format)) {
+            return new DocxWorkRenderer();
+        }
+        if ("txt".equalsIgnoreCase(format)) {
+            return new TxtWorkRenderer();
+        }
+        if ("epub".equalsIgnoreCase(format)) {
+            return new EpubWorkRenderer();
+        }
+        return null;
+    }
+
+    /**
+     * 并行渲染各格式
+     *
+     * @param work    已切分好的作品
+     * @param targets 渲染器到导出目标的映射，每种格式只能出现一次
+     * @param sync    写完后是否 fsync
+     * @return 以格式名为键的各格式结果
+     * @throws IllegalArgumentException 同一格式有多个渲染器
+     */
+    static JSONObject export(ExportWork work, Map<WorkRenderer, ExportTarget> targets, boolean sync) {
+        Set<String> formats = new HashSet<>();
+        for (WorkRenderer renderer : targets.keySet()) {
+            if (!formats.add(renderer.format())) {
+                // 结果以格式为键，重复的格式会互相覆盖结果并同时写同一个目标
+                throw new IllegalArgumentException("重复的导出格式: " + renderer.format());
+            }
+        }
+        Map<WorkRenderer, Future<JSONObject>> futures = new LinkedHashMap<>();
+        for (Map.Entry<WorkRenderer, ExportTarget> entry : targets.entrySet()) {
+            final WorkRenderer renderer = entry.getKey();
+            final ExportTarget target = entry.getValue();
+            futures.put(renderer, RENDER_POOL.submit(() -> renderOne(work, renderer, target, sync)));
+        }
+
+        JSONObject results = new JSONObject();
+        for (Map.Entry<WorkRenderer, Future<JSONObject>> entry : futures.entrySet()) {
+            String format = entry.getKey().format();
+            JSONObject result;
+            try {
+                result = entry.getValue().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                result = failure(format, "导出等待被中断");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                result = failure(format, cause.getMessage());
+            }
+            results.put(format, result);
+        }
+        return results;
+    }
+
+    /**
+     * 单一格式导出的完整流程：解析选项和保存位置，按需分卷，较大的作品记录检查点，渲染并记录统计
+     *
+     * @param renderer 渲染器，决定格式和扩展名
+     * @param options  导出选项（title、content、savePath、format 等）
+     * @return 导出结果：success、path、duration、metrics；分卷时为 VolumeExporter 的清单；
+     *         失败时有 error，记录了检查点的还有 jobId 和 resumable
+     */
+    static JSONObject exportWith(WorkRenderer renderer, JSONObject options) {
+        long startTime = System.currentTimeMillis();
+        int op = PerformanceStats.exportOp(renderer.format());
+        if (options == null) {
+            ExportLog.e(TAG, "Error: options parameter is null");
+            if (op >= 0) {
+                PerformanceStats.recordFailure(op, PerformanceStats.ERROR_INVALID_ARGUMENT);
+            }
+            JSONObject result = new JSONObject();
+            result.put("success", false);
+            result.put("error", "Options parameter is null");
+            return result;
+        }
+
+        ExportWork work;
+        ExportTarget target;
+        try {
+            // 获取结构化数据（只解析和切分一次）
+            work = ExportWork.from(options);
+            target = ExportTarget.forExport(options.getString("savePath"), work.title, renderer.extension());
+        } catch (Exception e) {
+            long endTime = System.currentTimeMillis();
+            ExportLog.e(TAG, renderer.format() + " export failed, time: " + (endTime - startTime) + "ms", e);
+            if (op >= 0) {
+                PerformanceStats.recordFailure(op, e);
+            }
+            JSONObject result = failure(renderer.format(), e.getMessage());
+            result.put("duration", endTime - startTime);
+            return result;
+        }
+        ExportLog.d(TAG, "Start exporting " + renderer.format() + ": " + target.location()
+            + ", title: " + work.title + ", chapters: " + work.chapters.size());
+        return render(work, renderer, target, options, AtomicFileSink.syncRequested(options));
+    }
+
+    /**
+     * 在当前线程渲染单一格式并记录统计，返回与 export 中单个格式相同结构的结果
+     */
+    static JSONObject renderOne(ExportWork work, WorkRenderer renderer, ExportTarget target, boolean sync) {
+        return render(work, renderer, target, null, sync);
+    }
+
+    /**
+     * 渲染并记录统计；options 不为null时按 ExportCheckpoint 的条件记录检查点
+     */
+    private static JSONObject render(ExportWork work, WorkRenderer renderer, ExportTarget target,
+                                     JSONObject options, boolean sync) {
+        if (options != null && VolumeExporter.requested(work)) {
+            return renderVolumes(work, renderer, target, options, sync);
+        }
+        long startTime = System.currentTimeMillis();
+        JSONObject result = new JSONObject();
+        ExportMetrics metrics = new ExportMetrics();
+        int op = PerformanceStats.exportOp(renderer.format());
+        ExportCheckpoint checkpoint = options != null
+            ? ExportCheckpoint.begin(renderer.format(), options, work, target, metrics)
+            : null;
+        try {
+            MemoryAdmission.render(work, renderer, target, metrics, sync);
+            if (checkpoint != null) {
+                checkpoint.complete();
+                checkpoint.describe(result);
+            }
+            long endTime = System.currentTimeMillis();
+            ExportLog.d(TAG, renderer.format() + " export successful: " + target.location() + ", time taken: " + (endTime - startTime) + "ms");
+            result.put("success", true);
+            target.describe(result);
+            result.put("duration", endTime - startTime);
+            if (op >= 0) {
+                PerformanceStats.recordSuccess(op, metrics);
+            }
+        } catch (Throwable t) {
+            long endTime = System.currentTimeMillis();
+            ExportLog.e(TAG, renderer.format() + " export failed, time: " + (endTime - startTime) + "ms", t);
+            result = failure(renderer.format(), t.getMessage());
+            if (op >= 0) {
+                PerformanceStats.recordFailure(op, t);
+            }
+            result.put("duration", endTime - startTime);
+            if (checkpoint != null) {
+                // 已完成的章节留在渲染缓存中，可以用 resumeExport 继续
+                checkpoint.fail();
+                checkpoint.describe(result);
+                result.put("resumable", true);
+            }
+        }
+        result.put("metrics", metrics.toJSON());
+        return result;
+    }
+
+    /**
+     * 分卷导出：各卷经 renderOne 分别记录统计；检查点覆盖整个导出，继续时重新分卷，已完成的章节从渲染缓存中取
+     */
+    private static JSONObject renderVolumes(ExportWork work, WorkRenderer renderer, ExportTarget target,
+                                            JSONObject options, boolean sync) {
+        ExportLog.d(TAG, "Splitting " + renderer.format() + " into volumes by " + work.splitBy);
+        ExportCheckpoint checkpoint = ExportCheckpoint.begin(renderer.format(), options, work, target, new ExportMetrics());
+        JSONObject result = VolumeExporter.export(work, renderer, target, sync);
+        if (!result.containsKey("volumes")) {
+            // 还没有开始渲染任何一卷
+            int op = PerformanceStats.exportOp(renderer.format());
+            if (op >= 0) {
+                PerformanceStats.recordFailure(op, PerformanceStats.ERROR_IO);
+            }
+        }
+        if (checkpoint != null) {
+            if (result.getBooleanValue("success")) {
+                checkpoint.complete();
+            } else {
+                checkpoint.fail();
+                result.put("resumable", true);
+            }
+            checkpoint.describe(result);
+        }
+        return result;
+    }
+
+    private static JSONObject failure(String format, String message) {
+        JSONObject result = new JSONObject();
+        result.put("success", false);
+        result.put("error", format.toUpperCase() + "导出失败: " + message);
+        return result;
+    }
+}
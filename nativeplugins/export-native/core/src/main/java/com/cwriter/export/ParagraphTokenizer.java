@@ -0,0 +1,80 @@
+package com.cwriter.export;
+
+import java.util.Arrays;
+
+/**
+ * 段落切分 - 对章节正文只扫描一遍，输出每个段落在原字符串中的 [start, end) 区间，不复制文本
+ *
+ * 换行符 \n、\r\n 和单独的 \r 都作为行结束；行首像 String.trim 一样只去掉空格和控制字符，行尾还去掉全角空格和不换行空格。
+ * 作者习惯用全角空格“　　”缩进，这样的段首缩进留在段落中，PDF、DOCX 和 TXT 原样输出；
+ * 自己缩进段落的格式（EPUB 的 text-indent、TXT 指定了 format.indent 时）用 skipIndent 跳过它。
+ * 空行和只有空白（含全角空格、不换行空格）的行是段落之间的分隔，不产生段落。
+ */
+final class ParagraphTokenizer {
+
+    static final int[] EMPTY = new int[0];
+
+    private ParagraphTokenizer() {
+    }
+
+    /**
+     * 切分正文
+     *
+     * @return 段落边界，依次为第 i 段的起点 bounds[2i] 和终点 bounds[2i+1]
+     */
+    static int[] tokenize(String text) {
+        int length = text.length();
+        int[] bounds = new int[16];
+        int count = 0;
+        int i = 0;
+        while (i < length) {
+            int start = i;
+            char c = 0;
+            while (i < length && (c = text.charAt(i)) != '\n' && c != '\r') {
+                i++;
+            }
+            int end = i;
+            // 跳过行结束符，\r\n 算一个
+            if (i < length) {
+                i += c == '\r' && i + 1 < length && text.charAt(i + 1) == '\n' ? 2 : 1;
+            }
+            while (start < end && isBlank(text.charAt(start))) {
+                start++;
+            }
+            while (end > start && isIndent(text.charAt(end - 1))) {
+                end--;
+            }
+            // 只有空白和全角空格的行在去掉行尾时已经为空
+            if (start == end) {
+                continue;
+            }
+            if (count == bounds.length) {
+                bounds = Arrays.copyOf(bounds, count * 2);
+            }
+            bounds[count++] = start;
+            bounds[count++] = end;
+        }
+        return count == 0 ? EMPTY : Arrays.copyOf(bounds, count);
+    }
+
+    /**
+     * 与 String.trim 相同：空格和控制字符
+     */
+    static boolean isBlank(char c) {
+        return c <= ' ';
+    }
+
+    /**
+     * 段首缩进之后的第一个字符位置；缩进由全角空格、不换行空格和普通空白组成，整段都是缩进时返回 end
+     */
+    static int skipIndent(String text, int start, int end) {
+        while (start < end && isIndent(text.charAt(start))) {
+            start++;
+        }
+        return start;
+    }
+
+    private static boolean isIndent(char c) {
+        return c <= ' ' || c == '\u3000' || c == '\u00A0';
+    }
+}
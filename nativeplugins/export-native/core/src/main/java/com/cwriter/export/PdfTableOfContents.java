@@ -0,0 +1,199 @@
+package com.cwriter.export;
+
+import com.itextpdf.kernel.geom.PageSize;
+import com.itextpdf.kernel.geom.Rectangle;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfName;
+import com.itextpdf.kernel.pdf.PdfOutline;
+import com.itextpdf.kernel.pdf.PdfPage;
+import com.itextpdf.kernel.pdf.action.PdfAction;
+import com.itextpdf.kernel.pdf.canvas.draw.DottedLine;
+import com.itextpdf.kernel.pdf.navigation.PdfExplicitDestination;
+import com.itextpdf.layout.Canvas;
+import com.itextpdf.layout.element.Paragraph;
+import com.itextpdf.layout.element.Tab;
+import com.itextpdf.layout.element.TabStop;
+import com.itextpdf.layout.element.Text;
+import com.itextpdf.layout.properties.TabAlignment;
+import com.itextpdf.layout.properties.TextAlignment;
+
+/**
+ * PDF目录和书签 - 排版时记录每章标题所在的页和位置，正文排完后把目录页插到标题页之后，不重新排版正文
+ *
+ * 目录每章一行（标题过长时截断），行高固定，所以目录的页数在排版正文之前就能算出来（pageCount），
+ * 正文的页码直接加上目录页数即可。iText 排版时会立即写出已完成的页面，写出的页面不能再移动，
+ * 因此目录页用 addNewPage(位置) 新建在标题页之后，再用 Canvas 按固定行高绘制。
+ * 书签（PDF outline）在记录标题时立即添加，指向标题所在的页和高度；目录中的每一行也是跳转到该位置的链接。
+ */
+final class PdfTableOfContents {
+
+    private static final String TAG = "PdfTableOfContents";
+
+    private static final String TITLE = "目录";
+
+    // 与 PdfWorkRenderer 相同的A4页面和50pt页边距
+    private static final float MARGIN = 50f;
+    private static final float CONTENT_WIDTH = PageSize.A4.getWidth() - 2 * MARGIN;
+    private static final float CONTENT_HEIGHT = PageSize.A4.getHeight() - 2 * MARGIN;
+
+    /** 目录行的行高倍数（相对正文字号） */
+    private static final float ENTRY_LEADING = 1.8f;
+    /** 目录标题的行高倍数（相对章节标题字号），标题下方再空一行目录行 */
+    private static final float TITLE_LEADING = 1.5f;
+    /** 页码一栏预留的宽度（按字号计，可容纳五位页码和点线的起点） */
+    private static final float NUMBER_COLUMN = 4f;
+
+    private final ExportWork work;
+    private final PdfDocument pdfDocument;
+    private final PdfOutline outlines;
+    private final int[] pages;
+    private final PdfExplicitDestination[] destinations;
+
+    PdfTableOfContents(ExportWork work, PdfDocument pdfDocument) {
+        this.work = work;
+        this.pdfDocument = pdfDocument;
+        this.outlines = pdfDocument.getOutlines(false);
+        this.pages = new int[work.chapters.size()];
+        this.destinations = new PdfExplicitDestination[work.chapters.size()];
+        // 打开文档时显示书签面板
+        pdfDocument.getCatalog().setPageMode(PdfName.UseOutlines);
+    }
+
+    /**
+     * 是否生成目录页（format.toc，默认开启）；书签总是生成
+     */
+    static boolean enabled(ExportWork work) {
+        return work.toc && !work.chapters.isEmpty();
+    }
+
+    /**
+     * 目录的页数：只取决于章节数和字号
+     */
+    static int pageCount(ExportWork work) {
+        if (!enabled(work)) {
+            return 0;
+        }
+        int firstPage = entriesOnFirstPage(work);
+        int otherPages = entriesPerPage(work);
+        int remaining = work.chapters.size() - firstPage;
+        return 1 + (remaining > 0 ? (remaining + otherPages - 1) / otherPages : 0);
+    }
+
+    private static int entriesOnFirstPage(ExportWork work) {
+        float titleHeight = work.headingSize * TITLE_LEADING + work.bodySize * ENTRY_LEADING;
+        return Math.max(1, (int) ((CONTENT_HEIGHT - titleHeight) / (work.bodySize * ENTRY_LEADING)));
+    }
+
+    private static int entriesPerPage(ExportWork work) {
+        return Math.max(1, (int) (CONTENT_HEIGHT / (work.bodySize * ENTRY_LEADING)));
+    }
+
+    /**
+     * 记录章节标题的位置并添加书签
+     *
+     * @param page 标题所在的页码（插入目录之前）
+     * @param top  标题上边缘的高度
+     */
+    void record(ExportWork.Chapter chapter, int page, float top) {
+        PdfExplicitDestination destination = PdfExplicitDestination.createXYZ(pdfDocument.getPage(page), MARGIN, top, 0);
+        pages[chapter.index] = page;
+        destinations[chapter.index] = destination;
+        outlines.addOutline(chapter.heading).addDestination(destination);
+    }
+
+    /**
+     * 在第 afterPage 页之后插入目录页；此前记录的页码都在 afterPage 之后，加上目录页数就是最终页码
+     */
+    void insert(FontFallbackChain.Fonts fonts, int afterPage) {
+        if (!enabled(work)) {
+            return;
+        }
+        int tocPages = pageCount(work);
+        Rectangle area = new Rectangle(MARGIN, MARGIN, CONTENT_WIDTH, CONTENT_HEIGHT);
+        GlyphMetrics.Sized metrics = GlyphMetrics.body().atSize(work.bodySize);
+        float entryLeading = work.bodySize * ENTRY_LEADING;
+        float maxTitleWidth = CONTENT_WIDTH - NUMBER_COLUMN * work.bodySize;
+        PdfPage firstPage = null;
+        int chapter = 0;
+        for (int p = 0; p < tocPages; p++) {
+            PdfPage page = pdfDocument.addNewPage(afterPage + 1 + p, PageSize.A4);
+            if (firstPage == null) {
+                firstPage = page;
+            }
+            Canvas canvas = new Canvas(page, area);
+            try {
+                int entries = entriesPerPage(work);
+                if (p == 0) {
+                    Paragraph title = fonts.paragraph(TITLE);
+                    if (fonts.primary() != null) {
+                        title.setFont(fonts.primary());
+                    }
+                    title.setFontSize(work.headingSize)
+                        .setBold()
+                        .setTextAlignment(TextAlignment.CENTER)
+                        .setFixedLeading(work.headingSize * TITLE_LEADING)
+                        .setMargin(0)
+                        .setMarginBottom(entryLeading);
+                    canvas.add(title);
+                    entries = entriesOnFirstPage(work);
+                }
+                for (int i = 0; i < entries && chapter < pages.length; i++, chapter++) {
+                    canvas.add(entry(fonts, work.chapters.get(chapter), tocPages, metrics, maxTitleWidth, entryLeading));
+                }
+            } finally {
+                canvas.close();
+            }
+        }
+        if (chapter < pages.length) {
+            ExportLog.w(TAG, "目录页数不足，缺少 " + (pages.length - chapter) + " 个章节");
+        }
+        if (firstPage != null) {
+            outlines.addOutline(TITLE, 0).addDestination(PdfExplicitDestination.createFit(firstPage));
+        }
+    }
+
+    /**
+     * 目录中的一行：章节标题、点线、右对齐的页码，整行链接到章节标题
+     */
+    private Paragraph entry(FontFallbackChain.Fonts fonts, ExportWork.Chapter chapter, int tocPages,
+                            GlyphMetrics.Sized metrics, float maxTitleWidth, float entryLeading) {
+        String heading = fit(chapter.heading, metrics, maxTitleWidth);
+        Paragraph paragraph = new Paragraph();
+        FontFallbackChain.Runs runs = fonts.runs(paragraph);
+        runs.append(heading, 0, heading.length());
+        runs.finish();
+        if (fonts.primary() != null) {
+            paragraph.setFont(fonts.primary());
+        }
+        paragraph.addTabStops(new TabStop(CONTENT_WIDTH, TabAlignment.RIGHT, new DottedLine(0.5f, 3f)));
+        paragraph.add(new Tab());
+        if (destinations[chapter.index] != null) {
+            paragraph.add(new Text(Integer.toString(pages[chapter.index] + tocPages)));
+            paragraph.setAction(PdfAction.createGoTo(destinations[chapter.index]));
+        }
+        return paragraph.setFontSize(work.bodySize)
+            .setFixedLeading(entryLeading)
+            .setMargin(0);
+    }
+
+    /**
+     * 超出宽度的标题截断并加省略号，保证每个目录项只占一行
+     */
+    private static String fit(String heading, GlyphMetrics.Sized metrics, float maxWidth) {
+        float limit = maxWidth - metrics.advance('…');
+        float width = 0;
+        int cut = -1;
+        for (int i = 0; i < heading.length(); i++) {
+            float advance = metrics.advance(heading, i);
+            if (cut < 0 && width + advance > limit) {
+                // 加上省略号后还放得下的最后位置
+                cut = Character.isLowSurrogate(heading.charAt(i)) ? i - 1 : i;
+            }
+            width += advance;
+            if (width > maxWidth) {
+                return heading.substring(0, cut) + '…';
+            }
+        }
+        return heading;
+    }
+}
@@ -0,0 +1,523 @@
+package com.cwriter.export;
+
+import com.itextpdf.io.image.ImageDataFactory;
+import com.itextpdf.kernel.font.PdfFont;
+import com.itextpdf.kernel.geom.PageSize;
+import com.itextpdf.kernel.pdf.PdfDictionary;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfIndirectReference;
+import com.itextpdf.kernel.pdf.PdfName;
+import com.itextpdf.kernel.pdf.PdfPage;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.PdfStream;
+import com.itextpdf.kernel.pdf.PdfString;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.kernel.pdf.xobject.PdfImageXObject;
+import com.itextpdf.layout.Document;
+import com.itextpdf.layout.element.AreaBreak;
+import com.itextpdf.layout.element.Image;
+import com.itextpdf.layout.element.Paragraph;
+import com.itextpdf.layout.layout.LayoutArea;
+import com.itextpdf.layout.properties.AreaBreakType;
+import com.itextpdf.layout.properties.HorizontalAlignment;
+import com.itextpdf.layout.properties.TextAlignment;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * PDF渲染器 - 使用iText生成PDF（Android兼容）
+ *
+ * 每章从新页开始（chapterPageBreak）且配置了 ChapterRenderCache 时，每章单独排版成一份PDF并缓存，
+ * 导出时把各章的页面复制到结果文档中，未修改的章节不再重新排版。
+ * 两种方式都在排版（或复制）章节时记录标题的页码，最后插入目录页和书签（PdfTableOfContents）。
+ * 封面和插图（ImagePipeline）在同一文档中按内容哈希共用一个图像对象，第一次使用后立即写出，之后只引用；
+ * 按章节缓存时每章是独立的PDF，图像对象带有内容哈希，复制页面时重复的图像改为引用第一份，结果中仍只存一份。
+ */
+final class PdfWorkRenderer implements WorkRenderer {
+
+    private static final String TAG = "PdfWorkRenderer";
+
+    /** 使用章节缓存时每批处理的章节数，限制同时驻留内存的单章PDF数量 */
+    private static final int CACHE_BATCH = 32;
+    /** 每批章节中插图的上限：未命中缓存的单章PDF各自带有一份图片数据 */
+    private static final int CACHE_BATCH_IMAGES = 8;
+
+    /** 插图的最大高度：版心高度减去一点余量，保证整页的图片能放进一页 */
+    private static final float MAX_IMAGE_HEIGHT = PageSize.A4.getHeight() - 100 - 10;
+
+    /** 写在图像对象字典中的内容哈希，拼接章节时用来去重 */
+    private static final PdfName IMAGE_HASH = new PdfName("CwriterImageHash");
+
+    @Override
+    public String format() {
+        return "pdf";
+    }
+
+    @Override
+    public String extension() {
+        return ".pdf";
+    }
+
+    @Override
+    public void render(ExportWork work, OutputStream out, ExportMetrics metrics) throws Exception {
+        out = metrics.countingStream(out);
+        metrics.addChars(work.charCount);
+        ExportTrace.record(ExportTrace.LEVEL_INFO, ExportTrace.EVENT_BEGIN, metrics.jobId(),
+            PerformanceStats.exportOp(format()), work.charCount);
+        ExportTrace.record(ExportTrace.LEVEL_DEBUG, ExportTrace.EVENT_OPTIONS, metrics.jobId(),
+            work.chapters.size(), work.paragraphCount);
+        ChapterRenderCache cache = work.chapterPageBreak ? ChapterRenderCache.forWork(work) : null;
+        if (cache != null) {
+            renderCached(work, out, metrics, cache);
+            return;
+        }
+        PdfDocument pdfDocument;
+        metrics.begin(ExportMetrics.PHASE_DOCUMENT_CREATE);
+        try {
+            pdfDocument = new PdfDocument(new PdfWriter(out));
+        } catch (Exception e) {
+            // PdfDocument创建失败时由这里关闭输出流，创建成功后由PdfDocument管理
+            try {
+                out.close();
+            } catch (Exception closeError) {
+                ExportLog.w(TAG, "关闭输出流失败", closeError);
+            }
+            throw e;
+        }
+        Document document = new Document(pdfDocument);
+        metrics.end(ExportMetrics.PHASE_DOCUMENT_CREATE);
+        boolean closed = false;
+        try {
+            metrics.begin(ExportMetrics.PHASE_FONT_LOAD);
+            FontFallbackChain.Fonts fonts = FontFallbackChain.shared().forDocument();
+            fonts.primary();
+            metrics.end(ExportMetrics.PHASE_FONT_LOAD);
+
+            metrics.begin(ExportMetrics.PHASE_LAYOUT);
+            // 设置页边距
+            document.setMargins(50, 50, 50, 50);
+            Map<String, PdfImageXObject> images = new HashMap<>();
+            addFrontMatter(document, fonts, work, images);
+            PdfTableOfContents toc = new PdfTableOfContents(work, pdfDocument);
+            int frontPages = document.getRenderer().getCurrentArea().getPageNumber();
+            if (PdfTableOfContents.enabled(work) && !work.chapterPageBreak) {
+                // 目录插在标题页之后，正文从新页开始
+                document.add(new AreaBreak(AreaBreakType.NEXT_PAGE));
+            }
+
+            // 添加章节内容
+            for (ExportWork.Chapter chapter : work.chapters) {
+                metrics.beginChapter();
+                if (work.chapterPageBreak) {
+                    document.add(new AreaBreak(AreaBreakType.NEXT_PAGE));
+                }
+                if (addChapter(document, fonts, work, chapter, toc, images)) {
+                    metrics.addParagraphs(chapter.paragraphCount());
+                }
+                metrics.endChapter();
+                metrics.sampleHeap();
+            }
+            toc.insert(fonts, frontPages);
+            if (work.imageCount > 0) {
+                ImagePipeline.trim();
+            }
+            metrics.end(ExportMetrics.PHASE_LAYOUT);
+
+            // 关闭Document会写出剩余对象和交叉引用表，并同时关闭PdfDocument和输出流
+            metrics.begin(ExportMetrics.PHASE_SERIALIZATION);
+            closed = true;
+            document.close();
+            metrics.end(ExportMetrics.PHASE_SERIALIZATION);
+        } finally {
+            if (!closed) {
+                document.close();
+            }
+        }
+    }
+
+    /**
+     * 按章节拼接：标题页和每一章各自是独立的PDF（章节来自缓存或即时排版），依次复制页面到结果文档
+     */
+    private void renderCached(ExportWork work, OutputStream out, ExportMetrics metrics, ChapterRenderCache cache) throws Exception {
+        PdfDocument pdfDocument;
+        metrics.begin(ExportMetrics.PHASE_DOCUMENT_CREATE);
+        try {
+            pdfDocument = new PdfDocument(new PdfWriter(out));
+        } catch (Exception e) {
+            try {
+                out.close();
+            } catch (Exception closeError) {
+                ExportLog.w(TAG, "关闭输出流失败", closeError);
+            }
+            throw e;
+        }
+        metrics.end(ExportMetrics.PHASE_DOCUMENT_CREATE);
+        boolean closed = false;
+        try {
+            metrics.begin(ExportMetrics.PHASE_LAYOUT);
+            Map<String, PdfIndirectReference> images = new HashMap<>();
+            appendPages(pdfDocument, renderFrontMatter(work), images);
+            PdfTableOfContents toc = new PdfTableOfContents(work, pdfDocument);
+            int frontPages = pdfDocument.getNumberOfPages();
+            List<ExportWork.Chapter> chapters = work.chapters;
+            for (int start = 0, end; start < chapters.size(); start = end) {
+                end = batchEnd(chapters, start);
+                List<ExportWork.Chapter> batch = chapters.subList(start, end);
+                String[] keys = new String[batch.size()];
+                byte[][] parts = new byte[batch.size()][];
+                List<ExportWork.Chapter> misses = new ArrayList<>();
+                for (int i = 0; i < batch.size(); i++) {
+                    keys[i] = cache.key(format(), work, batch.get(i));
+                    parts[i] = cache.get(keys[i], ".pdf");
+                    metrics.addChapterCacheLookup(parts[i] != null);
+                    if (parts[i] == null) {
+                        misses.add(batch.get(i));
+                    }
+                }
+                if (!misses.isEmpty()) {
+                    byte[][] rendered = renderChapters(work, misses);
+                    for (int i = 0, next = 0; i < batch.size(); i++) {
+                        if (parts[i] == null) {
+                            parts[i] = rendered[next++];
+                            cache.put(keys[i], ".pdf", parts[i]);
+                        }
+                    }
+                }
+                for (int i = 0; i < batch.size(); i++) {
+                    metrics.beginChapter();
+                    // 每章从新页开始，标题在该章第一页的顶部
+                    int firstPage = pdfDocument.getNumberOfPages() + 1;
+                    appendPages(pdfDocument, parts[i], images);
+                    toc.record(batch.get(i), firstPage, PageSize.A4.getHeight() - 50);
+                    metrics.addParagraphs(batch.get(i).paragraphCount());
+                    metrics.endChapter();
+                }
+                metrics.sampleHeap();
+            }
+            cache.trim();
+            if (work.imageCount > 0) {
+                ImagePipeline.trim();
+            }
+            toc.insert(FontFallbackChain.shared().forDocument(), frontPages);
+            metrics.end(ExportMetrics.PHASE_LAYOUT);
+
+            metrics.begin(ExportMetrics.PHASE_SERIALIZATION);
+            closed = true;
+            pdfDocument.close();
+            metrics.end(ExportMetrics.PHASE_SERIALIZATION);
+        } finally {
+            if (!closed) {
+                pdfDocument.close();
+            }
+        }
+    }
+
+    /**
+     * 从 start 开始的一批章节的终点（不含）：最多 CACHE_BATCH 章，插图不超过 CACHE_BATCH_IMAGES 张（至少一章）
+     */
+    private static int batchEnd(List<ExportWork.Chapter> chapters, int start) {
+        int end = start;
+        int images = 0;
+        while (end < chapters.size() && end - start < CACHE_BATCH
+            && (end == start || images + chapters.get(end).imageCount <= CACHE_BATCH_IMAGES)) {
+            images += chapters.get(end).imageCount;
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * 把标题和简介单独排版成PDF
+     */
+    private static byte[] renderFrontMatter(ExportWork work) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        Document document = new Document(new PdfDocument(new PdfWriter(buffer)));
+        try {
+            document.setMargins(50, 50, 50, 50);
+            addFrontMatter(document, FontFallbackChain.shared().forDocument(), work, new HashMap<>());
+        } finally {
+            document.close();
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * 把未命中缓存的章节排版成各自独立的PDF
+     *
+     * 创建中文字体要解析CMap，每章单独建文档太慢；先把这些章节排在同一个文档里（每章从新页开始），
+     * 记录每章的页码范围，再按范围复制成单章的PDF。
+     */
+    private static byte[][] renderChapters(ExportWork work, List<ExportWork.Chapter> chapters) throws Exception {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PdfDocument scratch = new PdfDocument(new PdfWriter(buffer));
+        Document document = new Document(scratch);
+        int[] lastPages = new int[chapters.size()];
+        try {
+            document.setMargins(50, 50, 50, 50);
+            FontFallbackChain.Fonts fonts = FontFallbackChain.shared().forDocument();
+            Map<String, PdfImageXObject> images = new HashMap<>();
+            for (int i = 0; i < chapters.size(); i++) {
+                if (i > 0) {
+                    document.add(new AreaBreak(AreaBreakType.NEXT_PAGE));
+                }
+                addChapter(document, fonts, work, chapters.get(i), null, images);
+                lastPages[i] = scratch.getNumberOfPages();
+            }
+        } finally {
+            document.close();
+        }
+
+        byte[][] parts = new byte[chapters.size()][];
+        PdfDocument source = new PdfDocument(new PdfReader(new ByteArrayInputStream(buffer.toByteArray())));
+        try {
+            for (int i = 0; i < chapters.size(); i++) {
+                int firstPage = i == 0 ? 1 : lastPages[i - 1] + 1;
+                ByteArrayOutputStream part = new ByteArrayOutputStream();
+                PdfDocument partDocument = new PdfDocument(new PdfWriter(part));
+                source.copyPagesTo(firstPage, lastPages[i], partDocument);
+                partDocument.close();
+                parts[i] = part.toByteArray();
+            }
+        } finally {
+            source.close();
+        }
+        return parts;
+    }
+
+    /**
+     * 复制一个部分的全部页面到结果文档，复制后立即写出页面和其中的新图像，不在内存中累积
+     *
+     * @param images 结果文档中已有的图像，按内容哈希索引；复制来的重复图像改为引用已有的一份
+     */
+    private static void appendPages(PdfDocument target, byte[] part, Map<String, PdfIndirectReference> images) throws Exception {
+        PdfDocument source = new PdfDocument(new PdfReader(new ByteArrayInputStream(part)));
+        try {
+            int first = target.getNumberOfPages() + 1;
+            source.copyPagesTo(1, source.getNumberOfPages(), target);
+            for (int number = first; number <= target.getNumberOfPages(); number++) {
+                PdfPage page = target.getPage(number);
+                List<PdfStream> added = new ArrayList<>();
+                PdfDictionary xObjects = page.getResources().getResource(PdfName.XObject);
+                if (xObjects != null) {
+                    for (PdfName name : new ArrayList<>(xObjects.keySet())) {
+                        PdfStream stream = xObjects.getAsStream(name);
+                        PdfString hash = stream != null ? stream.getAsString(IMAGE_HASH) : null;
+                        if (hash == null) {
+                            continue;
+                        }
+                        PdfIndirectReference existing = images.get(hash.getValue());
+                        PdfIndirectReference copied = stream.getIndirectReference();
+                        if (existing == null) {
+                            images.put(hash.getValue(), copied);
+                            added.add(stream);
+                        } else if (existing != copied) {
+                            xObjects.put(name, existing);
+                            // 重复的一份不再写出；它仍登记在交叉引用表中，先清空数据才能被回收
+                            stream.setData(new byte[0]);
+                            copied.setFree();
+                        }
+                    }
+                }
+                page.flush();
+                for (PdfStream stream : added) {
+                    stream.flush();
+                }
+            }
+        } finally {
+            source.close();
+        }
+    }
+
+    /**
+     * 封面（单独一页）、标题和简介
+     */
+    private static void addFrontMatter(Document document, FontFallbackChain.Fonts fonts, ExportWork work,
+                                       Map<String, PdfImageXObject> images) {
+        if (work.cover != null) {
+            try {
+                if (addImage(document, images, work, work.cover)) {
+                    document.add(new AreaBreak(AreaBreakType.NEXT_PAGE));
+                }
+            } catch (Exception e) {
+                ExportLog.w(TAG, "Failed to add cover, continuing", e);
+            }
+        }
+        PdfFont chineseFont = fonts.primary();
+        // 添加标题 - 根据格式要求：宋体二号，加粗，居中
+        try {
+            Paragraph titlePara = fonts.paragraph(work.title);
+            if (chineseFont != null) {
+                titlePara.setFont(chineseFont);
+            }
+            titlePara.setFontSize(work.titleSize)
+                .setBold()
+                .setTextAlignment(TextAlignment.CENTER)
+                .setMarginBottom(20);
+            document.add(titlePara);
+        } catch (Exception e) {
+            ExportLog.w(TAG, "Failed to add title paragraph, continuing", e);
+        }
+
+        // 添加简介（如果存在）- 根据格式要求：宋体三号，加粗，靠左
+        if (!work.description.trim().isEmpty()) {
+            try {
+                Paragraph descTitlePara = fonts.paragraph("简介");
+                if (chineseFont != null) {
+                    descTitlePara.setFont(chineseFont);
+                }
+                descTitlePara.setFontSize(work.headingSize)
+                    .setBold()
+                    .setTextAlignment(TextAlignment.LEFT)
+                    .setMarginTop(15)
+                    .setMarginBottom(8);
+                document.add(descTitlePara);
+
+                // 简介内容 - 根据格式要求：宋体四号
+                Paragraph descPara = fonts.paragraph(work.description);
+                if (chineseFont != null) {
+                    descPara.setFont(chineseFont);
+                }
+                descPara.setFontSize(work.bodySize)
+                    .setTextAlignment(TextAlignment.LEFT)
+                    .setMarginBottom(15)
+                    .setMultipliedLeading(work.lineSpacing);
+                document.add(descPara);
+            } catch (Exception e) {
+                ExportLog.w(TAG, "Failed to add description, continuing", e);
+            }
+        }
+    }
+
+    /**
+     * 章节标题和正文，失败时记录日志并跳过该章
+     *
+     * @param toc    不为null时记录章节标题的页码和高度
+     * @param images 本文档中已写出的图像对象，按内容哈希索引
+     */
+    private static boolean addChapter(Document document, FontFallbackChain.Fonts fonts, ExportWork work, ExportWork.Chapter chapter,
+                                      PdfTableOfContents toc, Map<String, PdfImageXObject> images) {
+        PdfFont chineseFont = fonts.primary();
+        try {
+            // 章节标题 - 根据格式要求：宋体三号，加粗，靠左
+            Paragraph chapterTitlePara = fonts.paragraph(chapter.heading);
+            if (chineseFont != null) {
+                chapterTitlePara.setFont(chineseFont);
+            }
+            chapterTitlePara.setFontSize(work.headingSize)
+                .setBold()
+                .setTextAlignment(TextAlignment.LEFT)
+                .setMarginTop(15)
+                .setMarginBottom(10);
+            LayoutArea area = document.getRenderer().getCurrentArea();
+            int page = area.getPageNumber();
+            float top = area.getBBox().getTop();
+            document.add(chapterTitlePara);
+            if (toc != null) {
+                // 当前页放不下标题时，标题在下一页的顶部
+                LayoutArea placed = document.getRenderer().getCurrentArea();
+                if (placed.getPageNumber() != page) {
+                    page = placed.getPageNumber();
+                    top = document.getPdfDocument().getDefaultPageSize().getTop() - document.getTopMargin();
+                }
+                toc.record(chapter, page, top);
+            }
+
+            // 章节内容 - 根据格式要求：宋体四号，1.5倍行距；按中文排版规则预先折行
+            GlyphMetrics.Sized metrics = GlyphMetrics.body().atSize(work.bodySize);
+            float lineWidth = document.getPdfDocument().getDefaultPageSize().getWidth()
+                - document.getLeftMargin() - document.getRightMargin();
+            for (int i = 0; i < chapter.paragraphCount(); i++) {
+                if (chapter.isImage(i)) {
+                    addImage(document, images, work,
+                        ImagePipeline.parse(chapter.content, chapter.start(i), chapter.end(i)).path);
+                    continue;
+                }
+                Paragraph contentPara = bodyParagraph(fonts, chapter, i, metrics, lineWidth);
+                if (chineseFont != null) {
+                    contentPara.setFont(chineseFont);
+                }
+                contentPara.setFontSize(work.bodySize)
+                    .setTextAlignment(TextAlignment.LEFT)
+                    .setMarginBottom(5)
+                    .setMultipliedLeading(work.lineSpacing);
+                document.add(contentPara);
+            }
+            return true;
+        } catch (Exception e) {
+            ExportLog.w(TAG, "Failed to add chapter " + (chapter.index + 1) + ", continuing", e);
+            return false;
+        }
+    }
+
+    /**
+     * 居中的插图，宽度不超过版心；同一张图在文档中只写出一次
+     *
+     * @return 图片不存在或无法处理时返回 false
+     */
+    private static boolean addImage(Document document, Map<String, PdfImageXObject> images, ExportWork work, String path)
+        throws IOException {
+        ImagePipeline.Image image = ImagePipeline.load(path, work.imageDpi);
+        if (image == null) {
+            return false;
+        }
+        PdfImageXObject xObject = images.get(image.hash);
+        boolean first = xObject == null;
+        if (first) {
+            xObject = new PdfImageXObject(ImageDataFactory.create(Files.readAllBytes(image.file.toPath())));
+            xObject.put(IMAGE_HASH, new PdfString(image.hash));
+            // 先成为间接对象，写出后其他页面仍可以引用
+            xObject.makeIndirect(document.getPdfDocument());
+            images.put(image.hash, xObject);
+        }
+        float lineWidth = document.getPdfDocument().getDefaultPageSize().getWidth()
+            - document.getLeftMargin() - document.getRightMargin();
+        float[] size = image.fit(work.imageDpi, lineWidth, MAX_IMAGE_HEIGHT);
+        document.add(new Image(xObject)
+            .setWidth(size[0])
+            .setHeight(size[1])
+            .setHorizontalAlignment(HorizontalAlignment.CENTER)
+            .setMarginBottom(5));
+        if (first) {
+            xObject.flush();
+        }
+        return true;
+    }
+
+    /**
+     * 正文段落：按 CjkLineBreaker 的结果在行间插入硬换行，需要挤压的标点单独作为一个 Text，用负的字间距收回空白；
+     * 文字按字体回退链分段
+     */
+    private static Paragraph bodyParagraph(FontFallbackChain.Fonts fonts, ExportWork.Chapter chapter, int index,
+                                           GlyphMetrics.Sized metrics, float lineWidth) {
+        String text = chapter.content;
+        CjkLineBreaker.Lines lines = CjkLineBreaker.breakLines(text, chapter.start(index), chapter.end(index), metrics, lineWidth);
+        Paragraph paragraph = new Paragraph();
+        FontFallbackChain.Runs runs = fonts.runs(paragraph);
+        int squeeze = 0;
+        for (int line = 0; line < lines.count(); line++) {
+            int from = lines.start(line);
+            int to = lines.end(line);
+            while (squeeze < lines.squeezeCount() && lines.squeezeAt(squeeze) < to) {
+                int at = lines.squeezeAt(squeeze);
+                runs.append(text, from, at);
+                runs.appendSpaced(text.charAt(at), -lines.squeezeBy(squeeze));
+                from = at + 1;
+                squeeze++;
+            }
+            runs.append(text, from, to);
+            if (line + 1 < lines.count()) {
+                runs.newLine();
+            }
+        }
+        runs.finish();
+        return paragraph;
+    }
+}
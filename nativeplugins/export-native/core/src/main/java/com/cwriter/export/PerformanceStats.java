@@ -0,0 +1,334 @@
+package com.cwriter.export;
+
+import com.alibaba.fastjson.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 导出/导入性能统计 - 按操作和格式汇总的滚动直方图
+ *
+ * 记录路径只做原子计数，不分配对象、不加锁，可以在生产环境常开；
+ * 分位数（p50/p95/p99）在读取时由桶计数计算。
+ */
+final class PerformanceStats {
+
+    static final int OP_EXPORT_PDF = 0;
+    static final int OP_EXPORT_DOCX = 1;
+    static final int OP_IMPORT_DOCX = 2;
+    static final int OP_EXPORT_TXT = 3;
+    static final int OP_EXPORT_EPUB = 4;
+
+    private static final String[] OP_NAMES = {
+        "export.pdf", "export.docx", "import.docx", "export.txt", "export.epub"
+    };
+
+    static final int ERROR_OUT_OF_MEMORY = 0;
+    static final int ERROR_IO = 1;
+    static final int ERROR_PERMISSION = 2;
+    static final int ERROR_INVALID_ARGUMENT = 3;
+    static final int ERROR_LINKAGE = 4;
+    static final int ERROR_OTHER = 5;
+
+    private static final String[] ERROR_NAMES = {
+        "outOfMemory", "io", "permission", "invalidArgument", "linkage", "other"
+    };
+
+    /** exportToPDFSync 从 ExportUtils 降级到 doExportPDF */
+    static final int FALLBACK_PDF_UTILS = 0;
+    /** exportToDOCXSync 从 ExportUtils 降级到 doExportDOCX */
+    static final int FALLBACK_DOCX_UTILS = 1;
+    /** STSong-Light 加载失败，降级到西文字体 */
+    static final int FALLBACK_FONT = 2;
+    /** 内存不足，DOCX从POI渲染降级到流式渲染 */
+    static final int FALLBACK_STREAMING = 3;
+
+    private static final String[] FALLBACK_NAMES = {
+        "pdfUtilsToModule", "docxUtilsToModule", "font", "streaming"
+    };
+
+    /** 滚动窗口长度：统计覆盖最近一到两个窗口 */
+    static final long WINDOW_NANOS = 10L * 60 * 1000 * 1000 * 1000;
+
+    private static final int OP_COUNT = OP_NAMES.length;
+
+    private static final RollingHistogram[] LATENCY_MICROS = newHistograms();
+    private static final RollingHistogram[] CHARS_PER_SECOND = newHistograms();
+    private static final RollingHistogram[] BYTES_PER_SECOND = newHistograms();
+    private static final AtomicLongArray SUCCESSES = new AtomicLongArray(OP_COUNT);
+    private static final AtomicLongArray FAILURES = new AtomicLongArray(OP_COUNT * ERROR_NAMES.length);
+    private static final AtomicLongArray FALLBACKS = new AtomicLongArray(FALLBACK_NAMES.length);
+    private static final AtomicLong SINCE = new AtomicLong(System.currentTimeMillis());
+
+    private PerformanceStats() {
+    }
+
+    private static RollingHistogram[] newHistograms() {
+        RollingHistogram[] histograms = new RollingHistogram[OP_NAMES.length];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new RollingHistogram();
+        }
+        return histograms;
+    }
+
+    /**
+     * 记录一次成功的操作，耗时从metrics创建时算起
+     */
+    static void recordSuccess(int op, ExportMetrics metrics) {
+        long now = System.nanoTime();
+        long elapsedNanos = Math.max(1, now - metrics.startNanos());
+        SUCCESSES.incrementAndGet(op);
+        LATENCY_MICROS[op].record(now, elapsedNanos / 1000);
+        long bytes = Math.max(metrics.bytesWritten(), metrics.bytesRead());
+        CHARS_PER_SECOND[op].record(now, metrics.charsProcessed() * 1000000000L / elapsedNanos);
+        BYTES_PER_SECOND[op].record(now, bytes * 1000000000L / elapsedNanos);
+        ExportTrace.record(ExportTrace.LEVEL_INFO, ExportTrace.EVENT_END, metrics.jobId(), op, elapsedNanos / 1000);
+        ExportTrace.record(ExportTrace.LEVEL_DEBUG, ExportTrace.EVENT_BYTES, metrics.jobId(), op, bytes);
+    }
+
+    /**
+     * 记录一次失败的操作，按异常类型归类
+     */
+    static void recordFailure(int op, Throwable error) {
+        recordFailure(op, classify(error));
+    }
+
+    /**
+     * 记录一次失败的操作，直接指定错误类别
+     */
+    static void recordFailure(int op, int errorClass) {
+        FAILURES.incrementAndGet(op * ERROR_NAMES.length + errorClass);
+        ExportTrace.record(ExportTrace.LEVEL_ERROR, ExportTrace.EVENT_FAIL, 0, op, errorClass);
+    }
+
+    /**
+     * 格式名对应的导出操作，未知格式返回-1
+     */
+    static int exportOp(String format) {
+        for (int op = 0; op < OP_COUNT; op++) {
+            if (OP_NAMES[op].equals("export." + format)) {
+                return op;
+            }
+        }
+        return -1;
+    }
+
+    static void recordFallback(int fallback) {
+        FALLBACKS.incrementAndGet(fallback);
+        ExportTrace.record(ExportTrace.LEVEL_INFO, ExportTrace.EVENT_FALLBACK, 0, fallback, 0);
+    }
+
+    static int classify(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof OutOfMemoryError || t instanceof MemoryAdmission.InsufficientMemoryException) {
+                return ERROR_OUT_OF_MEMORY;
+            }
+            if (t instanceof SecurityException) {
+                return ERROR_PERMISSION;
+            }
+            if (t instanceof java.io.IOException) {
+                return ERROR_IO;
+            }
+            if (t instanceof IllegalArgumentException || t instanceof NullPointerException) {
+                return ERROR_INVALID_ARGUMENT;
+            }
+            if (t instanceof LinkageError) {
+                return ERROR_LINKAGE;
+            }
+            if (t.getCause() == t) {
+                break;
+            }
+        }
+        return ERROR_OTHER;
+    }
+
+    /**
+     * 导出统计快照
+     */
+    static JSONObject snapshot() {
+        long now = System.nanoTime();
+        JSONObject operations = new JSONObject();
+        for (int op = 0; op < OP_COUNT; op++) {
+            JSONObject failures = new JSONObject();
+            long failureTotal = 0;
+            for (int e = 0; e < ERROR_NAMES.length; e++) {
+                long count = FAILURES.get(op * ERROR_NAMES.length + e);
+                if (count > 0) {
+                    failures.put(ERROR_NAMES[e], count);
+                    failureTotal += count;
+                }
+            }
+            long successes = SUCCESSES.get(op);
+            if (successes == 0 && failureTotal == 0) {
+                continue;
+            }
+            JSONObject stats = new JSONObject();
+            stats.put("successes", successes);
+            stats.put("failures", failureTotal);
+            stats.put("failuresByClass", failures);
+            stats.put("latencyMs", LATENCY_MICROS[op].summary(now, 1000.0));
+            stats.put("charsPerSecond", CHARS_PER_SECOND[op].summary(now, 1.0));
+            stats.put("bytesPerSecond", BYTES_PER_SECOND[op].summary(now, 1.0));
+            operations.put(OP_NAMES[op], stats);
+        }
+
+        JSONObject fallbacks = new JSONObject();
+        for (int i = 0; i < FALLBACK_NAMES.length; i++) {
+            fallbacks.put(FALLBACK_NAMES[i], FALLBACKS.get(i));
+        }
+
+        JSONObject result = new JSONObject();
+        result.put("since", SINCE.get());
+        result.put("windowSeconds", WINDOW_NANOS / 1000000000L);
+        result.put("operations", operations);
+        result.put("fallbacks", fallbacks);
+        return result;
+    }
+
+    /**
+     * 某操作最近窗口内的吞吐量中位数（字符/秒），没有样本时返回0
+     */
+    static long medianCharsPerSecond(int op) {
+        return CHARS_PER_SECOND[op].percentile(System.nanoTime(), 0.50);
+    }
+
+    static void reset() {
+        for (int op = 0; op < OP_COUNT; op++) {
+            LATENCY_MICROS[op].clear();
+            CHARS_PER_SECOND[op].clear();
+            BYTES_PER_SECOND[op].clear();
+            SUCCESSES.set(op, 0);
+        }
+        for (int i = 0; i < FAILURES.length(); i++) {
+            FAILURES.set(i, 0);
+        }
+        for (int i = 0; i < FALLBACKS.length(); i++) {
+            FALLBACKS.set(i, 0);
+        }
+        SINCE.set(System.currentTimeMillis());
+    }
+
+    /**
+     * 两个窗口轮换的对数直方图：每个2的幂区间再分8个子桶，相对误差约12.5%
+     */
+    static final class RollingHistogram {
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+        private final AtomicLongArray[] counts = {new AtomicLongArray(BUCKETS), new AtomicLongArray(BUCKETS)};
+        private final AtomicLong[] maxima = {new AtomicLong(), new AtomicLong()};
+        private final AtomicLong[] epochs = {new AtomicLong(-1), new AtomicLong(-1)};
+
+        void record(long nowNanos, long value) {
+            if (value < 0) {
+                value = 0;
+            }
+            long epoch = nowNanos / WINDOW_NANOS;
+            int slot = (int) (epoch & 1);
+            long seen = epochs[slot].get();
+            if (seen != epoch && epochs[slot].compareAndSet(seen, epoch)) {
+                // 该窗口已过期，由抢到CAS的线程清空后复用
+                AtomicLongArray bucketCounts = counts[slot];
+                for (int i = 0; i < BUCKETS; i++) {
+                    bucketCounts.set(i, 0);
+                }
+                maxima[slot].set(0);
+            }
+            counts[slot].incrementAndGet(bucketIndex(value));
+            AtomicLong max = maxima[slot];
+            long current;
+            while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+                // 重试直到更新成功或已有更大的值
+            }
+        }
+
+        long percentile(long nowNanos, double quantile) {
+            long epoch = nowNanos / WINDOW_NANOS;
+            long total = 0;
+            for (int slot = 0; slot < 2; slot++) {
+                if (isLive(slot, epoch)) {
+                    for (int i = 0; i < BUCKETS; i++) {
+                        total += counts[slot].get(i);
+                    }
+                }
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                for (int slot = 0; slot < 2; slot++) {
+                    if (isLive(slot, epoch)) {
+                        seen += counts[slot].get(i);
+                    }
+                }
+                if (seen >= rank) {
+                    return bucketUpperBound(i);
+                }
+            }
+            return bucketUpperBound(BUCKETS - 1);
+        }
+
+        JSONObject summary(long nowNanos, double divisor) {
+            long epoch = nowNanos / WINDOW_NANOS;
+            long count = 0;
+            long max = 0;
+            for (int slot = 0; slot < 2; slot++) {
+                if (isLive(slot, epoch)) {
+                    for (int i = 0; i < BUCKETS; i++) {
+                        count += counts[slot].get(i);
+                    }
+                    max = Math.max(max, maxima[slot].get());
+                }
+            }
+            JSONObject json = new JSONObject();
+            json.put("count", count);
+            // 桶上界可能超过实际最大值，分位数不超过max
+            json.put("p50", round(Math.min(percentile(nowNanos, 0.50), max) / divisor));
+            json.put("p95", round(Math.min(percentile(nowNanos, 0.95), max) / divisor));
+            json.put("p99", round(Math.min(percentile(nowNanos, 0.99), max) / divisor));
+            json.put("max", round(max / divisor));
+            return json;
+        }
+
+        void clear() {
+            for (int slot = 0; slot < 2; slot++) {
+                epochs[slot].set(-1);
+                for (int i = 0; i < BUCKETS; i++) {
+                    counts[slot].set(i, 0);
+                }
+                maxima[slot].set(0);
+            }
+        }
+
+        private boolean isLive(int slot, long epoch) {
+            long slotEpoch = epochs[slot].get();
+            return slotEpoch == epoch || slotEpoch == epoch - 1;
+        }
+
+        private static int bucketIndex(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int magnitude = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+        }
+
+        private static long bucketUpperBound(int index) {
+            if (index < SUB_BUCKETS) {
+                return index;
+            }
+            int magnitude = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+            int sub = index % SUB_BUCKETS;
+            long base = (long) (SUB_BUCKETS + sub) << (magnitude - SUB_BUCKET_BITS);
+            return base + (1L << (magnitude - SUB_BUCKET_BITS)) - 1;
+        }
+
+        private static double round(double value) {
+            return Math.round(value * 100) / 100.0;
+        }
+    }
+}
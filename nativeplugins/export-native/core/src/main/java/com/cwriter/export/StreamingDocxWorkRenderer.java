@@ -0,0 +1,365 @@
+package com.cwriter.export;
+
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 流式DOCX渲染器 - 不构建POI文档对象，边遍历章节边把 word/document.xml 写进zip
+ *
+ * 内存占用与作品大小无关（只有压缩器和写缓冲），用于 MemoryAdmission 判断POI渲染放不下时的降级路径。
+ * 段落格式与 DocxWorkRenderer 相同，生成的文件可以被 DocxWorkParser 原样导入。
+ * 配置了 ChapterRenderCache 时，每章的XML片段按内容哈希缓存，未修改的章节直接写入缓存的片段。
+ * 封面和插图（ImagePipeline）在正文中写成内嵌图片，关系ID和文件名取自图片的内容哈希（缓存的片段因此仍然有效），
+ * document.xml 写完后每张不同的图片从处理后的文件复制一份到 word/media，不经过内存。
+ * 包内的其他部件（word/settings.xml、docProps/app.xml、docProps/core.xml）与POI新建文档时写出的相同，
+ * 两条路径导出的文件只有 document.xml 的写法不同。
+ */
+final class StreamingDocxWorkRenderer implements WorkRenderer {
+
+    private static final String TAG = "StreamingDocxWorkRenderer";
+
+    private static final String CONTENT_TYPES = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+        + "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+        + "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+        + "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+        + "<Default Extension=\"jpeg\" ContentType=\"image/jpeg\"/>"
+        + "<Default Extension=\"png\" ContentType=\"image/png\"/>"
+        + "<Override PartName=\"/docProps/app.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.extended-properties+xml\"/>"
+        + "<Override PartName=\"/docProps/core.xml\" ContentType=\"application/vnd.openxmlformats-package.core-properties+xml\"/>"
+        + "<Override PartName=\"/word/document.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.wordprocessingml.document.main+xml\"/>"
+        + "<Override PartName=\"/word/settings.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.wordprocessingml.settings+xml\"/>"
+        + "</Types>";
+
+    private static final String PACKAGE_RELS = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+        + "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+        + "<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/officeDocument\" Target=\"word/document.xml\"/>"
+        + "<Relationship Id=\"rId2\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/extended-properties\" Target=\"docProps/app.xml\"/>"
+        + "<Relationship Id=\"rId3\" Type=\"http://schemas.openxmlformats.org/package/2006/relationships/metadata/core-properties\" Target=\"docProps/core.xml\"/>"
+        + "</Relationships>";
+
+    private static final String APP_PROPERTIES = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+        + "<Properties xmlns=\"http://schemas.openxmlformats.org/officeDocument/2006/extended-properties\"><Application>Apache POI</Application></Properties>";
+
+    private static final String SETTINGS = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+        + "<w:settings xmlns:w=\"http://schemas.openxmlformats.org/wordprocessingml/2006/main\"/>";
+
+    private static final String DOCUMENT_START = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+        + "<w:document xmlns:w=\"http://schemas.openxmlformats.org/wordprocessingml/2006/main\""
+        + " xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\""
+        + " xmlns:wp=\"http://schemas.openxmlformats.org/drawingml/2006/wordprocessingDrawing\"><w:body>";
+
+    private static final String DOCUMENT_END = "</w:body></w:document>";
+
+    /** 与 DocxWorkRenderer 相同的字体（宋体），写成 rFonts 的四个属性 */
+    private static final String FONTS = "<w:rFonts w:ascii=\"宋体\" w:hAnsi=\"宋体\" w:cs=\"宋体\" w:eastAsia=\"宋体\"/>";
+
+    private static final String IMAGE_RELATIONSHIP = "http://schemas.openxmlformats.org/officeDocument/2006/relationships/image";
+
+    private static final String SETTINGS_RELATIONSHIP = "http://schemas.openxmlformats.org/officeDocument/2006/relationships/settings";
+
+    /** 插图的最大显示尺寸（磅）：Word 默认页面（A4 或 Letter）和页边距下的版心 */
+    private static final float MAX_IMAGE_WIDTH = 415f;
+    private static final float MAX_IMAGE_HEIGHT = 640f;
+
+    private static final int EMU_PER_POINT = 12700;
+
+    @Override
+    public String format() {
+        return "docx";
+    }
+
+    @Override
+    public String extension() {
+        return ".docx";
+    }
+
+    @Override
+    public void render(ExportWork work, OutputStream out, ExportMetrics metrics) throws Exception {
+        out = metrics.countingStream(out);
+        metrics.addChars(work.charCount);
+        ExportTrace.record(ExportTrace.LEVEL_INFO, ExportTrace.EVENT_BEGIN, metrics.jobId(),
+            PerformanceStats.exportOp(format()), work.charCount);
+        ExportTrace.record(ExportTrace.LEVEL_DEBUG, ExportTrace.EVENT_OPTIONS, metrics.jobId(),
+            work.chapters.size(), work.paragraphCount);
+        ZipOutputStream zip = new ZipOutputStream(out);
+        try {
+            metrics.begin(ExportMetrics.PHASE_DOCUMENT_CREATE);
+            writeEntry(zip, "[Content_Types].xml", CONTENT_TYPES);
+            writeEntry(zip, "_rels/.rels", PACKAGE_RELS);
+            writeEntry(zip, "docProps/app.xml", APP_PROPERTIES);
+            writeEntry(zip, "docProps/core.xml", coreProperties());
+            zip.putNextEntry(new ZipEntry("word/document.xml"));
+            // 不关闭writer，否则会连带关闭zip
+            Writer writer = new BufferedWriter(new OutputStreamWriter(zip, StandardCharsets.UTF_8), 64 * 1024);
+            writer.write(DOCUMENT_START);
+            metrics.end(ExportMetrics.PHASE_DOCUMENT_CREATE);
+
+            // 排版和序列化在同一遍中完成，全部计入 layout
+            metrics.begin(ExportMetrics.PHASE_LAYOUT);
+            // 本文档用到的图片，按内容哈希去重
+            Map<String, ImagePipeline.Image> images = new LinkedHashMap<>();
+            if (work.cover != null) {
+                ImagePipeline.Image cover = ImagePipeline.load(work.cover, work.imageDpi);
+                if (cover != null) {
+                    images.put(cover.hash, cover);
+                    image(writer, work, cover, "封面", 1);
+                    writer.write("<w:p><w:r><w:br w:type=\"page\"/></w:r></w:p>");
+                }
+            }
+            // 标题 - 宋体二号，加粗，居中
+            paragraph(writer, "<w:spacing w:after=\"200\"/><w:jc w:val=\"center\"/>", true, work.titleSize, work.title);
+
+            // 简介 - 标题宋体三号加粗，内容宋体四号
+            if (!work.description.trim().isEmpty()) {
+                paragraph(writer, "<w:spacing w:before=\"100\" w:after=\"80\"/><w:jc w:val=\"left\"/>", true, work.headingSize, "简介");
+                paragraph(writer, "<w:spacing w:after=\"150\"/><w:jc w:val=\"left\"/>", false, work.bodySize, work.description);
+            }
+
+            String headingSpacing = "<w:spacing w:before=\"150\" w:after=\"100\"/><w:jc w:val=\"left\"/>";
+            String bodySpacing = "<w:spacing w:after=\"150\" w:line=\"" + Math.round(work.lineSpacing * 240)
+                + "\" w:lineRule=\"auto\"/><w:jc w:val=\"left\"/>";
+            ChapterRenderCache cache = ChapterRenderCache.forWork(work);
+            for (ExportWork.Chapter chapter : work.chapters) {
+                metrics.beginChapter();
+                if (cache == null) {
+                    chapter(writer, work, chapter, headingSpacing, bodySpacing, images);
+                } else {
+                    String key = cache.key(format(), work, chapter);
+                    byte[] fragment = cache.get(key, ".xml");
+                    metrics.addChapterCacheLookup(fragment != null);
+                    if (fragment == null) {
+                        StringWriter part = new StringWriter();
+                        chapter(part, work, chapter, headingSpacing, bodySpacing, images);
+                        fragment = part.toString().getBytes(StandardCharsets.UTF_8);
+                        cache.put(key, ".xml", fragment);
+                    } else if (chapter.imageCount > 0) {
+                        // 缓存的片段中已经写好了图片引用，只需要收集图片文件
+                        collectImages(work, chapter, images);
+                    }
+                    writer.flush();
+                    zip.write(fragment);
+                }
+                metrics.addParagraphs(chapter.paragraphCount());
+                metrics.endChapter();
+            }
+            if (cache != null) {
+                cache.trim();
+            }
+            if (work.imageCount > 0) {
+                ImagePipeline.trim();
+            }
+            writer.write(DOCUMENT_END);
+            writer.flush();
+            metrics.end(ExportMetrics.PHASE_LAYOUT);
+
+            metrics.begin(ExportMetrics.PHASE_SERIALIZATION);
+            zip.closeEntry();
+            writeRelationships(zip, images);
+            writeEntry(zip, "word/settings.xml", SETTINGS);
+            zip.finish();
+            metrics.end(ExportMetrics.PHASE_SERIALIZATION);
+            out.flush();
+        } finally {
+            try {
+                zip.close();
+            } catch (Exception e) {
+                ExportLog.w(TAG, "Error closing output stream", e);
+            }
+        }
+    }
+
+    /**
+     * 与POI相同的核心属性：创建时间（UTC）和创建者
+     */
+    private static String coreProperties() {
+        SimpleDateFormat created = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.ROOT);
+        created.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>"
+            + "<cp:coreProperties xmlns:cp=\"http://schemas.openxmlformats.org/package/2006/metadata/core-properties\""
+            + " xmlns:dc=\"http://purl.org/dc/elements/1.1/\" xmlns:dcterms=\"http://purl.org/dc/terms/\""
+            + " xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">"
+            + "<dcterms:created xsi:type=\"dcterms:W3CDTF\">" + created.format(new Date()) + "</dcterms:created>"
+            + "<dc:creator>Apache POI</dc:creator></cp:coreProperties>";
+    }
+
+    private static void writeEntry(ZipOutputStream zip, String name, String content) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content.getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+    }
+
+    private static void chapter(Writer writer, ExportWork work, ExportWork.Chapter chapter,
+                                String headingSpacing, String bodySpacing, Map<String, ImagePipeline.Image> images) throws IOException {
+        paragraph(writer, headingSpacing, true, work.headingSize, chapter.heading);
+        for (int i = 0; i < chapter.paragraphCount(); i++) {
+            if (chapter.isImage(i)) {
+                ImagePipeline.Reference reference = ImagePipeline.parse(chapter.content, chapter.start(i), chapter.end(i));
+                ImagePipeline.Image image = ImagePipeline.load(reference.path, work.imageDpi);
+                if (image != null) {
+                    images.put(image.hash, image);
+                    image(writer, work, image, reference.alt, drawingId(chapter, i));
+                }
+                continue;
+            }
+            paragraph(writer, bodySpacing, false, work.bodySize, chapter.content, chapter.start(i), chapter.end(i));
+        }
+    }
+
+    private static void collectImages(ExportWork work, ExportWork.Chapter chapter, Map<String, ImagePipeline.Image> images) {
+        for (int i = 0; i < chapter.paragraphCount(); i++) {
+            if (chapter.isImage(i)) {
+                ImagePipeline.Image image = ImagePipeline.load(
+                    ImagePipeline.parse(chapter.content, chapter.start(i), chapter.end(i)).path, work.imageDpi);
+                if (image != null) {
+                    images.put(image.hash, image);
+                }
+            }
+        }
+    }
+
+    /**
+     * 图片在文档中的编号（wp:docPr 的 id）：只取决于章节标题和段落位置，缓存的片段中的编号仍然不重复；封面为1
+     */
+    private static int drawingId(ExportWork.Chapter chapter, int paragraph) {
+        int id = (chapter.heading.hashCode() * 31 + paragraph) & 0x7FFFFFFF;
+        return id < 2 ? id + 2 : id;
+    }
+
+    private static String relationshipId(ImagePipeline.Image image) {
+        return "rIdImg" + image.hash.substring(0, 16);
+    }
+
+    private static String mediaName(ImagePipeline.Image image) {
+        return "image-" + image.hash.substring(0, 16) + "." + image.type;
+    }
+
+    /**
+     * 居中的内嵌图片段落，尺寸与 PDF 相同（按分辨率换算），超出版心时等比缩小
+     */
+    private static void image(Writer writer, ExportWork work, ImagePipeline.Image image, String alt, int id) throws IOException {
+        float[] size = image.fit(work.imageDpi, MAX_IMAGE_WIDTH, MAX_IMAGE_HEIGHT);
+        String cx = Long.toString(Math.round(size[0] * EMU_PER_POINT));
+        String cy = Long.toString(Math.round(size[1] * EMU_PER_POINT));
+        writer.write("<w:p><w:pPr><w:spacing w:after=\"150\"/><w:jc w:val=\"center\"/></w:pPr><w:r><w:drawing>");
+        writer.write("<wp:inline distT=\"0\" distB=\"0\" distL=\"0\" distR=\"0\"><wp:extent cx=\"" + cx + "\" cy=\"" + cy + "\"/>");
+        writer.write("<wp:docPr id=\"" + id + "\" name=\"图片" + id + "\" descr=\"");
+        writeAttribute(writer, alt);
+        writer.write("\"/><wp:cNvGraphicFramePr><a:graphicFrameLocks xmlns:a=\"http://schemas.openxmlformats.org/drawingml/2006/main\" noChangeAspect=\"1\"/></wp:cNvGraphicFramePr>");
+        writer.write("<a:graphic xmlns:a=\"http://schemas.openxmlformats.org/drawingml/2006/main\">"
+            + "<a:graphicData uri=\"http://schemas.openxmlformats.org/drawingml/2006/picture\">"
+            + "<pic:pic xmlns:pic=\"http://schemas.openxmlformats.org/drawingml/2006/picture\">"
+            + "<pic:nvPicPr><pic:cNvPr id=\"0\" name=\"" + mediaName(image) + "\"/><pic:cNvPicPr/></pic:nvPicPr>"
+            + "<pic:blipFill><a:blip r:embed=\"" + relationshipId(image) + "\"/><a:stretch><a:fillRect/></a:stretch></pic:blipFill>"
+            + "<pic:spPr><a:xfrm><a:off x=\"0\" y=\"0\"/><a:ext cx=\"" + cx + "\" cy=\"" + cy + "\"/></a:xfrm>"
+            + "<a:prstGeom prst=\"rect\"><a:avLst/></a:prstGeom></pic:spPr></pic:pic></a:graphicData></a:graphic>");
+        writer.write("</wp:inline></w:drawing></w:r></w:p>");
+    }
+
+    /**
+     * 把图片文件复制到 word/media，并写出 document.xml 的关系文件（settings.xml 和各图片）；图片已经压缩过，不再压缩
+     */
+    private static void writeRelationships(ZipOutputStream zip, Map<String, ImagePipeline.Image> images) throws IOException {
+        zip.setLevel(Deflater.NO_COMPRESSION);
+        byte[] buffer = new byte[64 * 1024];
+        StringBuilder rels = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+            + "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+            + "<Relationship Id=\"rId1\" Type=\"" + SETTINGS_RELATIONSHIP + "\" Target=\"settings.xml\"/>");
+        for (ImagePipeline.Image image : images.values()) {
+            zip.putNextEntry(new ZipEntry("word/media/" + mediaName(image)));
+            try (InputStream in = new FileInputStream(image.file)) {
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    zip.write(buffer, 0, read);
+                }
+            }
+            zip.closeEntry();
+            rels.append("<Relationship Id=\"").append(relationshipId(image)).append("\" Type=\"").append(IMAGE_RELATIONSHIP)
+                .append("\" Target=\"media/").append(mediaName(image)).append("\"/>");
+        }
+        rels.append("</Relationships>");
+        zip.setLevel(Deflater.DEFAULT_COMPRESSION);
+        writeEntry(zip, "word/_rels/document.xml.rels", rels.toString());
+    }
+
+    /**
+     * 写出一个只有一个run的段落，属性与 DocxWorkRenderer 中POI生成的一致
+     */
+    private static void paragraph(Writer writer, String paragraphProperties, boolean bold, int fontSize, String text) throws IOException {
+        paragraph(writer, paragraphProperties, bold, fontSize, text, 0, text.length());
+    }
+
+    /**
+     * 同上，文字取 text 的 [start, end) 区间
+     */
+    private static void paragraph(Writer writer, String paragraphProperties, boolean bold, int fontSize,
+                                  String text, int start, int end) throws IOException {
+        writer.write("<w:p><w:pPr>");
+        writer.write(paragraphProperties);
+        writer.write("</w:pPr><w:r><w:rPr>");
+        if (bold) {
+            writer.write("<w:b w:val=\"on\"/>");
+        }
+        writer.write(FONTS);
+        writer.write("<w:sz w:val=\"");
+        writer.write(Integer.toString(fontSize * 2));
+        writer.write("\"/></w:rPr><w:t xml:space=\"preserve\">");
+        writeEscaped(writer, text, start, end);
+        writer.write("</w:t></w:r></w:p>");
+    }
+
+    /**
+     * 写出属性值：在 writeEscaped 的基础上转义双引号
+     */
+    private static void writeAttribute(Writer writer, String value) throws IOException {
+        int start = 0;
+        for (int i = value.indexOf('"'); i >= 0; i = value.indexOf('"', start)) {
+            writeEscaped(writer, value, start, i);
+            writer.write("&quot;");
+            start = i + 1;
+        }
+        writeEscaped(writer, value, start, value.length());
+    }
+
+    /**
+     * 转义XML特殊字符，并去掉XML 1.0中不允许出现的控制字符
+     */
+    private static void writeEscaped(Writer writer, String text, int start, int end) throws IOException {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            String replacement;
+            if (c == '<') {
+                replacement = "&lt;";
+            } else if (c == '>') {
+                replacement = "&gt;";
+            } else if (c == '&') {
+                replacement = "&amp;";
+            } else if (c < 0x20 && c != '\t') {
+                replacement = "";
+            } else if (c == 0xFFFE || c == 0xFFFF) {
+                replacement = "";
+            } else {
+                continue;
+            }
+            writer.write(text, start, i - start);
+            writer.write(replacement);
+            start = i + 1;
+        }
+        writer.write(text, start, end - start);
+    }
+}
@@ -0,0 +1,55 @@
+package com.cwriter.export;
+
+/**
+ * 系统跟踪区段 - 把导出/导入的各个阶段标记到 Perfetto/systrace 中
+ *
+ * 默认关闭，由 setSystemTraceEnabled 在运行时开启。实际的跟踪接口由平台提供：
+ * Android 上由 AndroidPlatform 接到 android.os.Trace，工作站上没有后端时为空操作。
+ * 区段名必须使用常量字符串，避免在渲染循环中拼接。
+ */
+final class SystemTrace {
+
+    static final String SECTION_CHAPTER = "cwriter:chapter";
+    static final String SECTION_URI_COPY = "cwriter:uriCopy";
+
+    /**
+     * 平台跟踪接口；cookie 为任务号，用来区分并行任务的异步区段
+     */
+    interface Backend {
+        void begin(String section, int cookie);
+
+        void end(String section, int cookie);
+    }
+
+    private static volatile boolean enabled;
+    private static volatile Backend backend;
+
+    private SystemTrace() {
+    }
+
+    static void setBackend(Backend newBackend) {
+        backend = newBackend;
+    }
+
+    static void setEnabled(boolean value) {
+        enabled = value;
+    }
+
+    static boolean isEnabled() {
+        return enabled;
+    }
+
+    static void begin(String section, long jobId) {
+        Backend current = backend;
+        if (enabled && current != null) {
+            current.begin(section, (int) jobId);
+        }
+    }
+
+    static void end(String section, long jobId) {
+        Backend current = backend;
+        if (enabled && current != null) {
+            current.end(section, (int) jobId);
+        }
+    }
+}
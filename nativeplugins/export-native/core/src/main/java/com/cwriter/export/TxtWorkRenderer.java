@@ -0,0 +1,180 @@
+package com.cwriter.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * TXT渲染器 - 纯文本，章节之间空一行
+ *
+ * 编码（format.encoding，默认 UTF-8，投稿平台常要求 GBK）、换行符（format.lineEnding）和段首缩进（format.indent）可选。
+ * 文字先复制到可复用的字符缓冲区，由 CharsetEncoder 编码进每个线程一个的输出缓冲区，写满后整块写入 FileChannel
+ * （AtomicFileSink），内存占用与作品大小无关。目标编码无法表示的字符（如GBK中的表情）写成“?”。
+ *
+ * 输出缓冲区用堆内存：编码器只有在输入和输出都有数组时才走快速路径，直接缓冲区要逐字节写入，实测慢一倍；
+ * FileChannel 写堆缓冲区时由JDK复制到每个线程缓存的直接缓冲区，不会每次分配。
+ */
+final class TxtWorkRenderer implements WorkRenderer {
+
+    private static final String TAG = "TxtWorkRenderer";
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    /** 编码输出缓冲区，渲染线程之间不共享，导出之间复用 */
+    private static final ThreadLocal<ByteBuffer> BUFFERS = ThreadLocal.withInitial(() -> ByteBuffer.allocate(BUFFER_SIZE));
+
+    @Override
+    public String format() {
+        return "txt";
+    }
+
+    @Override
+    public String extension() {
+        return ".txt";
+    }
+
+    @Override
+    public void render(ExportWork work, OutputStream out, ExportMetrics metrics) throws Exception {
+        Charset charset = Charset.forName(work.txtEncoding);
+        WritableByteChannel channel = metrics.countingChannel(out);
+        metrics.addChars(work.charCount);
+        ExportTrace.record(ExportTrace.LEVEL_INFO, ExportTrace.EVENT_BEGIN, metrics.jobId(),
+            PerformanceStats.exportOp(format()), work.charCount);
+        try {
+            ChannelEncoder encoder = new ChannelEncoder(channel, charset, BUFFERS.get());
+            String newLine = work.txtLineEnding;
+            metrics.begin(ExportMetrics.PHASE_LAYOUT);
+            encoder.write(work.title, 0, work.title.length());
+            encoder.write(newLine);
+            if (!work.description.trim().isEmpty()) {
+                encoder.write(newLine);
+                encoder.write("简介");
+                encoder.write(newLine);
+                // 简介按正文的规则分段，统一换行符和缩进
+                int[] bounds = ParagraphTokenizer.tokenize(work.description);
+                for (int i = 0; i < bounds.length; i += 2) {
+                    writeParagraph(encoder, work, work.description, bounds[i], bounds[i + 1]);
+                    encoder.write(newLine);
+                }
+            }
+            for (ExportWork.Chapter chapter : work.chapters) {
+                metrics.beginChapter();
+                encoder.write(newLine);
+                encoder.write(chapter.heading);
+                encoder.write(newLine);
+                for (int i = 0; i < chapter.paragraphCount(); i++) {
+                    writeParagraph(encoder, work, chapter.content, chapter.start(i), chapter.end(i));
+                    encoder.write(newLine);
+                }
+                metrics.addParagraphs(chapter.paragraphCount());
+                metrics.endChapter();
+            }
+            encoder.finish();
+            metrics.end(ExportMetrics.PHASE_LAYOUT);
+            if (encoder.unmappable > 0) {
+                ExportLog.w(TAG, encoder.unmappable + " 个字符无法用 " + charset.name() + " 表示，已替换为?");
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * 写一个段落：指定了 format.indent 时把原有的段首缩进换成统一的缩进，否则按原文写
+     */
+    private static void writeParagraph(ChannelEncoder encoder, ExportWork work, String text, int start, int end)
+            throws IOException {
+        if (work.txtIndent != null) {
+            encoder.write(work.txtIndent);
+            start = ParagraphTokenizer.skipIndent(text, start, end);
+        }
+        encoder.write(text, start, end);
+    }
+
+    /**
+     * 把字符串编码进输出缓冲区，缓冲区写满时写入通道
+     */
+    private static final class ChannelEncoder {
+        private final WritableByteChannel channel;
+        private final CharsetEncoder encoder;
+        private final byte[] replacement;
+        private final ByteBuffer bytes;
+        // 编码器对数组支持的 CharBuffer 走快速路径，String 包装成的 CharBuffer 要逐字符读取
+        private final char[] chars = new char[8 * 1024];
+        private final CharBuffer charBuffer = CharBuffer.wrap(chars);
+        int unmappable;
+
+        ChannelEncoder(WritableByteChannel channel, Charset charset, ByteBuffer bytes) {
+            this.channel = channel;
+            this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+            this.replacement = encoder.replacement();
+            this.bytes = bytes;
+            bytes.clear();
+        }
+
+        void write(String text) throws IOException {
+            write(text, 0, text.length());
+        }
+
+        void write(String text, int start, int end) throws IOException {
+            while (start < end) {
+                int count = Math.min(end - start, chars.length);
+                // 不把代理对拆到两块里
+                if (count < end - start && Character.isHighSurrogate(text.charAt(start + count - 1))) {
+                    count--;
+                }
+                text.getChars(start, start + count, chars, 0);
+                charBuffer.clear().limit(count);
+                encode(charBuffer);
+                start += count;
+            }
+        }
+
+        private void encode(CharBuffer in) throws IOException {
+            while (true) {
+                CoderResult result = encoder.encode(in, bytes, false);
+                if (result.isUnderflow()) {
+                    return;
+                }
+                if (result.isOverflow()) {
+                    drain();
+                    continue;
+                }
+                // 无法编码或不成对的代理：跳过这些字符，写入替换字节
+                in.position(in.position() + result.length());
+                unmappable++;
+                if (bytes.remaining() < replacement.length) {
+                    drain();
+                }
+                bytes.put(replacement);
+            }
+        }
+
+        void finish() throws IOException {
+            charBuffer.clear().limit(0);
+            while (encoder.encode(charBuffer, bytes, true).isOverflow()) {
+                drain();
+            }
+            while (encoder.flush(bytes).isOverflow()) {
+                drain();
+            }
+            drain();
+        }
+
+        private void drain() throws IOException {
+            bytes.flip();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            bytes.clear();
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.cwriter.export;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 分卷导出 - 按章节数、字符数或章节列表中的分卷标记把作品切成几卷，每卷单独渲染成一个文件
+ *
+ * 每卷是一份只含部分章节的 ExportWork（共享原作品的段落切分），各卷在渲染线程上并行渲染，
+ * 通过 MemoryAdmission 各自预留内存，所以单个文件的峰值内存只取决于一卷的大小。
+ * 返回的清单（volumes）按卷的顺序列出每个文件的路径、章节范围和结果。
+ */
+final class VolumeExporter {
+
+    private static final String TAG = "VolumeExporter";
+
+    static final String BY_CHAPTERS = "chapters";
+    static final String BY_CHARS = "chars";
+    static final String BY_VOLUMES = "volumes";
+
+    /** 未指定 size 时每卷的章节数 */
+    static final int DEFAULT_CHAPTERS_PER_VOLUME = 100;
+    /** 未指定 size 时每卷的字符数 */
+    static final long DEFAULT_CHARS_PER_VOLUME = 1_000_000;
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    // 线程数与CPU核数相同；超出内存的卷由 MemoryAdmission 排队等待
+    private static final ExecutorService VOLUME_POOL = Executors.newFixedThreadPool(
+        Math.max(1, Runtime.getRuntime().availableProcessors()), runnable -> {
+            Thread thread = new Thread(runnable, "cwriter-volume-" + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    private VolumeExporter() {
+    }
+
+    /**
+     * 一卷：第 from 到 to（不含）章，title 为null时只用作品标题
+     */
+    static final class Volume {
+        final String title;
+        final int from;
+        final int to;
+
+        Volume(String title, int from, int to) {
+            this.title = title;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    /**
+     * 作品是否要求分卷（format.split）
+     */
+    static boolean requested(ExportWork work) {
+        return work.splitBy != null;
+    }
+
+    /**
+     * 按 format.split 切分章节
+     *
+     * @throws IllegalArgumentException 不支持的分卷方式
+     */
+    static List<Volume> plan(ExportWork work) {
+        List<Volume> volumes = new ArrayList<>();
+        int total = work.chapters.size();
+        if (BY_CHAPTERS.equals(work.splitBy)) {
+            int size = work.splitSize > 0 ? (int) Math.min(work.splitSize, Integer.MAX_VALUE) : DEFAULT_CHAPTERS_PER_VOLUME;
+            for (int from = 0; from < total; from += size) {
+                volumes.add(new Volume(numbered(volumes.size()), from, Math.min(total, from + size)));
+            }
+        } else if (BY_CHARS.equals(work.splitBy)) {
+            long budget = work.splitSize > 0 ? work.splitSize : DEFAULT_CHARS_PER_VOLUME;
+            int from = 0;
+            long chars = 0;
+            for (int i = 0; i < total; i++) {
+                long chapterChars = work.chapters.get(i).charCount();
+                // 章节不拆开：放不下时从这一章开始新的一卷，单章超出预算时独占一卷
+                if (i > from && chars + chapterChars > budget) {
+                    volumes.add(new Volume(numbered(volumes.size()), from, i));
+                    from = i;
+                    chars = 0;
+                }
+                chars += chapterChars;
+            }
+            if (from < total) {
+                volumes.add(new Volume(numbered(volumes.size()), from, total));
+            }
+        } else if (BY_VOLUMES.equals(work.splitBy)) {
+            List<ExportWork.VolumeMarker> markers = work.volumeMarkers;
+            // 第一个标记之前的章节单独成卷
+            int firstStart = markers.isEmpty() ? total : markers.get(0).start;
+            if (firstStart > 0) {
+                volumes.add(new Volume(null, 0, firstStart));
+            }
+            for (int i = 0; i < markers.size(); i++) {
+                int from = markers.get(i).start;
+                int to = i + 1 < markers.size() ? markers.get(i + 1).start : total;
+                if (to > from) {
+                    volumes.add(new Volume(markers.get(i).title, from, to));
+                } else {
+                    ExportLog.w(TAG, "分卷“" + markers.get(i).title + "”没有章节，已跳过");
+                }
+            }
+        } else {
+            throw new IllegalArgumentException("不支持的分卷方式: " + work.splitBy);
+        }
+        if (volumes.isEmpty()) {
+            // 没有章节时仍然导出只有标题和简介的一卷
+            volumes.add(new Volume(null, 0, total));
+        }
+        return volumes;
+    }
+
+    private static String numbered(int volume) {
+        return "第" + (volume + 1) + "卷";
+    }
+
+    /**
+     * 分卷后每卷的目标：只有一卷时就是 target，否则在同一目录下、文件名后加两位以上的卷号，如“作品_01.pdf”
+     */
+    static ExportTarget volumeTarget(ExportTarget target, int volume, int volumeCount) throws IOException {
+        if (volumeCount <= 1) {
+            return target;
+        }
+        String name = target.name();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : "";
+        int digits = Math.max(2, Integer.toString(volumeCount).length());
+        String fileName = base + "_" + String.format(Locale.ROOT, "%0" + digits + "d", volume + 1) + extension;
+        return target.sibling(fileName);
+    }
+
+    /**
+     * 分卷并行渲染
+     *
+     * @param work     要求分卷的作品
+     * @param renderer 渲染器，只用来确定格式，每卷使用新的渲染器实例
+     * @param target   不分卷时的导出目标，各卷的目标由它派生
+     * @param sync     写完后是否 fsync
+     * @return 清单：success、split、volumes（每卷的 volume、title、path、firstChapter、lastChapter、chars、success、duration）
+     */
+    static JSONObject export(ExportWork work, WorkRenderer renderer, ExportTarget target, boolean sync) {
+        long startTime = System.currentTimeMillis();
+        List<Volume> volumes = plan(work);
+        ExportLog.d(TAG, renderer.format() + " split by " + work.splitBy + " into " + volumes.size() + " volumes");
+
+        List<Future<JSONObject>> futures = new ArrayList<>(volumes.size());
+        // 先确定所有卷的目标再开始渲染，某一卷的位置无效时不留下写了一部分的卷
+        List<ExportTarget> targets = new ArrayList<>(volumes.size());
+        for (int i = 0; i < volumes.size(); i++) {
+            try {
+                targets.add(volumeTarget(target, i, volumes.size()));
+            } catch (IOException e) {
+                JSONObject result = failure(renderer.format(), "无法确定第" + (i + 1) + "卷的保存位置: " + e.getMessage());
+                result.put("duration", System.currentTimeMillis() - startTime);
+                return result;
+            }
+        }
+        List<ExportWork> parts = new ArrayList<>(volumes.size());
+        for (int i = 0; i < volumes.size(); i++) {
+            Volume volume = volumes.get(i);
+            ExportWork part = work.volume(volume.title, volume.from, volume.to);
+            WorkRenderer volumeRenderer = MultiFormatExporter.rendererFor(renderer.format());
+            ExportTarget volumeTarget = targets.get(i);
+            parts.add(part);
+            futures.add(VOLUME_POOL.submit(() -> MultiFormatExporter.renderOne(part, volumeRenderer, volumeTarget, sync)));
+        }
+
+        JSONArray manifest = new JSONArray();
+        int failed = 0;
+        for (int i = 0; i < volumes.size(); i++) {
+            Volume volume = volumes.get(i);
+            JSONObject result;
+            try {
+                result = futures.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                result = failure(renderer.format(), "导出等待被中断");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                result = failure(renderer.format(), cause.getMessage());
+            }
+            JSONObject entry = new JSONObject();
+            entry.put("volume", i + 1);
+            entry.put("title", parts.get(i).title);
+            targets.get(i).describe(entry);
+            entry.put("firstChapter", volume.from + 1);
+            entry.put("lastChapter", volume.to);
+            entry.put("chars", parts.get(i).charCount);
+            entry.put("success", result.getBooleanValue("success"));
+            entry.put("duration", result.getLongValue("duration"));
+            if (!result.getBooleanValue("success")) {
+                entry.put("error", result.getString("error"));
+                failed++;
+            }
+            manifest.add(entry);
+        }
+
+        long endTime = System.currentTimeMillis();
+        ExportLog.d(TAG, renderer.format() + " volume export finished, failed: " + failed + ", time taken: " + (endTime - startTime) + "ms");
+        JSONObject result = new JSONObject();
+        result.put("success", failed == 0);
+        result.put("split", work.splitBy);
+        result.put("volumes", manifest);
+        result.put("duration", endTime - startTime);
+        if (failed > 0) {
+            result.put("error", failed + " 卷导出失败");
+        }
+        return result;
+    }
+
+    private static JSONObject failure(String format, String message) {
+        JSONObject result = new JSONObject();
+        result.put("success", false);
+        result.put("error", format.toUpperCase() + "导出失败: " + message);
+        return result;
+    }
+}
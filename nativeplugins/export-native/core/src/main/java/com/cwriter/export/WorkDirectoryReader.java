@@ -0,0 +1,106 @@
+package com.cwriter.export;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * 读取App磁盘上的作品目录（utils/fileSystemStorage.js 的 v2 结构），转换为导出选项
+ *
+ * <pre>
+ * {workDir}/work.config.json        标题、简介
+ * {workDir}/chapters/chapters.json  章节列表（不含正文）
+ * {workDir}/chapters/{id}.json      单个章节（含正文）
+ * </pre>
+ */
+final class WorkDirectoryReader {
+
+    static final String WORK_CONFIG = "work.config.json";
+
+    private WorkDirectoryReader() {
+    }
+
+    static boolean isWorkDirectory(Path dir) {
+        return Files.isRegularFile(dir.resolve(WORK_CONFIG));
+    }
+
+    /**
+     * 展开输入路径：作品目录本身、包含多个作品目录的上级目录（如 users/{userId}/works），或JSON选项文件
+     */
+    static List<Path> expand(Path input) throws IOException {
+        List<Path> works = new ArrayList<>();
+        if (Files.isRegularFile(input) || isWorkDirectory(input)) {
+            works.add(input);
+        } else if (Files.isDirectory(input)) {
+            try (Stream<Path> children = Files.list(input)) {
+                children.filter(WorkDirectoryReader::isWorkDirectory).sorted().forEach(works::add);
+            }
+        }
+        return works;
+    }
+
+    /**
+     * 读取作品目录或JSON选项文件，返回与插件 exportToPDF 相同结构的选项
+     */
+    static JSONObject read(Path source) throws IOException {
+        if (Files.isRegularFile(source)) {
+            JSONObject options = JSON.parseObject(readString(source));
+            if (options == null) {
+                throw new IOException("空的JSON文件: " + source);
+            }
+            return options;
+        }
+
+        JSONObject config = JSON.parseObject(readString(source.resolve(WORK_CONFIG)));
+        JSONObject options = new JSONObject();
+        options.put("title", config.getString("title"));
+        options.put("description", config.getString("description"));
+
+        // 与 exportHelper.getFullWorkData 一致：逐个读取章节文件，按创建时间排序
+        Path chaptersDir = source.resolve("chapters");
+        List<JSONObject> chapters = new ArrayList<>();
+        Path listFile = chaptersDir.resolve("chapters.json");
+        if (Files.isRegularFile(listFile)) {
+            JSONArray list = JSON.parseArray(readString(listFile));
+            for (int i = 0; list != null && i < list.size(); i++) {
+                JSONObject item = list.getJSONObject(i);
+                if (item == null || item.getString("id") == null) {
+                    continue;
+                }
+                Path chapterFile = chaptersDir.resolve(item.getString("id") + ".json");
+                if (!Files.isRegularFile(chapterFile)) {
+                    ExportLog.w("WorkDirectoryReader", "章节文件不存在: " + chapterFile);
+                    continue;
+                }
+                JSONObject chapter = JSON.parseObject(readString(chapterFile));
+                if (chapter != null) {
+                    chapters.add(chapter);
+                }
+            }
+        }
+        chapters.sort(Comparator.comparing(chapter -> chapter.getString("created_at") != null ? chapter.getString("created_at") : ""));
+
+        JSONArray chapterArray = new JSONArray();
+        for (JSONObject chapter : chapters) {
+            JSONObject item = new JSONObject();
+            item.put("title", chapter.getString("title"));
+            item.put("content", chapter.getString("content"));
+            chapterArray.add(item);
+        }
+        options.put("chapters", chapterArray);
+        return options;
+    }
+
+    private static String readString(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+}
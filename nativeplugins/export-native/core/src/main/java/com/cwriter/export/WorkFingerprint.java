@@ -0,0 +1,184 @@
+package com.cwriter.export;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 作品指纹 - 对作品内容和导出参数计算稳定的哈希值
+ * 用于识别内容、格式和选项都相同的导出请求
+ */
+final class WorkFingerprint {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * 改变导出结果的选项：强制重建、fsync 和章节渲染缓存。
+     * 这些选项不同的请求不能合并，否则强制重建的请求会拿到在途任务复用或缓存的结果。
+     * 优先级不在其中：自动保存（后台）和用户点击（交互式）的同一导出应当合并，由 ExportQueue 把共享的任务提升为较高的优先级
+     */
+    private static final String[] BEHAVIOR_OPTIONS = {"forceRebuild", "fsync", "renderCache"};
+
+    private WorkFingerprint() {
+    }
+
+    /**
+     * 计算导出请求的指纹：导出类型 + 作品内容 + 格式选项 + 保存路径 + 执行选项；
+     * 多格式导出还包括格式列表和各格式的保存路径
+     */
+    static String ofExport(String type, JSONObject options) {
+        MessageDigest digest = newDigest();
+        update(digest, type);
+        updateContent(digest, options);
+        if (options != null) {
+            // 对象按键排序序列化，保证同样的选项得到同样的指纹
+            update(digest, sorted(options.get("format")));
+            update(digest, options.getString("savePath"));
+            update(digest, sorted(options.get("formats")));
+            update(digest, sorted(options.get("savePaths")));
+            for (String key : BEHAVIOR_OPTIONS) {
+                Object value = options.get(key);
+                update(digest, value != null ? value.toString() : null);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * 导出结果的指纹：格式 + 渲染器版本 + 作品内容 + 格式选项，不含保存路径，
+     * 同一份内容导出到不同路径时可以复用已有的文件
+     */
+    static String ofResult(String format, int version, JSONObject options) {
+        MessageDigest digest = newDigest();
+        update(digest, format);
+        update(digest, Integer.toString(version));
+        updateContent(digest, options);
+        update(digest, options != null ? sorted(options.get("format")) : "");
+        return toHex(digest.digest());
+    }
+
+    /**
+     * 按键排序的 JSON，缺省时为空串
+     */
+    private static String sorted(Object value) {
+        return value != null ? JSON.toJSONString(value, SerializerFeature.MapSortField) : "";
+    }
+
+    /**
+     * 只计算作品内容（标题、简介、章节）的指纹
+     */
+    static String ofContent(JSONObject options) {
+        MessageDigest digest = newDigest();
+        updateContent(digest, options);
+        return toHex(digest.digest());
+    }
+
+    /**
+     * 单个章节渲染结果的指纹：格式 + 渲染器版本 + 影响章节排版的格式参数 + 章节标题和正文
+     */
+    static String ofChapter(String format, int version, ExportWork work, ExportWork.Chapter chapter) {
+        MessageDigest digest = newDigest();
+        update(digest, format);
+        update(digest, Integer.toString(version));
+        update(digest, work.headingSize + "/" + work.bodySize + "/" + work.lineSpacing);
+        update(digest, chapter.heading);
+        for (int i = 0; i < chapter.paragraphCount(); i++) {
+            update(digest, chapter.paragraph(i));
+        }
+        if (chapter.imageCount > 0) {
+            // 插图的尺寸取决于图片文件和分辨率，替换图片后章节要重新排版
+            update(digest, Integer.toString(work.imageDpi));
+            updateImages(digest, chapter.content);
+        }
+        return toHex(digest.digest());
+    }
+
+    private static void updateContent(MessageDigest digest, JSONObject options) {
+        if (options == null) {
+            return;
+        }
+        update(digest, options.getString("title"));
+        update(digest, options.getString("description"));
+        update(digest, options.getString("content"));
+        JSONArray chapters = options.getJSONArray("chapters");
+        if (chapters == null) {
+            update(digest, null);
+            return;
+        }
+        for (int i = 0; i < chapters.size(); i++) {
+            JSONObject chapter = chapters.getJSONObject(i);
+            if (chapter == null) {
+                update(digest, null);
+                continue;
+            }
+            if (ExportWork.VolumeMarker.TYPE.equals(chapter.getString("type"))) {
+                // 分卷标记与同名的空章节区分开
+                update(digest, ExportWork.VolumeMarker.TYPE);
+            }
+            update(digest, chapter.getString("title"));
+            update(digest, chapter.getString("content"));
+            updateImages(digest, chapter.getString("content"));
+        }
+        String cover = options.getString("cover");
+        if (cover != null) {
+            update(digest, cover);
+            update(digest, ImagePipeline.stamp(cover));
+        }
+    }
+
+    /**
+     * 正文中引用的图片文件的状态；没有插图时不写入任何内容，不影响纯文字作品的指纹
+     */
+    private static void updateImages(MessageDigest digest, String content) {
+        if (content == null || content.indexOf("![") < 0) {
+            return;
+        }
+        int[] bounds = ParagraphTokenizer.tokenize(content);
+        for (int i = 0; i < bounds.length; i += 2) {
+            ImagePipeline.Reference reference = ImagePipeline.parse(content, bounds[i], bounds[i + 1]);
+            if (reference != null) {
+                update(digest, ImagePipeline.stamp(reference.path));
+            }
+        }
+    }
+
+    /**
+     * 写入带长度前缀的字段，避免不同字段拼接后产生相同的字节序列
+     */
+    private static void update(MessageDigest digest, String value) {
+        if (value == null) {
+            digest.update((byte) 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int length = bytes.length;
+        digest.update((byte) 1);
+        digest.update((byte) (length >>> 24));
+        digest.update((byte) (length >>> 16));
+        digest.update((byte) (length >>> 8));
+        digest.update((byte) length);
+        digest.update(bytes);
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0x0f];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0x0f];
+        }
+        return new String(chars);
+    }
+}
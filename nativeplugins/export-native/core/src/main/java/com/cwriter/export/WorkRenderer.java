@@ -0,0 +1,24 @@
+package com.cwriter.export;
+
+import java.io.OutputStream;
+
+/**
+ * 作品渲染器 - 把共享的作品中间表示写成某种文件格式
+ */
+interface WorkRenderer {
+
+    /**
+     * 格式名称，如 pdf、docx
+     */
+    String format();
+
+    /**
+     * 文件扩展名，如 .pdf
+     */
+    String extension();
+
+    /**
+     * 渲染作品到输出流；渲染器负责关闭输出流，并把各阶段耗时记入metrics
+     */
+    void render(ExportWork work, OutputStream out, ExportMetrics metrics) throws Exception;
+}
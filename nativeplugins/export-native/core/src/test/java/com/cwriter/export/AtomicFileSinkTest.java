@@ -0,0 +1,117 @@
+package com.cwriter.export;
+
+import com.alibaba.fastjson.JSONObject;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AtomicFileSinkTest {
+
+    @TempDir
+    File dir;
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void commitReplacesTheTarget() throws IOException {
+        File target = new File(dir, "work.txt");
+        Files.write(target.toPath(), bytes("旧内容"));
+        AtomicFileSink sink = AtomicFileSink.open(target, false);
+        try (OutputStream out = sink.stream()) {
+            out.write(bytes("新内容"));
+        }
+        // 提交前目标保持原样
+        assertArrayEquals(bytes("旧内容"), Files.readAllBytes(target.toPath()));
+        sink.commit();
+        assertArrayEquals(bytes("新内容"), Files.readAllBytes(target.toPath()));
+        assertEquals(1, dir.listFiles().length);
+    }
+
+    @Test
+    void abortKeepsTheOldFileAndRemovesTheTemp() throws IOException {
+        File target = new File(dir, "work.pdf");
+        Files.write(target.toPath(), bytes("旧内容"));
+        AtomicFileSink sink = AtomicFileSink.open(target, true);
+        sink.stream().write(bytes("写了一半"));
+        sink.abort();
+        assertArrayEquals(bytes("旧内容"), Files.readAllBytes(target.toPath()));
+        assertEquals(1, dir.listFiles().length);
+    }
+
+    @Test
+    void abortAfterCommitDoesNothing() throws IOException {
+        File target = new File(dir, "work.docx");
+        AtomicFileSink sink = AtomicFileSink.open(target, true);
+        sink.stream().write(bytes("内容"));
+        sink.commit();
+        sink.abort();
+        assertTrue(target.isFile());
+        assertArrayEquals(bytes("内容"), Files.readAllBytes(target.toPath()));
+    }
+
+    @Test
+    void directOutputIsPublishedOrDiscarded() throws IOException {
+        int[] calls = new int[2];
+        AtomicFileSink.Publisher publisher = new AtomicFileSink.Publisher() {
+            @Override
+            public void publish() {
+                calls[0]++;
+            }
+
+            @Override
+            public void discard() {
+                calls[1]++;
+            }
+        };
+        File file = new File(dir, "direct.txt");
+        AtomicFileSink committed = AtomicFileSink.direct(Files.newOutputStream(file.toPath()), false, publisher);
+        committed.stream().write(bytes("内容"));
+        committed.commit();
+        assertArrayEquals(new int[]{1, 0}, calls);
+
+        AtomicFileSink aborted = AtomicFileSink.direct(Files.newOutputStream(file.toPath()), false, publisher);
+        aborted.abort();
+        assertArrayEquals(new int[]{1, 1}, calls);
+        assertFalse(new File(dir, "direct.txt.part").exists());
+    }
+
+    @Test
+    void sweepRemovesOnlyStaleTempFiles() throws IOException {
+        File stale = new File(dir, ".work.pdf.123456789.part");
+        File fresh = new File(dir, ".work.pdf.987654321.part");
+        File userFile = new File(dir, "notes.part");
+        for (File file : new File[]{stale, fresh, userFile}) {
+            Files.write(file.toPath(), bytes("x"));
+        }
+        long now = System.currentTimeMillis();
+        assertTrue(stale.setLastModified(now - AtomicFileSink.STALE_PART_MS - 60_000));
+        assertTrue(userFile.setLastModified(now - AtomicFileSink.STALE_PART_MS - 60_000));
+
+        assertEquals(1, AtomicFileSink.sweep(dir, now - AtomicFileSink.STALE_PART_MS));
+        assertFalse(stale.exists());
+        assertTrue(fresh.exists());
+        assertTrue(userFile.exists());
+    }
+
+    @Test
+    void fsyncIsOptIn() {
+        assertFalse(AtomicFileSink.syncRequested(null));
+        assertFalse(AtomicFileSink.syncRequested(new JSONObject()));
+        JSONObject options = new JSONObject();
+        options.put("fsync", true);
+        assertTrue(AtomicFileSink.syncRequested(options));
+    }
+}
@@ -0,0 +1,74 @@
+package com.cwriter.export;
+
+import com.alibaba.fastjson.JSONObject;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChapterRenderCacheTest {
+
+    private static final String KEY_A = "a".repeat(64);
+    private static final String KEY_B = "b".repeat(64);
+
+    @TempDir
+    File dir;
+
+    @AfterEach
+    void disable() {
+        ChapterRenderCache.configure(null, 0);
+    }
+
+    private static ChapterRenderCache cache() {
+        ExportWork work = ExportWork.from(new JSONObject());
+        ChapterRenderCache cache = ChapterRenderCache.forWork(work);
+        assertNotNull(cache);
+        return cache;
+    }
+
+    @Test
+    void trimOnlyDeletesItsOwnEntries() throws IOException {
+        File userFile = new File(dir, "notes.pdf");
+        Files.write(userFile.toPath(), new byte[4096]);
+        ChapterRenderCache.configure(dir, 1024);
+        File cacheDir = new File(dir, ChapterRenderCache.DIR_NAME);
+        File stranger = new File(cacheDir, "readme.xml");
+        Files.write(stranger.toPath(), new byte[4096]);
+        File inFlight = new File(cacheDir, KEY_B + "12345.part");
+        Files.write(inFlight.toPath(), new byte[4096]);
+
+        ChapterRenderCache cache = cache();
+        cache.put(KEY_A, ".pdf", new byte[2048]);
+        cache.trim();
+
+        assertFalse(new File(cacheDir, KEY_A + ".pdf").exists());
+        assertTrue(userFile.exists());
+        assertTrue(stranger.exists());
+        assertTrue(inFlight.exists());
+    }
+
+    @Test
+    void trimRemovesStaleTempFiles() throws IOException {
+        ChapterRenderCache.configure(dir, ChapterRenderCache.DEFAULT_MAX_BYTES);
+        File cacheDir = new File(dir, ChapterRenderCache.DIR_NAME);
+        File stale = new File(cacheDir, KEY_A + "987.part");
+        Files.write(stale.toPath(), new byte[16]);
+        assertTrue(stale.setLastModified(System.currentTimeMillis() - AtomicFileSink.STALE_PART_MS - 60_000));
+
+        ChapterRenderCache cache = cache();
+        cache.put(KEY_B, ".xml", new byte[]{1, 2, 3});
+        cache.trim();
+
+        assertFalse(stale.exists());
+        assertArrayEquals(new byte[]{1, 2, 3}, cache.get(KEY_B, ".xml"));
+    }
+}
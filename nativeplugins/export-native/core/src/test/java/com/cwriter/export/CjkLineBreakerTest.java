@@ -0,0 +1,81 @@
+package com.cwriter.export;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class CjkLineBreakerTest {
+
+    private static final GlyphMetrics.Sized METRICS = GlyphMetrics.body().atSize(12f);
+
+    private static float width(String text) {
+        float width = 0;
+        for (int i = 0; i < text.length(); i++) {
+            width += METRICS.advance(text, i);
+        }
+        return width;
+    }
+
+    private static List<String> lines(String text, float lineWidth) {
+        CjkLineBreaker.Lines lines = CjkLineBreaker.breakLines(text, 0, text.length(), METRICS, lineWidth);
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < lines.count(); i++) {
+            result.add(text.substring(lines.start(i), lines.end(i)));
+        }
+        return result;
+    }
+
+    @Test
+    void shortParagraphIsOneLine() {
+        assertEquals(List.of("春眠不觉晓"), lines("春眠不觉晓", 500));
+    }
+
+    @Test
+    void breaksBetweenCjkCharacters() {
+        String text = "一二三四五六七八九十";
+        assertEquals(List.of("一二三四五", "六七八九十"), lines(text, width("一二三四五") + 1));
+    }
+
+    @Test
+    void closingPunctuationNeverStartsALine() {
+        String text = "一二三四五，六七八九十";
+        List<String> lines = lines(text, width("一二三四五") + 1);
+        for (String line : lines) {
+            assertFalse(line.startsWith("，"), line);
+        }
+        assertEquals(text, String.join("", lines));
+    }
+
+    @Test
+    void openingBracketNeverEndsALine() {
+        List<String> lines = lines("一二三四「五六」", width("一二三四五") + 1);
+        assertEquals(List.of("一二三四", "「五六」"), lines);
+    }
+
+    @Test
+    void trailingFullStopIsSqueezedIntoTheLine() {
+        String text = "一二三四五。";
+        float lineWidth = width("一二三四五") + METRICS.advance('。') / 2 + 0.5f;
+        CjkLineBreaker.Lines lines = CjkLineBreaker.breakLines(text, 0, text.length(), METRICS, lineWidth);
+        assertEquals(1, lines.count());
+        assertEquals(1, lines.squeezeCount());
+        assertEquals(5, lines.squeezeAt(0));
+    }
+
+    @Test
+    void westernTextBreaksAtSpaces() {
+        assertEquals(List.of("hello world", "again"), lines("hello world again", width("hello world") + 1));
+    }
+
+    @Test
+    void overlongWordIsForcedApart() {
+        String word = "abcdefghijklmnopqrstuvwxyz";
+        List<String> lines = lines(word, width("abcdefghij") + 1);
+        assertEquals(word, String.join("", lines));
+        assertEquals("abcdefghij", lines.get(0));
+    }
+}
@@ -0,0 +1,112 @@
+package com.cwriter.export;
+
+import com.alibaba.fastjson.JSONObject;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExportQueueTest {
+
+    private static JSONObject success(int run) {
+        JSONObject result = new JSONObject();
+        result.put("success", true);
+        result.put("run", run);
+        return result;
+    }
+
+    /**
+     * 占住唯一的工作线程，直到 release 被调用
+     */
+    private static CompletableFuture<JSONObject> block(String key, CountDownLatch started, CountDownLatch release) {
+        return ExportQueue.shared().submit(key, ExportQueue.PRIORITY_INTERACTIVE, () -> {
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return success(0);
+        });
+    }
+
+    @Test
+    void requestsWithTheSameKeyRunOnce() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<JSONObject> blocker = block("blocker-coalesce", started, release);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        AtomicInteger runs = new AtomicInteger();
+        ExportQueue.Task task = () -> success(runs.incrementAndGet());
+        CompletableFuture<JSONObject> first = ExportQueue.shared().submit("same-export", ExportQueue.PRIORITY_INTERACTIVE, task);
+        CompletableFuture<JSONObject> second = ExportQueue.shared().submit("same-export", ExportQueue.PRIORITY_INTERACTIVE, task);
+        release.countDown();
+
+        JSONObject a = first.get(10, TimeUnit.SECONDS);
+        JSONObject b = second.get(10, TimeUnit.SECONDS);
+        blocker.get(10, TimeUnit.SECONDS);
+        assertEquals(1, runs.get());
+        assertEquals(1, a.getIntValue("run"));
+        assertEquals(1, b.getIntValue("run"));
+        assertFalse(a.containsKey("shared"));
+        assertTrue(b.getBooleanValue("shared"));
+        // 每个调用方拿到各自的副本
+        assertNotSame(a, b);
+    }
+
+    @Test
+    void interactiveRequestPromotesAQueuedBackgroundExport() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<JSONObject> blocker = block("blocker-promote", started, release);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        StringBuffer order = new StringBuffer();
+        CompletableFuture<JSONObject> other = ExportQueue.shared().submit("other", ExportQueue.PRIORITY_BACKGROUND, () -> {
+            order.append("other;");
+            return success(1);
+        });
+        CompletableFuture<JSONObject> background = ExportQueue.shared().submit("autosave", ExportQueue.PRIORITY_BACKGROUND, () -> {
+            order.append("autosave;");
+            return success(1);
+        });
+        CompletableFuture<JSONObject> interactive = ExportQueue.shared().submit("autosave", ExportQueue.PRIORITY_INTERACTIVE, () -> {
+            order.append("duplicate;");
+            return success(2);
+        });
+        release.countDown();
+
+        blocker.get(10, TimeUnit.SECONDS);
+        background.get(10, TimeUnit.SECONDS);
+        assertTrue(interactive.get(10, TimeUnit.SECONDS).getBooleanValue("shared"));
+        other.get(10, TimeUnit.SECONDS);
+        assertEquals("autosave;other;", order.toString());
+    }
+
+    @Test
+    void failingTaskCompletesWithAnError() throws Exception {
+        JSONObject result = ExportQueue.shared().submit("failing", ExportQueue.PRIORITY_INTERACTIVE, () -> {
+            throw new IllegalStateException("boom");
+        }).get(10, TimeUnit.SECONDS);
+        assertFalse(result.getBooleanValue("success"));
+        assertTrue(result.getString("error").contains("boom"));
+    }
+
+    @Test
+    void priorityDefaultsToInteractive() {
+        assertEquals(ExportQueue.PRIORITY_INTERACTIVE, ExportQueue.priorityOf(null));
+        assertEquals(ExportQueue.PRIORITY_INTERACTIVE, ExportQueue.priorityOf(new JSONObject()));
+        JSONObject options = new JSONObject();
+        options.put("priority", "background");
+        assertEquals(ExportQueue.PRIORITY_BACKGROUND, ExportQueue.priorityOf(options));
+    }
+}
@@ -0,0 +1,76 @@
+package com.cwriter.export;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ParagraphTokenizerTest {
+
+    private static String[] paragraphs(String text) {
+        int[] bounds = ParagraphTokenizer.tokenize(text);
+        String[] result = new String[bounds.length / 2];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = text.substring(bounds[2 * i], bounds[2 * i + 1]);
+        }
+        return result;
+    }
+
+    @Test
+    void splitsOnEveryLineEnding() {
+        assertArrayEquals(new String[]{"一", "二", "三", "四"}, paragraphs("一\n二\r\n三\r四"));
+    }
+
+    @Test
+    void blankLinesSeparateWithoutProducingParagraphs() {
+        assertArrayEquals(new String[]{"第一段", "第二段"}, paragraphs("\n\n第一段\n \t\n\r\n第二段\n\n"));
+    }
+
+    @Test
+    void trimsSurroundingWhitespace() {
+        assertArrayEquals(new String[]{"Hello world"}, paragraphs("  Hello world\t "));
+    }
+
+    @Test
+    void keepsFullWidthIndent() {
+        assertArrayEquals(new String[]{"\u3000\u3000第一段", "\u3000\u3000第二段"},
+            paragraphs("\u3000\u3000第一段\n\u3000\u3000第二段\u3000\n"));
+    }
+
+    @Test
+    void indentOnlyLinesAreBlank() {
+        assertArrayEquals(new String[]{"一", "二"}, paragraphs("一\n\u3000\u3000\n\u00A0\n二"));
+    }
+
+    @Test
+    void skipIndentFindsTheText() {
+        String text = "\u3000\u3000\u00A0正文";
+        assertEquals(3, ParagraphTokenizer.skipIndent(text, 0, text.length()));
+        assertEquals(2, ParagraphTokenizer.skipIndent("\u3000\u3000", 0, 2));
+    }
+
+    @Test
+    void emptyTextHasNoParagraphs() {
+        assertSame(ParagraphTokenizer.EMPTY, ParagraphTokenizer.tokenize(""));
+        assertSame(ParagraphTokenizer.EMPTY, ParagraphTokenizer.tokenize("\n \r\n"));
+    }
+
+    @Test
+    void boundsPointIntoTheOriginalText() {
+        String text = "甲\n  乙丙";
+        int[] bounds = ParagraphTokenizer.tokenize(text);
+        assertArrayEquals(new int[]{0, 1, 4, 6}, bounds);
+    }
+
+    @Test
+    void growsBeyondInitialCapacity() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            text.append("段落").append(i).append('\n');
+        }
+        String[] result = paragraphs(text.toString());
+        assertEquals(100, result.length);
+        assertEquals("段落99", result[99]);
+    }
+}
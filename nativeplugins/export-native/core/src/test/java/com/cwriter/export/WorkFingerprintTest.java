@@ -0,0 +1,61 @@
+package com.cwriter.export;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class WorkFingerprintTest {
+
+    private static JSONObject options(String json) {
+        return JSON.parseObject(json);
+    }
+
+    private static final String WORK = "\"title\":\"作品\",\"chapters\":[{\"title\":\"第一章\",\"content\":\"正文\"}]";
+
+    @Test
+    void sameRequestHasSameFingerprint() {
+        String json = "{" + WORK + ",\"savePath\":\"/tmp/a.pdf\"}";
+        assertEquals(WorkFingerprint.ofExport("pdf", options(json)), WorkFingerprint.ofExport("pdf", options(json)));
+    }
+
+    @Test
+    void formatKeyOrderDoesNotMatter() {
+        String a = WorkFingerprint.ofExport("pdf", options("{" + WORK + ",\"format\":{\"fontSize\":12,\"toc\":false}}"));
+        String b = WorkFingerprint.ofExport("pdf", options("{\"format\":{\"toc\":false,\"fontSize\":12}," + WORK + "}"));
+        assertEquals(a, b);
+    }
+
+    @Test
+    void typeContentAndPathAreDistinguished() {
+        JSONObject base = options("{" + WORK + ",\"savePath\":\"/tmp/a.pdf\"}");
+        String fingerprint = WorkFingerprint.ofExport("pdf", base);
+        assertNotEquals(fingerprint, WorkFingerprint.ofExport("docx", base));
+        assertNotEquals(fingerprint, WorkFingerprint.ofExport("pdf",
+            options("{" + WORK.replace("正文", "改过的正文") + ",\"savePath\":\"/tmp/a.pdf\"}")));
+        assertNotEquals(fingerprint, WorkFingerprint.ofExport("pdf", options("{" + WORK + ",\"savePath\":\"/tmp/b.pdf\"}")));
+    }
+
+    @Test
+    void behaviourOptionsAreDistinguished() {
+        String plain = WorkFingerprint.ofExport("pdf", options("{" + WORK + "}"));
+        assertNotEquals(plain, WorkFingerprint.ofExport("pdf", options("{" + WORK + ",\"forceRebuild\":true}")));
+        assertNotEquals(plain, WorkFingerprint.ofExport("pdf", options("{" + WORK + ",\"fsync\":true}")));
+    }
+
+    @Test
+    void priorityDoesNotSplitAnExport() {
+        // 交互式请求应加入排队中的后台任务，由 ExportQueue 提升优先级
+        assertEquals(WorkFingerprint.ofExport("pdf", options("{" + WORK + ",\"priority\":\"background\"}")),
+            WorkFingerprint.ofExport("pdf", options("{" + WORK + "}")));
+    }
+
+    @Test
+    void resultFingerprintIgnoresSavePath() {
+        assertEquals(WorkFingerprint.ofResult("pdf", 1, options("{" + WORK + ",\"savePath\":\"/tmp/a.pdf\"}")),
+            WorkFingerprint.ofResult("pdf", 1, options("{" + WORK + ",\"savePath\":\"/tmp/b.pdf\"}")));
+    }
+}
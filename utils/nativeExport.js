@@ -89,22 +89,9 @@ export function nativeExportPDF(title, content, savePath) {
         }
       }
 
-      // 添加超时处理，防止回调永远不执行
-      let callbackExecuted = false;
-      const timeoutId = setTimeout(() => {
-        if (!callbackExecuted) {
-          callbackExecuted = true;
-          reject(new Error("导出操作超时"));
-        }
-      }, 10000);
-
+      // 导出在原生队列中排队执行（大作品还要等待内存许可），不设超时；
+      // 任务结束后原生层总会回调，包括失败的情况
       module.exportToPDF(options, (result) => {
-        if (callbackExecuted) {
-          return;
-        }
-        callbackExecuted = true;
-        clearTimeout(timeoutId);
-
         if (result && result.success) {
           resolve(result.path);
         } else {
@@ -205,22 +192,9 @@ export function nativeExportPDFStructured(workData, savePath) {
         }
       }
 
-      // 添加超时处理
-      let callbackExecuted = false;
-      const timeoutId = setTimeout(() => {
-        if (!callbackExecuted) {
-          callbackExecuted = true;
-          reject(new Error("导出操作超时"));
-        }
-      }, 10000);
-
+      // 导出在原生队列中排队执行（大作品还要等待内存许可），不设超时；
+      // 任务结束后原生层总会回调，包括失败的情况
       module.exportToPDF(options, (result) => {
-        if (callbackExecuted) {
-          return;
-        }
-        callbackExecuted = true;
-        clearTimeout(timeoutId);
-
         if (result && result.success) {
           resolve(result.path);
         } else {
@@ -322,22 +296,9 @@ export function nativeExportDOCXStructured(workData, savePath) {
         }
       }
 
-      // 添加超时处理
-      let callbackExecuted = false;
-      const timeoutId = setTimeout(() => {
-        if (!callbackExecuted) {
-          callbackExecuted = true;
-          reject(new Error("导出操作超时"));
-        }
-      }, 30000); // 30秒超时
-
+      // 导出在原生队列中排队执行（大作品还要等待内存许可），不设超时；
+      // 任务结束后原生层总会回调，包括失败的情况
       module.exportToDOCX(options, (result) => {
-        if (callbackExecuted) {
-          return;
-        }
-        callbackExecuted = true;
-        clearTimeout(timeoutId);
-
         if (result && result.success) {
           resolve(result.path);
         } else {
@@ -419,22 +380,9 @@ export function nativeExportDOCX(title, content, savePath) {
         }
       }
 
-      // 添加超时处理，防止回调永远不执行
-      let callbackExecuted = false;
-      const timeoutId = setTimeout(() => {
-        if (!callbackExecuted) {
-          callbackExecuted = true;
-          reject(new Error("导出操作超时"));
-        }
-      }, 30000); // 30秒超时
-
+      // 导出在原生队列中排队执行（大作品还要等待内存许可），不设超时；
+      // 任务结束后原生层总会回调，包括失败的情况
       module.exportToDOCX(options, (result) => {
-        if (callbackExecuted) {
-          return;
-        }
-        callbackExecuted = true;
-        clearTimeout(timeoutId);
-
         if (result && result.success) {
           resolve(result.path);
         } else {